@@ -0,0 +1,215 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.io.DatumWriter;
+import org.apache.log4j.Logger;
+
+import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamingOutput;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.StreamingData.Punctuation;
+import com.ibm.streams.operator.log4j.TraceLevel;
+import com.ibm.streamsx.avro.io.AvroBlockBuilder;
+
+/**
+ * Collects records into Avro message blocks with embedded schema and submits
+ * every message block followed by a window punctuation.
+ *
+ * In asynchronous mode the submitter is double-buffered: the message block is
+ * closed, compressed and submitted by a worker thread while the records of the
+ * next message block are appended to the second buffer. The worker submits
+ * the message blocks in order. Only when both buffers are in use, appending
+ * waits for the worker. In synchronous mode the message block is submitted on
+ * the calling thread. The submitters of several schemas can share a single
+ * worker thread, so their message blocks and window punctuations are
+ * submitted in order and never interleave.
+ *
+ * The submitter is not thread safe, the operator must serialize the calls.
+ *
+ * @param <D>
+ *            The type of the records written by the datum writer
+ */
+class AvroBlockSubmitter<D> {
+
+	private static Logger tracer = Logger.getLogger(AvroBlockSubmitter.class.getName());
+
+	/*
+	 * A message block under construction together with the output tuple that
+	 * carries it
+	 */
+	private static class Buffer<D> {
+		final AvroBlockBuilder<D> builder;
+		final OutputTuple outTuple;
+		Future<?> pending;
+
+		Buffer(AvroBlockBuilder<D> builder, OutputTuple outTuple) {
+			this.builder = builder;
+			this.outTuple = outTuple;
+		}
+	}
+
+	private final StreamingOutput<OutputTuple> outStream;
+	private final String outputAvroMessage;
+	private final ExecutorService worker;
+	private Buffer<D> current;
+	private Buffer<D> next;
+
+	/**
+	 * @param outStream
+	 *            The output port receiving the message blocks
+	 * @param outputAvroMessage
+	 *            The blob attribute of the output tuple holding the message
+	 *            block
+	 * @param schema
+	 *            The Avro schema of the records
+	 * @param datumWriter
+	 *            The writer that encodes the records on the calling thread
+	 * @param bytesPerBlock
+	 *            The uncompressed size of a data block in bytes
+	 * @param codec
+	 *            The codec that compresses the data blocks
+	 * @param worker
+	 *            The single worker thread, or null to submit synchronously.
+	 *            The caller shuts the worker down.
+	 * @throws IOException
+	 */
+	AvroBlockSubmitter(StreamingOutput<OutputTuple> outStream, String outputAvroMessage, Schema schema,
+			DatumWriter<D> datumWriter, int bytesPerBlock, CodecFactory codec, ExecutorService worker)
+			throws IOException {
+		this.outStream = outStream;
+		this.outputAvroMessage = outputAvroMessage;
+		current = new Buffer<D>(new AvroBlockBuilder<D>(schema, datumWriter, bytesPerBlock, codec),
+				outStream.newTuple());
+		if (worker != null)
+			next = new Buffer<D>(new AvroBlockBuilder<D>(schema, datumWriter, bytesPerBlock, codec),
+					outStream.newTuple());
+		this.worker = worker;
+	}
+
+	/**
+	 * Append a record to the message block
+	 *
+	 * @param tuple
+	 *            The input tuple whose matching attributes are copied to the
+	 *            output tuple
+	 * @param datum
+	 *            The record
+	 * @throws IOException
+	 */
+	void append(Tuple tuple, D datum) throws IOException {
+		current.outTuple.assign(tuple);
+		current.builder.append(datum);
+	}
+
+	/**
+	 * Append an encoded record to the message block
+	 *
+	 * @param tuple
+	 *            The input tuple whose matching attributes are copied to the
+	 *            output tuple
+	 * @param encodedDatum
+	 *            The binary Avro encoding of the record
+	 * @throws IOException
+	 */
+	void appendEncoded(Tuple tuple, ByteBuffer encodedDatum) throws IOException {
+		current.outTuple.assign(tuple);
+		current.builder.appendEncoded(encodedDatum);
+	}
+
+	/**
+	 * @return the number of records in the message block
+	 */
+	int getRecordCount() {
+		return current.builder.getRecordCount();
+	}
+
+	/**
+	 * @return the estimated size of the message block in bytes
+	 */
+	long getEstimatedSize() {
+		return current.builder.getEstimatedSize();
+	}
+
+	/**
+	 * Submit the message block and a window punctuation. In asynchronous mode
+	 * the message block is handed over to the worker thread, and the method
+	 * returns as soon as the second buffer is free.
+	 *
+	 * @throws Exception
+	 *             if the message block or a previous message block could not
+	 *             be submitted
+	 */
+	void submit() throws Exception {
+		if (current.builder.getRecordCount() == 0)
+			return;
+		if (tracer.isTraceEnabled())
+			tracer.log(TraceLevel.TRACE, "Submitting " + current.builder.getRecordCount()
+					+ " Avro messages with an estimated length of " + current.builder.getEstimatedSize() + " bytes");
+		if (worker == null) {
+			submitBlock(current);
+			return;
+		}
+		final Buffer<D> block = current;
+		block.pending = worker.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				submitBlock(block);
+				return null;
+			}
+		});
+		current = next;
+		next = block;
+		// The previous message block must be out before the buffer is reused
+		await(current);
+	}
+
+	/**
+	 * Wait until all message blocks handed over to the worker thread are
+	 * submitted
+	 *
+	 * @throws Exception
+	 *             if a message block could not be submitted
+	 */
+	void drain() throws Exception {
+		if (worker != null)
+			await(next);
+	}
+
+	// Close the last data block, the builder starts the next message block
+	private void submitBlock(Buffer<D> block) throws Exception {
+		block.outTuple.setBlob(outputAvroMessage, block.builder.toBlob());
+		outStream.submit(block.outTuple);
+		outStream.punctuate(Punctuation.WINDOW_MARKER);
+	}
+
+	private static void await(Buffer<?> block) throws Exception {
+		if (block.pending == null)
+			return;
+		try {
+			block.pending.get();
+		} catch (ExecutionException e) {
+			tracer.log(TraceLevel.ERROR, "Error while submitting Avro message block: " + e.getCause().getMessage());
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		} finally {
+			block.pending = null;
+		}
+	}
+
+}
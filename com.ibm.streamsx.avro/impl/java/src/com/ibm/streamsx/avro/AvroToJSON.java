@@ -7,17 +7,15 @@
 
 package com.ibm.streamsx.avro;
 
-import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.avro.Schema;
-import org.apache.avro.file.DataFileStream;
-import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericRecord;
-import org.apache.avro.io.DatumReader;
-import org.apache.avro.io.Decoder;
-import org.apache.avro.io.DecoderFactory;
 import org.apache.log4j.Logger;
 
 import com.ibm.streams.operator.AbstractOperator;
@@ -32,6 +30,7 @@ import com.ibm.streams.operator.Tuple;
 import com.ibm.streams.operator.Type.MetaType;
 import com.ibm.streams.operator.compile.OperatorContextChecker;
 import com.ibm.streams.operator.log4j.TraceLevel;
+import com.ibm.streams.operator.meta.CollectionType;
 import com.ibm.streams.operator.model.InputPortSet;
 import com.ibm.streams.operator.model.InputPortSet.WindowMode;
 import com.ibm.streams.operator.model.InputPortSet.WindowPunctuationInputMode;
@@ -45,6 +44,20 @@ import com.ibm.streams.operator.model.Parameter;
 import com.ibm.streams.operator.model.PrimitiveOperator;
 import com.ibm.streams.operator.state.ConsistentRegionContext;
 import com.ibm.streams.operator.types.Blob;
+import com.ibm.streamsx.avro.io.AvroBlockReader;
+import com.ibm.streamsx.avro.io.AvroBlockReader.DataBlock;
+import com.ibm.streamsx.avro.io.BatchOutput;
+import com.ibm.streamsx.avro.io.DataBlockDecoder;
+import com.ibm.streamsx.avro.io.FilterExpression;
+import com.ibm.streamsx.avro.io.JsonFormat;
+import com.ibm.streamsx.avro.io.JsonWriter;
+import com.ibm.streamsx.avro.io.MessageFormat;
+import com.ibm.streamsx.avro.io.MessageReader;
+import com.ibm.streamsx.avro.schema.DatumReaderCache;
+import com.ibm.streamsx.avro.schema.EmbeddedSchemaCache;
+import com.ibm.streamsx.avro.schema.LocalSchemaRegistry;
+import com.ibm.streamsx.avro.schema.ReaderSchemaCheck;
+import com.ibm.streamsx.avro.schema.SchemaDirectoryStore;
 
 /**
  * Processes Avro tuples and converts them to a JSON string
@@ -55,12 +68,14 @@ import com.ibm.streams.operator.types.Blob;
 @InputPorts({
 		@InputPortSet(description = "Port that receives the Apache Avro data blocks. Window punctuation markers are passed to the output port.", cardinality = 1, optional = false, windowingMode = WindowMode.NonWindowed, windowPunctuationInputMode = WindowPunctuationInputMode.Oblivious) })
 @OutputPorts({
-		@OutputPortSet(description = "Port that produces tuples with the JSON message string and optionally with the JSON key string. Window punctuation markers are forwarded from the input port.", cardinality = 1, optional = false, windowPunctuationOutputMode = WindowPunctuationOutputMode.Generating) })
+		@OutputPortSet(description = "Port that produces tuples with the JSON message string and optionally with the JSON key string. With parameter `batchOutput`, a tuple holds the JSON strings of several messages. Window punctuation markers are forwarded from the input port.", cardinality = 1, optional = false, windowPunctuationOutputMode = WindowPunctuationOutputMode.Generating) })
 @Icons(location16 = "icons/AvroToJson_16.gif", location32 = "icons/AvroToJson_32.gif")
 @Libraries(value = { "opt/downloaded/*" })
 public class AvroToJSON extends AbstractOperator {
 
 	public static final String OPER_NAME = "AvroToJSON";
+
+	private static final int MAX_DECODING_THREADS = 256;
 	
 	private static Logger tracer = Logger.getLogger(AvroToJSON.class.getName());
 
@@ -75,9 +90,35 @@ public class AvroToJSON extends AbstractOperator {
 
 	protected String avroMessageSchemaFile = "";
 	protected String avroKeySchemaFile = "";
+	protected String avroReaderSchemaFile = "";
 	protected boolean avroSchemaEmbedded = true;
+	protected String messageFormat = null;
+	protected String avroSchemaDirectory = null;
+	protected String jsonFormat = null;
+	protected int decodingThreads = 1;
+	protected String batchOutput = null;
+	protected String filter = null;
 	Schema messageSchema;
 	Schema keySchema;
+	Schema readerSchema;
+	MessageFormat format;
+	BatchOutput batch;
+	FilterExpression filterExpression;
+
+	// Variables
+	StreamingOutput<OutputTuple> outStream;
+	OutputTuple outTuple;
+	MessageReader messageReader;
+	MessageReader keyReader;
+	JsonWriter jsonWriter;
+	AvroBlockReader blockReader;
+	ParallelBlockDecoder parallelDecoder;
+	DataBlockDecoder blockDecoder;
+	List<Object> jsonList;
+	GenericRecord consumedDatum;
+	boolean jsonMessageIsRString;
+	boolean jsonMessageIsList;
+	boolean jsonKeyIsRString;
 
 	@Parameter(optional = true, description = "The input stream attribute which contains the input Avro message blob. This attribute must be of type blob. Default is the sole output attribute when the schema has one attribute otherwise `avroMessage`.")
 	public void setInputAvroMessage(String inputAvroMessage) {
@@ -89,7 +130,7 @@ public class AvroToJSON extends AbstractOperator {
 		this.inputAvroKey = inputAvroKey;
 	}
 
-	@Parameter(optional = true, description = "The output stream attribute which contains the output JSON message string. This attribute must be of `rstring` or `ustring` type. Default is the sole output attribute when the schema has one attribute otherwise `jsonMessage`.")
+	@Parameter(optional = true, description = "The output stream attribute which contains the output JSON message string. This attribute must be of `rstring` or `ustring` type, with parameter `batchOutput` it can also be of `list<rstring>` or `list<ustring>` type. Default is the sole output attribute when the schema has one attribute otherwise `jsonMessage`.")
 	public void setOutputJsonMessage(String outputJsonMessage) {
 		this.outputJsonMessage = outputJsonMessage;
 	}
@@ -113,6 +154,91 @@ public class AvroToJSON extends AbstractOperator {
 			avroSchemaEmbedded = false;
 	}
 
+	@Parameter(optional = true, description = "File that contains the Avro reader schema of the messages. If this parameter "
+			+ "is specified, the messages are resolved from their writer schema to the reader schema with Avro schema "
+			+ "resolution, and the JSON string only contains the fields of the reader schema. Fields of the writer schema "
+			+ "that are not in the reader schema are skipped by the decoder and never converted to JSON, so a reader schema "
+			+ "with a few fields of a wide record speeds up the operator. The reader schema must be compatible with the "
+			+ "writer schema: the record names must match or be aliases, and fields that are not in the writer schema must "
+			+ "have a default value. The reader schema is applied in both operation modes. The writer schema is the embedded "
+			+ "schema, the schema of parameter `avroMessageSchemaFile` or the schema looked up in `avroSchemaDirectory`. This "
+			+ "parameter does not change the operation mode.")
+	public void setAvroReaderSchemaFile(String avroReaderSchemaFile) {
+		this.avroReaderSchemaFile = avroReaderSchemaFile;
+	}
+
+	@Parameter(optional = true, description = "The format of the Avro messages and keys if the Avro schema is not embedded. "
+			+ "With `binary`, the message is the binary Avro encoding of the record, which is read with the schema of parameter "
+			+ "`avroMessageSchemaFile` or `avroKeySchemaFile`. With `singleObject`, the message has the Avro single-object "
+			+ "encoding: the fingerprint of the writer schema precedes the binary record. The writer schema is looked up in "
+			+ "the schemas of parameter `avroSchemaDirectory`. With `schemaRegistry`, the message has the schema registry wire "
+			+ "format: the magic byte 0 and the 4 byte big-endian schema id of the writer schema precede the binary record. The "
+			+ "writer schema is looked up in the local schema registry of parameter `avroSchemaDirectory`. With `singleObject` "
+			+ "and `schemaRegistry`, the records are resolved to the schema of `avroMessageSchemaFile` or `avroKeySchemaFile` "
+			+ "if specified, otherwise they are read with the writer schema. Default is `binary`.")
+	public void setMessageFormat(String messageFormat) {
+		this.messageFormat = messageFormat;
+	}
+
+	@Parameter(optional = true, description = "Directory with the Avro schema files (`.avsc`) of the writer schemas of "
+			+ "the messages and keys. If parameter `messageFormat` is `schemaRegistry`, the directory is a local schema registry "
+			+ "with a file `<id>.avsc` for every registered schema, where `<id>` is the schema id. Required if parameter "
+			+ "`messageFormat` is `singleObject` or `schemaRegistry`. Schema files added while the operator runs are loaded "
+			+ "when a message with an unknown writer schema arrives, so producers can roll out a new writer schema without "
+			+ "restarting the operator. The schema resolution of a writer schema to the reader schema is planned once and "
+			+ "reused for all messages of the writer schema.")
+	public void setAvroSchemaDirectory(String avroSchemaDirectory) {
+		this.avroSchemaDirectory = avroSchemaDirectory;
+	}
+
+	@Parameter(optional = true, description = "The format of the JSON strings. With `toString`, the JSON string is the "
+			+ "same as the one of the `toString()` method of the Avro record: values are separated by a comma and a space, "
+			+ "union values are written without their branch and fixed values are written as list of signed bytes. With "
+			+ "`avroJson`, the JSON string has the Avro JSON encoding: no spaces, non-null union values are wrapped in an "
+			+ "object with the name of the branch, bytes and fixed values are strings of ISO-8859-1 characters. Default is "
+			+ "`toString`.")
+	public void setJsonFormat(String jsonFormat) {
+		this.jsonFormat = jsonFormat;
+	}
+
+	@Parameter(optional = true, description = "The number of threads that decode the data blocks of a blob with embedded "
+			+ "schema and convert their records to JSON. With more than one thread, the data blocks are decoded in parallel "
+			+ "and the JSON strings are submitted in the order of the records in the blob. This speeds up blobs with many "
+			+ "data blocks, for example whole Avro files. The parameter is ignored if the Avro schema is not embedded. Valid "
+			+ "values are from 1 to 256. Default is 1, the blob is decoded on the thread that processes the input tuple.")
+	public void setDecodingThreads(Integer decodingThreads) {
+		this.decodingThreads = decodingThreads;
+	}
+
+	@Parameter(optional = true, description = "The Avro messages of a blob with embedded schema which are converted into "
+			+ "one output tuple. With `record`, a tuple is submitted for every message. With `dataBlock`, a tuple is submitted "
+			+ "for every data block of the blob, and with `blob`, a single tuple is submitted for the whole blob. This reduces "
+			+ "the number of tuples for blobs with many messages. If the output JSON message attribute is of type `rstring` or "
+			+ "`ustring`, the JSON strings of the messages are newline-delimited JSON: every JSON string is followed by a line "
+			+ "feed. If the attribute is of type `list<rstring>` or `list<ustring>`, the list has an element for the JSON "
+			+ "string of every message. No tuple is submitted for a blob or data block without messages. The parameter is "
+			+ "ignored if the Avro schema is not embedded. Default is `record`.")
+	public void setBatchOutput(String batchOutput) {
+		this.batchOutput = batchOutput;
+	}
+
+	@Parameter(optional = true, description = "A filter of the Avro messages: one or more comparisons of a field with a "
+			+ "literal, combined with `&&`, for example `location.country == \"DK\" && retweets > 10`. A field is given by "
+			+ "the path of its field names separated by dots, the path can go through records and unions of null and a "
+			+ "record, but not through arrays and maps. The comparison operators are `==`, `!=`, `<`, `<=`, `>` and `>=`. "
+			+ "A literal is a number, a string in single or double quotes, `true`, `false` or `null`. Numbers are compared "
+			+ "with int, long, float and double fields, strings with string and enum fields, and booleans with boolean fields, "
+			+ "which only support `==` and `!=`. Enum symbols are ordered by their position in the enum. A null value is only "
+			+ "equal to `null`. The filter is evaluated on the binary Avro message: only the compared fields are read and "
+			+ "the other fields are skipped, and a message that does not match the filter is neither decoded nor converted "
+			+ "to JSON. The fields are those of the writer schema, and the filter is compiled once for every writer schema. "
+			+ "In mode No Avro Schema Embedded, no tuple is submitted for a message that does not match the filter, and its "
+			+ "key is not converted. The operator fails if the filter is not valid or, with a message schema file, if a "
+			+ "field is not in the schema or cannot be compared with its literal.")
+	public void setFilter(String filter) {
+		this.filter = filter;
+	}
+
 	/**
 	 * Compile time operator checks: Do not use the operator in a consistent region
 	 * @param checker
@@ -177,10 +303,15 @@ public class AvroToJSON extends AbstractOperator {
 			throw new IllegalArgumentException(Messages.getString("AVRO_OUTPUT_ATTRIBUTE_NOT_FOUND", "outputJsonMessage", outputJsonMessage));
 		} else {
 			MetaType attributeType = outputJsonMessageAttribute.getType().getMetaType();
+			// A list of JSON strings is checked against the batch output below
+			jsonMessageIsList = attributeType == MetaType.LIST;
+			if (jsonMessageIsList)
+				attributeType = ((CollectionType) outputJsonMessageAttribute.getType()).getElementType().getMetaType();
 			if(attributeType!=MetaType.USTRING && attributeType!=MetaType.RSTRING) {
 				tracer.log(TraceLevel.ERROR, Messages.getString("AVRO_ATTRIBUTE_WRONG_TYPE", "outputJsonMessage", outputJsonMessage, "rstring or ustring"));
 				throw new IllegalArgumentException(Messages.getString("AVRO_ATTRIBUTE_WRONG_TYPE", "outputJsonMessage", outputJsonMessage, "rstring or ustring"));
 			}
+			jsonMessageIsRString = attributeType == MetaType.RSTRING;
 		}
 
 		// If no JSON key attribute specified, check if optional attribute is
@@ -202,6 +333,7 @@ public class AvroToJSON extends AbstractOperator {
 					tracer.log(TraceLevel.ERROR, Messages.getString("AVRO_ATTRIBUTE_WRONG_TYPE", "outputJsonKey", outputJsonKey, "rstring or ustring"));
 					throw new IllegalArgumentException(Messages.getString("AVRO_ATTRIBUTE_WRONG_TYPE", "outputJsonKey", outputJsonKey, "rstring or ustring"));
 				}
+				jsonKeyIsRString = attributeType == MetaType.RSTRING;
 			}
 		}
 
@@ -219,9 +351,100 @@ public class AvroToJSON extends AbstractOperator {
 			keySchema = new Schema.Parser().parse(avscKeyInput);
 		}
 
+		// Get the Avro reader schema file to project the Avro messages
+		if (!avroReaderSchemaFile.isEmpty()) {
+			tracer.log(TraceLevel.TRACE, "Retrieving and parsing Avro reader schema file " + avroReaderSchemaFile);
+			InputStream avscReaderInput = new FileInputStream(avroReaderSchemaFile);
+			readerSchema = new Schema.Parser().parse(avscReaderInput);
+		}
+
+		// Single-object encoded messages carry the fingerprint and schema
+		// registry messages the schema id of their writer schema, which is
+		// looked up in the schema directory
+		if (messageFormat == null)
+			messageFormat = MessageFormat.BINARY.getParameterValue();
+		tracer.log(TraceLevel.TRACE, "Avro message format: " + messageFormat);
+		format = MessageFormat.fromParameter("messageFormat", messageFormat);
+		if (format != MessageFormat.BINARY) {
+			Schema messageReaderSchema = (readerSchema != null) ? readerSchema : messageSchema;
+			if (avroSchemaDirectory == null)
+				throw new IllegalArgumentException(Messages.getString("AVRO_PARAMETER_REQUIRED", "avroSchemaDirectory",
+						"messageFormat", messageFormat));
+			tracer.log(TraceLevel.TRACE, "Loading Avro schema files from directory " + avroSchemaDirectory);
+			if (format == MessageFormat.SINGLE_OBJECT) {
+				SchemaDirectoryStore writerSchemas = new SchemaDirectoryStore(new File(avroSchemaDirectory));
+				messageReader = new MessageReader(format, new DatumReaderCache(writerSchemas, messageReaderSchema));
+				keyReader = new MessageReader(format, new DatumReaderCache(writerSchemas, keySchema));
+			} else {
+				LocalSchemaRegistry writerSchemas = new LocalSchemaRegistry(new File(avroSchemaDirectory));
+				messageReader = new MessageReader(format, new DatumReaderCache(writerSchemas, messageReaderSchema));
+				keyReader = new MessageReader(format, new DatumReaderCache(writerSchemas, keySchema));
+			}
+			avroSchemaEmbedded = false;
+		}
+
 		// If the schema is embedded in the message, the schema file must not be specified
-		if (!avroSchemaEmbedded && avroKeySchemaFile.isEmpty() && (inputAvroKey != null))
+		if (!avroSchemaEmbedded && format == MessageFormat.BINARY && avroKeySchemaFile.isEmpty() && (inputAvroKey != null))
 			throw new IllegalArgumentException(Messages.getString("AVRO_NO_SCHEMA_FILE"));
+
+		// Prepare and initialize variables that don't change for every input
+		// record
+		if (!avroSchemaEmbedded && format == MessageFormat.BINARY) {
+			if (readerSchema != null && messageSchema != null)
+				ReaderSchemaCheck.checkReaderSchema(messageSchema, readerSchema);
+			messageReader = new MessageReader(messageSchema, readerSchema);
+			if (keySchema != null)
+				keyReader = new MessageReader(keySchema);
+		}
+		// The filter is compiled for the writer schemas, a known writer schema
+		// is checked now
+		if (filter != null) {
+			tracer.log(TraceLevel.TRACE, "Filter: " + filter);
+			try {
+				filterExpression = FilterExpression.parse(filter);
+				if (!avroSchemaEmbedded && format == MessageFormat.BINARY && messageSchema != null)
+					filterExpression.getFilter(messageSchema);
+			} catch (IllegalArgumentException e) {
+				tracer.log(TraceLevel.ERROR, e.getMessage());
+				throw e;
+			}
+			if (messageReader != null)
+				messageReader.setFilter(filterExpression);
+		}
+		if (jsonFormat == null)
+			jsonFormat = JsonFormat.TO_STRING.getParameterValue();
+		tracer.log(TraceLevel.TRACE, "JSON format: " + jsonFormat);
+		jsonWriter = new JsonWriter(JsonFormat.fromParameter("jsonFormat", jsonFormat));
+		if (batchOutput == null)
+			batchOutput = BatchOutput.RECORD.getParameterValue();
+		tracer.log(TraceLevel.TRACE, "Batch output: " + batchOutput);
+		batch = BatchOutput.fromParameter("batchOutput", batchOutput);
+		if (!avroSchemaEmbedded)
+			batch = BatchOutput.RECORD;
+		if (jsonMessageIsList && batch == BatchOutput.RECORD) {
+			tracer.log(TraceLevel.ERROR, Messages.getString("AVRO_ATTRIBUTE_WRONG_TYPE", "outputJsonMessage", outputJsonMessage, "rstring or ustring"));
+			throw new IllegalArgumentException(Messages.getString("AVRO_ATTRIBUTE_WRONG_TYPE", "outputJsonMessage", outputJsonMessage, "rstring or ustring"));
+		}
+		if (decodingThreads < 1 || decodingThreads > MAX_DECODING_THREADS)
+			throw new IllegalArgumentException(Messages.getString("AVRO_PARAMETER_OUT_OF_RANGE", "decodingThreads",
+					decodingThreads, 1, MAX_DECODING_THREADS));
+		// The embedded schema is parsed once and not for every message block
+		if (avroSchemaEmbedded) {
+			blockReader = new AvroBlockReader(new EmbeddedSchemaCache(readerSchema));
+			blockReader.setFilter(filterExpression);
+			if (decodingThreads > 1) {
+				tracer.log(TraceLevel.TRACE, "Decoding data blocks with " + decodingThreads + " threads");
+				parallelDecoder = new ParallelBlockDecoder(JsonFormat.fromParameter("jsonFormat", jsonFormat),
+						jsonMessageIsRString, batch != BatchOutput.RECORD && !jsonMessageIsList, decodingThreads,
+						operatorContext.getThreadFactory());
+			} else if (batch != BatchOutput.RECORD) {
+				blockDecoder = new DataBlockDecoder();
+			}
+			if (jsonMessageIsList)
+				jsonList = new ArrayList<Object>();
+		}
+		outStream = getOutput(0);
+		outTuple = outStream.newTuple();
 		
 		tracer.log(TraceLevel.TRACE, "AvroToJSON operator initialized, ready to receive tuples");
 
@@ -234,9 +457,8 @@ public class AvroToJSON extends AbstractOperator {
 	@Override
 	public final void process(StreamingInput<Tuple> inputStream, Tuple tuple) throws Exception {
 
-		// Create a new tuple for output port 0
-		StreamingOutput<OutputTuple> outStream = getOutput(0);
-		OutputTuple outTuple = outStream.newTuple();
+		// Reuse the tuple for output port 0 and copy over any matching
+		// attributes
 		outTuple.assign(tuple);
 
 		// Get the incoming binary Avro message record(s)
@@ -254,7 +476,7 @@ public class AvroToJSON extends AbstractOperator {
 		// Submit JSON tuples based on the Avro content received in the Blob
 		try {
 			if (!avroSchemaEmbedded) {
-				processAvroMessage(avroMessage, avroKey, outStream, outTuple, messageSchema, keySchema);
+				processAvroMessage(avroMessage, avroKey, outStream, outTuple);
 			} else {
 				processAvroMessage(avroMessage, outStream, outTuple);
 			}
@@ -276,32 +498,26 @@ public class AvroToJSON extends AbstractOperator {
 	 *            The stream to which the JSON string must be submitted
 	 * @param outTuple
 	 *            The tuple holding the JSON string
-	 * @param messageSchema
-	 *            The schema of the Avro messsage object
-	 * @param keySchema
-	 *            The schema of the Avro key object
 	 * @throws Exception
 	 */
 	private void processAvroMessage(Blob avroMessage, Blob avroKey, StreamingOutput<OutputTuple> outStream,
-			OutputTuple outTuple, Schema messageSchema, Schema keySchema) throws Exception {
-		// Deserialize message
-		GenericDatumReader<GenericRecord> consumer = new GenericDatumReader<GenericRecord>(messageSchema);
-		ByteArrayInputStream consumedByteArray = new ByteArrayInputStream(avroMessage.getData());
-		Decoder consumedDecoder = DecoderFactory.get().binaryDecoder(consumedByteArray, null);
-		GenericRecord consumedDatum = consumer.read(null, consumedDecoder);
+			OutputTuple outTuple) throws Exception {
+		// Deserialize message, a message which does not match the filter is
+		// dropped
+		GenericRecord consumedDatum = messageReader.read(avroMessage.getByteBuffer());
+		if (consumedDatum == null)
+			return;
+		setJson(outTuple, outputJsonMessage, jsonMessageIsRString, consumedDatum);
 		if (tracer.isTraceEnabled())
-			tracer.log(TraceLevel.TRACE, "JSON representation of Avro message: " + consumedDatum.toString());
-		outTuple.setString(outputJsonMessage, consumedDatum.toString());
+			tracer.log(TraceLevel.TRACE, "JSON representation of Avro message: " + jsonWriter);
 		// Deserialize key (if specified)
 		if (avroKey != null) {
-			consumer = new GenericDatumReader<GenericRecord>(keySchema);
-			consumedByteArray = new ByteArrayInputStream(avroKey.getData());
-			consumedDecoder = DecoderFactory.get().binaryDecoder(consumedByteArray, null);
-			consumedDatum = consumer.read(null, consumedDecoder);
-			if (tracer.isTraceEnabled())
-				tracer.log(TraceLevel.TRACE, "JSON representation of Avro key: " + consumedDatum.toString());
-			if (outputJsonKey != null)
-				outTuple.setString(outputJsonKey, consumedDatum.toString());
+			consumedDatum = keyReader.read(avroKey.getByteBuffer());
+			if (outputJsonKey != null) {
+				setJson(outTuple, outputJsonKey, jsonKeyIsRString, consumedDatum);
+				if (tracer.isTraceEnabled())
+					tracer.log(TraceLevel.TRACE, "JSON representation of Avro key: " + jsonWriter);
+			}
 		}
 		// Submit new tuple to output port 0
 		outStream.submit(outTuple);
@@ -323,20 +539,168 @@ public class AvroToJSON extends AbstractOperator {
 	 */
 	private void processAvroMessage(Blob avroMessage, StreamingOutput<OutputTuple> outStream, OutputTuple outTuple)
 			throws Exception {
-		ByteArrayInputStream is = new ByteArrayInputStream(avroMessage.getData());
-		DatumReader<GenericRecord> reader = new GenericDatumReader<GenericRecord>();
-		DataFileStream<GenericRecord> dataFileReader = new DataFileStream<GenericRecord>(is, reader);
-		GenericRecord consumedDatum = null;
-		while (dataFileReader.hasNext()) {
-			consumedDatum = dataFileReader.next(consumedDatum);
+		// The blob is read through its buffer view and not copied
+		blockReader.open(avroMessage.getByteBuffer());
+		// Discard a batch left over by a failed blob
+		jsonWriter.reset();
+		if (jsonList != null)
+			jsonList.clear();
+		if (parallelDecoder != null) {
+			parallelDecoder.decode(blockReader, new ParallelBlockDecoder.BlockHandler() {
+				@Override
+				public void handle(Object[] jsons) throws Exception {
+					submitBlock(jsons);
+				}
+			});
+		} else if (batch == BatchOutput.RECORD) {
+			while (blockReader.hasNext()) {
+				// A record which does not match the filter is null, the
+				// record to reuse is kept
+				GenericRecord record = blockReader.next(consumedDatum);
+				if (record == null)
+					continue;
+				consumedDatum = record;
+				setJson(outTuple, outputJsonMessage, jsonMessageIsRString, consumedDatum);
+				if (tracer.isTraceEnabled())
+					tracer.log(TraceLevel.TRACE, "JSON representation of Avro message: " + jsonWriter);
+				// Submit new tuple to output port 0
+				outStream.submit(outTuple);
+			}
+		} else {
+			DataBlock block;
+			while ((block = blockReader.nextBlock()) != null) {
+				blockDecoder.open(block);
+				while (blockDecoder.hasNext()) {
+					GenericRecord record = blockDecoder.next(consumedDatum);
+					if (record == null)
+						continue;
+					consumedDatum = record;
+					addToBatch(consumedDatum);
+				}
+				if (batch == BatchOutput.DATA_BLOCK)
+					submitBatch();
+			}
+		}
+		if (batch == BatchOutput.BLOB)
+			submitBatch();
+	}
+
+	/**
+	 * Submits or batches the JSON strings of a data block decoded by the
+	 * parallel block decoder
+	 * 
+	 * @param jsons
+	 *            The JSON strings of the records, or the UTF-8 bytes of the
+	 *            newline-delimited JSON of the data block
+	 * @throws Exception
+	 */
+	private void submitBlock(Object[] jsons) throws Exception {
+		if (batch == BatchOutput.RECORD) {
+			for (Object json : jsons)
+				submitJson(json);
+			return;
+		}
+		if (jsonMessageIsList)
+			jsonList.addAll(Arrays.asList(jsons));
+		else
+			jsonWriter.writeEncoded((byte[]) jsons[0]);
+		if (batch == BatchOutput.DATA_BLOCK)
+			submitBatch();
+	}
+
+	/**
+	 * Adds the JSON string of a record to the batch of JSON strings
+	 * 
+	 * @param consumedDatum
+	 *            The record
+	 */
+	private void addToBatch(GenericRecord consumedDatum) {
+		if (jsonMessageIsList) {
+			jsonWriter.reset();
+			jsonWriter.write(consumedDatum);
+			jsonList.add(jsonMessageIsRString ? jsonWriter.toRString() : jsonWriter.toString());
+		} else {
+			jsonWriter.write(consumedDatum);
+			jsonWriter.writeNewLine();
+		}
+	}
+
+	/**
+	 * Submits the batch of JSON strings in one tuple and starts the next
+	 * batch. An empty batch is not submitted.
+	 * 
+	 * @throws Exception
+	 */
+	private void submitBatch() throws Exception {
+		if (jsonMessageIsList) {
+			if (jsonList.isEmpty())
+				return;
+			outTuple.setList(outputJsonMessage, jsonList);
+			if (tracer.isTraceEnabled())
+				tracer.log(TraceLevel.TRACE, "Batch of " + jsonList.size() + " JSON strings");
+			jsonList = new ArrayList<Object>();
+		} else {
+			if (jsonWriter.size() == 0)
+				return;
+			if (jsonMessageIsRString)
+				outTuple.setObject(outputJsonMessage, jsonWriter.toRString());
+			else
+				outTuple.setString(outputJsonMessage, jsonWriter.toString());
 			if (tracer.isTraceEnabled())
-				tracer.log(TraceLevel.TRACE, "JSON representation of Avro message: " + consumedDatum.toString());
-			// Submit new tuple to output port 0
-			outTuple.setString(outputJsonMessage, consumedDatum.toString());
-			outStream.submit(outTuple);
+				tracer.log(TraceLevel.TRACE, "Batch of newline-delimited JSON with length " + jsonWriter.size());
+			jsonWriter.reset();
 		}
-		is.close();
-		dataFileReader.close();
+		// Submit new tuple to output port 0
+		outStream.submit(outTuple);
+	}
+
+	/**
+	 * Submits a JSON string decoded by the parallel block decoder
+	 * 
+	 * @param json
+	 *            The JSON string, an RString for an rstring attribute or a
+	 *            String for a ustring attribute
+	 * @throws Exception
+	 */
+	private void submitJson(Object json) throws Exception {
+		outTuple.setObject(outputJsonMessage, json);
+		if (tracer.isTraceEnabled())
+			tracer.log(TraceLevel.TRACE, "JSON representation of Avro message: " + json);
+		outStream.submit(outTuple);
+	}
+
+	/**
+	 * Stop the threads that decode the data blocks
+	 */
+	@Override
+	public void shutdown() throws Exception {
+		if (parallelDecoder != null)
+			parallelDecoder.shutdown();
+		super.shutdown();
+	}
+
+	/**
+	 * Writes the JSON string of a record into a string attribute. An rstring
+	 * attribute receives the UTF-8 bytes of the JSON writer without decoding
+	 * them to a String.
+	 * 
+	 * @param outTuple
+	 *            The tuple holding the JSON string
+	 * @param attributeName
+	 *            The name of the JSON string attribute
+	 * @param rstring
+	 *            true if the attribute is of type rstring, false if it is of
+	 *            type ustring
+	 * @param consumedDatum
+	 *            The record
+	 */
+	private void setJson(OutputTuple outTuple, String attributeName, boolean rstring, GenericRecord consumedDatum) {
+		jsonWriter.reset();
+		jsonWriter.write(consumedDatum);
+		if (rstring)
+			outTuple.setObject(attributeName, jsonWriter.toRString());
+		else
+			outTuple.setString(attributeName, jsonWriter.toString());
 	}
 
 	static final String DESC = "This operator converts binary Avro messages and optionally message keys into a JSON string. "
@@ -344,11 +708,21 @@ public class AvroToJSON extends AbstractOperator {
 			+ "* Avro Schema Embedded: The operator processes a blob which contains one or more Avro messages and has the schema embedded. "
 			+ "This is the pattern when Avro objects are read from a file (either local file system or HDFS). Every Avro "
 			+ "object in the blob is converted to JSON and then submitted to the output port. This operation mode is entered "
-			+ "if both parameters `avroMessageSchemaFile` and `avroKeySchemaFile` are not existing or have an empty value.\\n"
+			+ "if both parameters `avroMessageSchemaFile` and `avroKeySchemaFile` are not existing or have an empty value. "
+			+ "The data blocks can be compressed with any of the Avro codecs `null`, `deflate`, `snappy`, `bzip2`, `xz` "
+			+ "and `zstandard`. The embedded schemas are cached, so a schema is parsed only once and not for every blob.\\n"
 			+ "* No Avro Schema Embedded: The operator processes an Avro Blob containing a single message and with no embedded "
 			+ "schema. This is the pattern when Avro objects are passed over messaging infrastructure such as Apache Kafka. "
 			+ "This operation mode is entered if one or both parameters `avroMessageSchemaFile` and `avroKeySchemaFile` "
-			+ "are specified.\\n"
+			+ "are specified, or if parameter `messageFormat` is `singleObject` or `schemaRegistry`. Single-object encoded "
+			+ "messages carry the fingerprint and schema registry messages the schema id of their writer schema, which is "
+			+ "looked up in the schema files of parameter `avroSchemaDirectory`.\\n"
+			+ "In mode Avro Schema Embedded, the JSON strings of all messages of a data block or of the blob can be submitted "
+			+ "in one tuple with parameter `batchOutput`, either as newline-delimited JSON or as list of JSON strings.\\n"
+			+ "In both operation modes, the messages can be projected to the Avro reader schema of parameter "
+			+ "`avroReaderSchemaFile`, which skips the fields that are not needed in the JSON string. The messages can be "
+			+ "filtered with parameter `filter`, which is evaluated on the binary Avro message, so a message that does not "
+			+ "match the filter is never decoded.\\n"
 			+ "If an input or output message or key attribute is not found or has an incompatible type, the operator will fail.\\n"
 			+ "This operator must not be used inside a consistent region.";
 
@@ -0,0 +1,316 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.ResolvingDecoder;
+import org.apache.log4j.Logger;
+
+import com.ibm.streams.operator.AbstractOperator;
+import com.ibm.streams.operator.Attribute;
+import com.ibm.streams.operator.OperatorContext;
+import com.ibm.streams.operator.OperatorContext.ContextCheck;
+import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.StreamingInput;
+import com.ibm.streams.operator.StreamingOutput;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type.MetaType;
+import com.ibm.streams.operator.compile.OperatorContextChecker;
+import com.ibm.streams.operator.log4j.TraceLevel;
+import com.ibm.streams.operator.model.Icons;
+import com.ibm.streams.operator.model.InputPortSet;
+import com.ibm.streams.operator.model.InputPortSet.WindowMode;
+import com.ibm.streams.operator.model.InputPortSet.WindowPunctuationInputMode;
+import com.ibm.streams.operator.model.InputPorts;
+import com.ibm.streams.operator.model.Libraries;
+import com.ibm.streams.operator.model.OutputPortSet;
+import com.ibm.streams.operator.model.OutputPortSet.WindowPunctuationOutputMode;
+import com.ibm.streams.operator.model.OutputPorts;
+import com.ibm.streams.operator.model.Parameter;
+import com.ibm.streams.operator.model.PrimitiveOperator;
+import com.ibm.streams.operator.state.ConsistentRegionContext;
+import com.ibm.streams.operator.types.Blob;
+import com.ibm.streamsx.avro.convert.AvroToTupleConverter;
+import com.ibm.streamsx.avro.convert.AvroToTupleMapping;
+import com.ibm.streamsx.avro.io.AvroBlockReader;
+import com.ibm.streamsx.avro.schema.EmbeddedSchemaCache;
+import com.ibm.streamsx.avro.schema.ReaderSchemaCheck;
+
+/**
+ * Processes Avro tuples and decodes them into the attributes of the output
+ * tuple
+ *
+ */
+
+@PrimitiveOperator(name = AvroToTuple.OPER_NAME, namespace = "com.ibm.streamsx.avro", description = AvroToTuple.DESC)
+@InputPorts({
+		@InputPortSet(description = "Port that receives the Apache Avro data blocks. Window punctuation markers are passed to the output port.", cardinality = 1, optional = false, windowingMode = WindowMode.NonWindowed, windowPunctuationInputMode = WindowPunctuationInputMode.Oblivious) })
+@OutputPorts({
+		@OutputPortSet(description = "Port that produces a tuple for every Avro message. The attributes are decoded from the Avro fields with the same name, the other attributes are copied from the input tuple. Window punctuation markers are forwarded from the input port.", cardinality = 1, optional = false, windowPunctuationOutputMode = WindowPunctuationOutputMode.Generating) })
+@Icons(location16 = "icons/AvroToTuple_16.gif", location32 = "icons/AvroToTuple_32.gif")
+@Libraries(value = { "opt/downloaded/*" })
+public class AvroToTuple extends AbstractOperator {
+
+	public static final String OPER_NAME = "AvroToTuple";
+
+	// The number of writer schemas whose resolving decoders are kept
+	private static final int MAX_WRITER_SCHEMAS = 64;
+
+	private static Logger tracer = Logger.getLogger(AvroToTuple.class.getName());
+
+	private String inputAvroMessage = null;
+	private final String DEFAULT_INPUT_AVRO_MSG_ATTRIBUTE = "avroMessage";
+
+	protected String avroMessageSchemaFile = "";
+	protected boolean avroSchemaEmbedded = false;
+	Schema messageSchema;
+
+	// Variables
+	StreamingOutput<OutputTuple> outStream;
+	OutputTuple outTuple;
+	AvroToTupleMapping avroMapping;
+	BinaryDecoder decoder;
+	byte[] messageBytes = new byte[0];
+	AvroBlockReader blockReader;
+	// The resolving decoders of the embedded writer schemas, null if a writer
+	// schema is the message schema
+	final IdentityHashMap<Schema, ResolvingDecoder> resolvers = new IdentityHashMap<Schema, ResolvingDecoder>();
+
+	@Parameter(optional = true, description = "The input stream attribute which contains the input Avro message blob. This attribute must be of type blob. Default is the sole input attribute when the schema has one attribute otherwise `avroMessage`.")
+	public void setInputAvroMessage(String inputAvroMessage) {
+		this.inputAvroMessage = inputAvroMessage;
+	}
+
+	@Parameter(optional = false, description = "File that contains the Avro schema of the messages. The output attributes "
+			+ "are mapped to the fields of this schema with the same name. If the Avro schema is embedded, the messages are "
+			+ "resolved from their embedded writer schema to this schema.")
+	public void setAvroMessageSchemaFile(String avroMessageSchemaFile) {
+		this.avroMessageSchemaFile = avroMessageSchemaFile;
+	}
+
+	@Parameter(optional = true, description = "When set to true, the operator processes a blob which contains one or more "
+			+ "Avro messages and has the writer schema embedded, as generated by the `TupleToAvro` operator with parameter "
+			+ "`embedAvroSchema`. A tuple is submitted for every Avro message in the blob. When set to false, the blob "
+			+ "contains a single binary Avro message written with the schema of parameter `avroMessageSchemaFile`. Default "
+			+ "is false.")
+	public void setAvroSchemaEmbedded(Boolean avroSchemaEmbedded) {
+		this.avroSchemaEmbedded = avroSchemaEmbedded;
+	}
+
+	/**
+	 * Compile time operator checks: Do not use the operator in a consistent region
+	 * @param checker
+	 *            The operator context
+	 */
+	@ContextCheck(compile = true)
+	public static void checkInConsistentRegion(OperatorContextChecker checker) {
+		ConsistentRegionContext consistentRegionContext = checker.getOperatorContext().getOptionalContext(ConsistentRegionContext.class);
+		if(consistentRegionContext != null) {
+			checker.setInvalidContext(Messages.getString("AVRO_NOT_CONSISTENT_REGION", OPER_NAME), new Object[]{});
+		}
+	}
+
+	/**
+	 * Initialize this operator. Called once before any tuples are processed.
+	 *
+	 * @param operatorContext
+	 *            OperatorContext for this operator.
+	 * @throws Exception
+	 *             Operator failure, will cause the enclosing PE to terminate.
+	 */
+	@Override
+	public synchronized void initialize(OperatorContext operatorContext) throws Exception {
+		// Must call super.initialize(context) to correctly setup an operator.
+		super.initialize(operatorContext);
+		tracer.log(TraceLevel.TRACE, "Operator " + operatorContext.getName() + " initializing in PE: "
+				+ operatorContext.getPE().getPEId() + " in Job: " + operatorContext.getPE().getJobId());
+
+		StreamSchema ssOp0 = getOutput(0).getStreamSchema();
+		StreamSchema ssIp0 = getInput(0).getStreamSchema();
+
+		// If no input Avro message blob attribute specified, use default
+		if (inputAvroMessage == null) {
+			if (ssIp0.getAttributeCount() == 1) {
+				inputAvroMessage = ssIp0.getAttribute(0).getName();
+			} else {
+				inputAvroMessage = DEFAULT_INPUT_AVRO_MSG_ATTRIBUTE;
+			}
+		}
+		tracer.log(TraceLevel.TRACE, "Input Avro message attribute: " + inputAvroMessage);
+		Attribute inputAvroMessageAttribute = ssIp0.getAttribute(inputAvroMessage);
+		if (inputAvroMessageAttribute == null) {
+			tracer.log(TraceLevel.ERROR, Messages.getString("AVRO_INPUT_ATTRIBUTE_NOT_FOUND", "inputAvroMessage", inputAvroMessage));
+			throw new IllegalArgumentException(Messages.getString("AVRO_INPUT_ATTRIBUTE_NOT_FOUND", "inputAvroMessage", inputAvroMessage));
+		}
+		if (inputAvroMessageAttribute.getType().getMetaType() != MetaType.BLOB) {
+			tracer.log(TraceLevel.ERROR, Messages.getString("AVRO_ATTRIBUTE_WRONG_TYPE", "inputAvroMessage", inputAvroMessage, "blob"));
+			throw new IllegalArgumentException(Messages.getString("AVRO_ATTRIBUTE_WRONG_TYPE", "inputAvroMessage", inputAvroMessage, "blob"));
+		}
+
+		// Get the Avro schema file to decode the Avro messages
+		tracer.log(TraceLevel.TRACE, "Retrieving and parsing Avro message schema file " + avroMessageSchemaFile);
+		InputStream avscInput = new FileInputStream(avroMessageSchemaFile);
+		messageSchema = new Schema.Parser().parse(avscInput);
+
+		// Check Avro and Streams schema
+		boolean validMapping = AvroToTupleConverter.isValidAvroToTupleMapping(operatorContext.getName(), ssOp0,
+				messageSchema);
+		if (!validMapping) {
+			throw new Exception(Messages.getString("AVRO_NO_TUPLE_SCHEMA_MATCH"));
+		}
+		// Bind the Avro fields to the output attributes once for all tuples
+		avroMapping = AvroToTupleConverter.createMapping(ssOp0, messageSchema);
+
+		tracer.log(TraceLevel.TRACE, "Avro schema embedded in input Avro message: " + avroSchemaEmbedded);
+		// The embedded schema is parsed once and not for every message block
+		if (avroSchemaEmbedded)
+			blockReader = new AvroBlockReader(new EmbeddedSchemaCache());
+		outStream = getOutput(0);
+		outTuple = outStream.newTuple();
+
+		tracer.log(TraceLevel.TRACE, "AvroToTuple operator initialized, ready to receive tuples");
+	}
+
+	/**
+	 * Process an incoming tuple that arrived on the specified port.
+	 *
+	 */
+	@Override
+	public final void process(StreamingInput<Tuple> inputStream, Tuple tuple) throws Exception {
+
+		// Reuse the tuple for output port 0 and copy over any matching
+		// attributes
+		outTuple.assign(tuple);
+
+		// Get the incoming binary Avro message record(s)
+		Blob avroMessage = tuple.getBlob(inputAvroMessage);
+		if (tracer.isTraceEnabled())
+			tracer.log(TraceLevel.TRACE, "Processing Avro message with length " + avroMessage.getLength());
+
+		// Submit tuples based on the Avro content received in the Blob
+		try {
+			// The blob is read through its buffer view and not copied as a
+			// whole
+			ByteBuffer message = avroMessage.getByteBuffer();
+			if (!avroSchemaEmbedded) {
+				processAvroMessage(message);
+			} else {
+				processAvroMessageBlock(message);
+			}
+		} catch (Exception e) {
+			tracer.log(TraceLevel.ERROR, "Error while decoding Avro message into tuple: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Processes a blob containing a single message and with no embedded
+	 * schema. A message in a buffer without accessible array is copied into a
+	 * reused array.
+	 *
+	 * @param message
+	 *            The buffer view of the blob
+	 * @throws Exception
+	 */
+	private void processAvroMessage(ByteBuffer message) throws Exception {
+		if (message.hasArray()) {
+			decoder = DecoderFactory.get().binaryDecoder(message.array(), message.arrayOffset() + message.position(),
+					message.remaining(), decoder);
+		} else {
+			int length = message.remaining();
+			if (messageBytes.length < length)
+				messageBytes = new byte[length];
+			message.get(messageBytes, 0, length);
+			decoder = DecoderFactory.get().binaryDecoder(messageBytes, 0, length, decoder);
+		}
+		avroMapping.read(decoder, outTuple);
+		// Submit new tuple to output port 0
+		outStream.submit(outTuple);
+	}
+
+	/**
+	 * Processes a blob which contains one or more Avro messages and has the
+	 * schema embedded. Every Avro message in the blob is decoded into the
+	 * output tuple, which is then submitted to the output port.
+	 *
+	 * @param message
+	 *            The buffer view of the blob
+	 * @throws Exception
+	 */
+	private void processAvroMessageBlock(ByteBuffer message) throws Exception {
+		blockReader.open(message);
+		ResolvingDecoder resolver = getResolver(blockReader.getSchema());
+		while (blockReader.hasNext()) {
+			if (resolver == null) {
+				avroMapping.read(blockReader.nextDecoder(), outTuple);
+			} else {
+				resolver.configure(blockReader.nextDecoder());
+				avroMapping.read(resolver, outTuple);
+				resolver.drain();
+			}
+			// Submit new tuple to output port 0
+			outStream.submit(outTuple);
+		}
+	}
+
+	/**
+	 * Gets the decoder which resolves the messages of an embedded writer
+	 * schema to the message schema. The decoder is created once for every
+	 * writer schema.
+	 *
+	 * @param writerSchema
+	 *            The embedded writer schema
+	 * @return the resolving decoder, or null if the writer schema is the
+	 *         message schema
+	 * @throws Exception
+	 *             if the writer schema cannot be resolved to the message
+	 *             schema
+	 */
+	private ResolvingDecoder getResolver(Schema writerSchema) throws Exception {
+		if (resolvers.containsKey(writerSchema))
+			return resolvers.get(writerSchema);
+		ResolvingDecoder resolver = null;
+		if (!writerSchema.equals(messageSchema)) {
+			ReaderSchemaCheck.checkReaderSchema(writerSchema, messageSchema);
+			resolver = DecoderFactory.get().resolvingDecoder(writerSchema, messageSchema, null);
+		}
+		if (resolvers.size() >= MAX_WRITER_SCHEMAS)
+			resolvers.clear();
+		resolvers.put(writerSchema, resolver);
+		return resolver;
+	}
+
+	static final String DESC = "This operator decodes binary Avro messages directly into the attributes of the output tuple. "
+			+ "It is the counterpart of the `TupleToAvro` operator. Every output attribute which has a field with the same name "
+			+ "in the Avro schema of parameter `avroMessageSchemaFile` is decoded from this field, the other output attributes "
+			+ "are copied from the input tuple if it has an attribute with the same name. Avro fields without output attribute "
+			+ "are skipped. The Avro records are not converted to a JSON string or to a Generic Record, the fields are decoded "
+			+ "straight into the attributes by a mapping which is built when the operator is initialized. The attribute types "
+			+ "are mapped in the same way as by the `TupleToAvro` operator, including nested tuples and lists. An Avro field "
+			+ "can also be a union of null and the type of the attribute, a null value is decoded as the default value of the "
+			+ "attribute. The operator has two operation modes::\\n"
+			+ "* Avro Schema Embedded: The operator processes a blob which contains one or more Avro messages and has the schema embedded. "
+			+ "This is the pattern when Avro objects are read from a file (either local file system or HDFS). A tuple is "
+			+ "submitted for every Avro message in the blob. The messages are resolved from the embedded writer schema to the "
+			+ "schema of parameter `avroMessageSchemaFile`. This operation mode is entered if parameter `avroSchemaEmbedded` "
+			+ "is true.\\n"
+			+ "* No Avro Schema Embedded: The operator processes an Avro Blob containing a single message and with no embedded "
+			+ "schema, which is written with the schema of parameter `avroMessageSchemaFile`. This is the pattern when Avro "
+			+ "objects are passed over messaging infrastructure such as Apache Kafka.\\n"
+			+ "If the output attributes cannot be mapped to the Avro schema, or if the input message attribute is not found "
+			+ "or has an incompatible type, the operator will fail.\\n"
+			+ "This operator must not be used inside a consistent region.";
+
+}
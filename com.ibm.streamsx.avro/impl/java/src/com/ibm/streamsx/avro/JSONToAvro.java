@@ -7,21 +7,28 @@
 
 package com.ibm.streamsx.avro;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.avro.Schema;
-import org.apache.avro.file.DataFileWriter;
-import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileConstants;
 import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.generic.GenericRecord;
-import org.apache.avro.io.Decoder;
-import org.apache.avro.io.DecoderFactory;
-import org.apache.avro.io.Encoder;
+import org.apache.avro.io.BinaryEncoder;
 import org.apache.avro.io.EncoderFactory;
 import org.apache.log4j.Logger;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+
 import com.ibm.streams.operator.AbstractOperator;
 import com.ibm.streams.operator.Attribute;
 import com.ibm.streams.operator.OperatorContext;
@@ -32,8 +39,10 @@ import com.ibm.streams.operator.StreamingOutput;
 import com.ibm.streams.operator.Tuple;
 import com.ibm.streams.operator.OperatorContext.ContextCheck;
 import com.ibm.streams.operator.StreamingData.Punctuation;
+import com.ibm.streams.operator.Type;
 import com.ibm.streams.operator.Type.MetaType;
 import com.ibm.streams.operator.compile.OperatorContextChecker;
+import com.ibm.streams.operator.meta.CollectionType;
 import com.ibm.streams.operator.log4j.TraceLevel;
 import com.ibm.streams.operator.model.InputPortSet;
 import com.ibm.streams.operator.model.InputPortSet.WindowMode;
@@ -44,10 +53,21 @@ import com.ibm.streams.operator.model.OutputPortSet;
 import com.ibm.streams.operator.model.Libraries;
 import com.ibm.streams.operator.model.OutputPortSet.WindowPunctuationOutputMode;
 import com.ibm.streams.operator.state.ConsistentRegionContext;
+import com.ibm.streams.operator.types.Blob;
+import com.ibm.streams.operator.types.RString;
 import com.ibm.streams.operator.model.OutputPorts;
 import com.ibm.streams.operator.model.Parameter;
 import com.ibm.streams.operator.model.PrimitiveOperator;
-import com.ibm.streams.operator.types.ValueFactory;
+import com.ibm.streamsx.avro.io.AvroBlockBuilder;
+import com.ibm.streamsx.avro.io.BlobOutputStream;
+import com.ibm.streamsx.avro.io.JsonFieldReader;
+import com.ibm.streamsx.avro.io.JsonTranscoder;
+import com.ibm.streamsx.avro.io.MessageFormat;
+import com.ibm.streamsx.avro.io.TranscodeException;
+import com.ibm.streamsx.avro.io.TranscodeException.Reason;
+import com.ibm.streamsx.avro.schema.LocalSchemaRegistry;
+import com.ibm.streamsx.avro.schema.SchemaDirectoryStore;
+import com.ibm.streamsx.avro.schema.SchemaRegistry;
 
 /**
  * Processes Avro tuples and converts them to a JSON string
@@ -58,7 +78,8 @@ import com.ibm.streams.operator.types.ValueFactory;
 @InputPorts({
 		@InputPortSet(description = "Port that ingests JSON records.", cardinality = 1, optional = false, windowingMode = WindowMode.NonWindowed, windowPunctuationInputMode = WindowPunctuationInputMode.Oblivious) })
 @OutputPorts({
-		@OutputPortSet(description = "Port that produces Avro records.", cardinality = 1, optional = false, windowPunctuationOutputMode = WindowPunctuationOutputMode.Generating) })
+		@OutputPortSet(description = "Port that produces Avro records.", cardinality = 1, optional = false, windowPunctuationOutputMode = WindowPunctuationOutputMode.Generating),
+		@OutputPortSet(description = "Optional port that receives the rejected input tuples. The attributes are copied from the input tuple, the attribute of parameter `outputErrorReason` receives the reason code of the rejection.", cardinality = 1, optional = true, windowPunctuationOutputMode = WindowPunctuationOutputMode.Free) })
 @Icons(location16 = "icons/JsonToAvro_16.gif", location32 = "icons/JsonToAvro_32.gif")
 @Libraries(value = { "opt/downloaded/*" })
 public class JSONToAvro extends AbstractOperator {
@@ -71,6 +92,10 @@ public class JSONToAvro extends AbstractOperator {
 	private final String DEFAULT_INPUT_JSON_MSG_ATTRIBUTE = "jsonMessage";
 	private String outputAvroMessage = null;
 	private final String DEFAULT_OUTPUT_AVRO_MSG_ATTRIBUTE = "avroMessage";
+	private String outputErrorReason = null;
+	private final String DEFAULT_OUTPUT_ERROR_REASON_ATTRIBUTE = "errorReason";
+
+	private static final int MAX_PARSING_THREADS = 256;
 
 	private String avroMessageSchemaFile = null;
 	private boolean embedAvroSchema = false;
@@ -78,24 +103,70 @@ public class JSONToAvro extends AbstractOperator {
 	private long bytesPerMessage = 0;
 	private long tuplesPerMessage = 0;
 	private long timePerMessage = 0;
+	private long bytesPerBlock = 0;
+	private String codec = null;
+	private Integer compressionLevel = null;
+	private boolean asyncSubmit = false;
+	private String messageFormat = null;
+	private String avroSchemaDirectory = null;
 	private boolean ignoreParsingError = false;
+	private boolean batchInput = false;
+	private int parsingThreads = 1;
+	private String avroSchemaAttribute = null;
+	private String avroSchemaField = null;
 	private Schema messageSchema;
+	private MetaType inputJsonMessageType;
+	private boolean inputJsonMessageIsList = false;
+	private boolean avroMessageIsList = false;
 
-	@Parameter(optional = true, description = "The input stream attribute which contains the input JSON message string. This attribute must be of `rstring` or `ustring` type. Default is the sole input attribute when the schema has one attribute otherwise `jsonMessage`.")
+	@Parameter(optional = true, description = "The input stream attribute which contains the input JSON message string. This attribute must be of `rstring`, `ustring` or `blob` type, with parameter `batchInput` it can also be of `list<rstring>` or `list<ustring>` type. An `rstring` is parsed from its UTF-8 bytes without decoding it into a Java String, a `blob` must hold the UTF-8 bytes of the JSON string. Default is the sole input attribute when the schema has one attribute otherwise `jsonMessage`.")
 	public void setInputJsonMessage(String inputJsonMessage) {
 		this.inputJsonMessage = inputJsonMessage;
 	}
 
-	@Parameter(optional = true, description = "The ouput stream attribute which contains the output Avro message(s). This attribute must be of type blob. Default is the sole output attribute when the schema has one attribute otherwise `avroMessage`.")
+	@Parameter(optional = true, description = "The ouput stream attribute which contains the output Avro message(s). This attribute must be of type blob, with parameter `batchInput` it can also be of type `list<blob>` if Avro schema is not embedded in the output. Default is the sole output attribute when the schema has one attribute otherwise `avroMessage`.")
 	public void setOutputAvroMessage(String outputAvroMessage) {
 		this.outputAvroMessage = outputAvroMessage;
 	}
 
-	@Parameter(optional = false, description = "File that contains the Avro schema to serialize the Avro message(s).")
+	@Parameter(optional = true, description = "The attribute of the error output port which receives the reason code of a rejected input tuple. "
+			+ "This attribute must be of `rstring` or `ustring` type. The reason codes are `INVALID_JSON` (the JSON string is not valid JSON), "
+			+ "`TYPE_MISMATCH` (a JSON value does not have the type of the Avro schema), `OUT_OF_RANGE` (a JSON number does not fit "
+			+ "into an Avro `int` or `long`), `MISSING_FIELD` (a field of a record is missing), "
+			+ "`UNKNOWN_SYMBOL` (a string is not a symbol of an enum), `UNKNOWN_BRANCH` (a union branch is not a type of the union), "
+			+ "`WRONG_SIZE` (a fixed value does not have the size of the Avro schema), `UNKNOWN_SCHEMA` (the discriminator does not "
+			+ "name an Avro schema) and `INVALID_SCHEMA` (the Avro schema named by the discriminator cannot be used, for example "
+			+ "because it is not in the schema registry). Default is `errorReason`, which is only set if the "
+			+ "error output port has this attribute.")
+	public void setOutputErrorReason(String outputErrorReason) {
+		this.outputErrorReason = outputErrorReason;
+	}
+
+	@Parameter(optional = true, description = "File that contains the Avro schema to serialize the Avro message(s). "
+			+ "Required unless parameter `avroSchemaAttribute` or `avroSchemaField` is set. With one of these parameters, "
+			+ "the schema is used for the JSON strings whose discriminator does not name a schema of the schema directory.")
 	public void setAvroMessageSchemaFile(String avroMessageSchemaFile) {
 		this.avroMessageSchemaFile = avroMessageSchemaFile;
 	}
 
+	@Parameter(optional = true, description = "The input stream attribute whose value selects the Avro schema of the JSON "
+			+ "string, for example the event type. This attribute must be of `rstring` or `ustring` type. The value is the "
+			+ "full name of an Avro schema in the directory of parameter `avroSchemaDirectory`, or the name of its schema file "
+			+ "without the extension `.avsc`. Every schema gets its own transcoder and, if Avro schema is embedded in the "
+			+ "output, its own Avro message block, which are created when the first JSON string of the schema arrives. A JSON "
+			+ "string without schema is rejected with reason code `UNKNOWN_SCHEMA`, unless parameter `avroMessageSchemaFile` is "
+			+ "set. Cannot be used together with parameter `avroSchemaField`.")
+	public void setAvroSchemaAttribute(String avroSchemaAttribute) {
+		this.avroSchemaAttribute = avroSchemaAttribute;
+	}
+
+	@Parameter(optional = true, description = "The top-level field of the JSON object whose value selects the Avro schema of "
+			+ "the JSON string, like the value of parameter `avroSchemaAttribute`. The JSON string is only parsed up to this "
+			+ "field before it is transcoded. Cannot be used together with parameters `avroSchemaAttribute` and `batchInput`.")
+	public void setAvroSchemaField(String avroSchemaField) {
+		this.avroSchemaField = avroSchemaField;
+	}
+
 	@Parameter(optional = true, description = "Embed the schema in the generated Avro message. "
 			+ "When generating Avro messages that must be persisted to a file system, "
 			+ "the schema is expected to be included in the file. If this parameter is set to true, "
@@ -131,28 +202,128 @@ public class JSONToAvro extends AbstractOperator {
 	}
 
 	@Parameter(optional = true, description = "This parameter controls the maximum time in seconds before the Avro message block "
-			+ "is submitted to the output port. Default value is 0l (disabled). Only valid if Avro schema is embedded in the output.")
+			+ "is submitted to the output port. The time is checked by a timer, so the Avro message block is also submitted "
+			+ "when no further tuples arrive. Default value is 0l (disabled). Only valid if Avro schema is embedded in the output.")
 	public void setTimePerMessage(Long timePerMessage) {
 		this.timePerMessage = timePerMessage;
 	}
 
 	@Parameter(optional = true, description = "Ignore any JSON or Avro parsing errors. When set to true, errors that "
 			+ "occur when parsing the incoming JSON tuple or constructing the Avro tuple(s) will be ignored and the incoming tuple(s) "
-			+ "will be skipped. Default is false.")
+			+ "will be skipped. Default is false. If the error output port is present, invalid JSON strings never make the "
+			+ "operator fail.")
 	public void setIgnoreParsingError(Boolean ignoreParsingError) {
 		this.ignoreParsingError = ignoreParsingError;
 	}
 
+	@Parameter(optional = true, description = "This parameter controls the uncompressed size in bytes of the data blocks "
+			+ "within the Avro message block. Records are collected in a data block until this size is reached, then the "
+			+ "data block is closed with a sync marker and a new data block is started. The last data block is closed when "
+			+ "the Avro message block is submitted. Valid values are from 32 to 1073741824. Default is 64000. "
+			+ "Only valid if Avro schema is embedded in the output.")
+	public void setBytesPerBlock(Long bytesPerBlock) {
+		this.bytesPerBlock = bytesPerBlock;
+	}
+
+	@Parameter(optional = true, description = "The codec that compresses the data blocks within the Avro message block. "
+			+ "Valid codecs are `null` (no compression), `deflate`, `snappy`, `bzip2`, `xz` and `zstandard`. "
+			+ "Default is `null`. Only valid if Avro schema is embedded in the output.")
+	public void setCodec(String codec) {
+		this.codec = codec;
+	}
+
+	@Parameter(optional = true, description = "The compression level of the codec. Valid levels are from 0 to 9 for "
+			+ "codec `deflate` and `xz`, and from 1 to 22 for codec `zstandard`. The other codecs have no compression level. "
+			+ "Default is the default level of the codec: 6 for `deflate` and `xz`, 3 for `zstandard`. "
+			+ "Only valid if Avro schema is embedded in the output.")
+	public void setCompressionLevel(Integer compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	@Parameter(optional = true, description = "When set to true, the Avro message block is closed, compressed and submitted "
+			+ "by a separate thread, while the following tuples are collected in a second message block. The message blocks and "
+			+ "window punctuations are submitted in order. Tuple processing only waits when the previous message block has not "
+			+ "been submitted yet. Default is false. Only valid if Avro schema is embedded in the output.")
+	public void setAsyncSubmit(Boolean asyncSubmit) {
+		this.asyncSubmit = asyncSubmit;
+	}
+
+	@Parameter(optional = true, description = "The format of the generated Avro messages. With `binary`, the message is the "
+			+ "binary Avro encoding of the record. With `singleObject`, the message has the Avro single-object encoding: the "
+			+ "marker bytes `C3 01` and the 8 byte little-endian CRC-64-AVRO fingerprint of the Avro schema precede the binary "
+			+ "record, so the receiver can look up the schema of the message. With `schemaRegistry`, the message has the schema "
+			+ "registry wire format: the magic byte 0 and the 4 byte big-endian schema id of the Avro schema in the schema "
+			+ "registry of parameter `avroSchemaDirectory` precede the binary record. Default is `binary`. Only valid if Avro "
+			+ "schema is not embedded in the output.")
+	public void setMessageFormat(String messageFormat) {
+		this.messageFormat = messageFormat;
+	}
+
+	@Parameter(optional = true, description = "When set to true, an input tuple holds a batch of JSON strings. If the input "
+			+ "JSON message attribute is of type `rstring`, `ustring` or `blob`, it holds newline-delimited JSON: every line is a "
+			+ "JSON string, blank lines are skipped. If the attribute is of type `list<rstring>` or `list<ustring>`, every element "
+			+ "is a JSON string. If Avro schema is embedded in the output, all JSON strings of the batch are appended to the "
+			+ "current Avro message block before the thresholds are checked. Otherwise, if the output Avro message attribute is "
+			+ "of type `list<blob>`, a single tuple with the Avro messages of the batch is submitted, and if the attribute is of "
+			+ "type `blob`, a tuple is submitted for every Avro message. An invalid JSON string only rejects itself, not the whole "
+			+ "batch. Default is false.")
+	public void setBatchInput(Boolean batchInput) {
+		this.batchInput = batchInput;
+	}
+
+	@Parameter(optional = true, description = "The number of threads that parse the JSON strings of a batch and transcode them "
+			+ "to Avro. With more than one thread, a batch with many JSON strings is split into chunks which are transcoded in "
+			+ "parallel, and the Avro messages are written in the order of the JSON strings. The parameter is ignored without "
+			+ "parameter `batchInput`. Valid values are from 1 to 256. Default is 1, the batch is transcoded on the thread that "
+			+ "processes the input tuple.")
+	public void setParsingThreads(Integer parsingThreads) {
+		this.parsingThreads = parsingThreads;
+	}
+
+	@Parameter(optional = true, description = "Directory of the local schema registry, which contains a file `<id>.avsc` "
+			+ "for every registered Avro schema, where `<id>` is the schema id. Required if parameter `messageFormat` is "
+			+ "`schemaRegistry`. Also the directory of the Avro schemas which are selected by parameter `avroSchemaAttribute` "
+			+ "or `avroSchemaField`, then it is required and the schema files can have any name. Schema files added while the "
+			+ "operator runs are loaded when a discriminator names an unknown schema. Only valid if Avro schema is not embedded "
+			+ "in the output, unless the schema is selected by a discriminator.")
+	public void setAvroSchemaDirectory(String avroSchemaDirectory) {
+		this.avroSchemaDirectory = avroSchemaDirectory;
+	}
+
 	// Variables
 	StreamingOutput<OutputTuple> outStream;
 	OutputTuple outTuple;
-	GenericDatumReader<GenericRecord> jsonReader;
-	GenericDatumWriter<GenericRecord> avroWriter;
-	DataFileWriter<GenericRecord> avroDataFileWriter;
-	ByteArrayOutputStream avroMessageByteArray = new ByteArrayOutputStream();
-	ByteArrayOutputStream avroBlockByteArray = new ByteArrayOutputStream();
-	long lastSubmitted = System.currentTimeMillis();
-	int numberOfBatchedMessages = 0;
+	StreamingOutput<OutputTuple> errorStream;
+	OutputTuple errorTuple;
+	boolean errorJsonMessage = false;
+	boolean errorTupleAssigned = false;
+	Object rejectedJson;
+	List<Object> jsonBatch;
+	RejectionLog rejections = new RejectionLog(tracer, "JSON strings while converting to AVRO schema");
+	MessageFormat format;
+	SchemaRegistry schemaRegistry;
+	MessageRoutes<Route> routes;
+	JsonFieldReader schemaFieldReader;
+	ExecutorService parsingWorkers;
+	BinaryEncoder avroMessageEncoder;
+	BlobOutputStream avroMessageByteArray = new BlobOutputStream();
+	BlobOutputStream avroRecord = new BlobOutputStream();
+
+	/*
+	 * The route of an Avro schema with the compiled transcoder of the JSON
+	 * strings, which are appended to the message block as encoded records
+	 */
+	private class Route extends MessageRoute<GenericRecord> {
+		final JsonTranscoder transcoder;
+		final JsonBatchTranscoder batchTranscoder;
+
+		Route(Schema schema) throws Exception {
+			super(schema, new GenericDatumWriter<GenericRecord>(schema), routes);
+			transcoder = new JsonTranscoder(schema);
+			batchTranscoder = batchInput ? new JsonBatchTranscoder(schema, transcoder, header, parsingThreads, parsingWorkers)
+					: null;
+		}
+	}
 
 	/**
 	 * Compile time operator checks: Do not use the operator in a consistent region
@@ -200,10 +371,21 @@ public class JSONToAvro extends AbstractOperator {
 			throw new IllegalArgumentException(Messages.getString("AVRO_INPUT_ATTRIBUTE_NOT_FOUND", "inputJsonMessage", inputJsonMessage));
 		} else {
 			MetaType attributeType = inputJsonMessageAttribute.getType().getMetaType();
-			if (attributeType!=MetaType.RSTRING && attributeType!=MetaType.USTRING) {
-				tracer.log(TraceLevel.ERROR, Messages.getString("AVRO_ATTRIBUTE_WRONG_TYPE", "inputJsonMessage", inputJsonMessage, "rstring or ustring"));
-				throw new IllegalArgumentException(Messages.getString("AVRO_ATTRIBUTE_WRONG_TYPE", "inputJsonMessage", inputJsonMessage, "rstring or ustring"));
+			// A list holds a batch of JSON strings
+			inputJsonMessageIsList = attributeType == MetaType.LIST && batchInput;
+			if (inputJsonMessageIsList) {
+				Type elementType = ((CollectionType) inputJsonMessageAttribute.getType()).getElementType();
+				attributeType = elementType.getMetaType();
+				if (attributeType!=MetaType.RSTRING && attributeType!=MetaType.USTRING) {
+					tracer.log(TraceLevel.ERROR, Messages.getString("AVRO_LIST_ELEMENT_WRONG_TYPE", "inputJsonMessage", inputJsonMessage, elementType.getLanguageType(), "rstring or ustring"));
+					throw new IllegalArgumentException(Messages.getString("AVRO_LIST_ELEMENT_WRONG_TYPE", "inputJsonMessage", inputJsonMessage, elementType.getLanguageType(), "rstring or ustring"));
+				}
 			}
+			if (attributeType!=MetaType.RSTRING && attributeType!=MetaType.USTRING && attributeType!=MetaType.BLOB) {
+				tracer.log(TraceLevel.ERROR, Messages.getString("AVRO_ATTRIBUTE_WRONG_TYPE", "inputJsonMessage", inputJsonMessage, "rstring, ustring or blob"));
+				throw new IllegalArgumentException(Messages.getString("AVRO_ATTRIBUTE_WRONG_TYPE", "inputJsonMessage", inputJsonMessage, "rstring, ustring or blob"));
+			}
+			inputJsonMessageType = attributeType;
 		}
 
 		// If no output Avro message attribute specified, use default
@@ -221,37 +403,154 @@ public class JSONToAvro extends AbstractOperator {
 			throw new IllegalArgumentException(Messages.getString("AVRO_OUTPUT_ATTRIBUTE_NOT_FOUND", "outputAvroMessage", outputAvroMessage));
 		} else {
 			MetaType attributeType = outputAvroMessageAttribute.getType().getMetaType();
+			// A list receives the Avro messages of a batch
+			avroMessageIsList = attributeType == MetaType.LIST && batchInput && !embedAvroSchema;
+			if (avroMessageIsList)
+				attributeType = ((CollectionType) outputAvroMessageAttribute.getType()).getElementType().getMetaType();
 			if(attributeType!=MetaType.BLOB) {
 				tracer.log(TraceLevel.ERROR, Messages.getString("AVRO_ATTRIBUTE_WRONG_TYPE", "outputAvroMessage", outputAvroMessage, "blob"));
 				throw new IllegalArgumentException(Messages.getString("AVRO_ATTRIBUTE_WRONG_TYPE", "outputAvroMessage", outputAvroMessage, "blob"));
 			}
 		}
 
+		// The error output port is optional, the reason code attribute too
+		if (operatorContext.getStreamingOutputs().size() > 1) {
+			StreamSchema ssOp1 = getOutput(1).getStreamSchema();
+			boolean defaultReason = (outputErrorReason == null);
+			if (defaultReason)
+				outputErrorReason = DEFAULT_OUTPUT_ERROR_REASON_ATTRIBUTE;
+			Attribute outputErrorReasonAttribute = ssOp1.getAttribute(outputErrorReason);
+			if (outputErrorReasonAttribute == null) {
+				if (!defaultReason) {
+					tracer.log(TraceLevel.ERROR, Messages.getString("AVRO_OUTPUT_ATTRIBUTE_NOT_FOUND", "outputErrorReason", outputErrorReason));
+					throw new IllegalArgumentException(Messages.getString("AVRO_OUTPUT_ATTRIBUTE_NOT_FOUND", "outputErrorReason", outputErrorReason));
+				}
+				outputErrorReason = null;
+			} else {
+				MetaType attributeType = outputErrorReasonAttribute.getType().getMetaType();
+				if (attributeType!=MetaType.RSTRING && attributeType!=MetaType.USTRING) {
+					tracer.log(TraceLevel.ERROR, Messages.getString("AVRO_ATTRIBUTE_WRONG_TYPE", "outputErrorReason", outputErrorReason, "rstring or ustring"));
+					throw new IllegalArgumentException(Messages.getString("AVRO_ATTRIBUTE_WRONG_TYPE", "outputErrorReason", outputErrorReason, "rstring or ustring"));
+				}
+			}
+			tracer.log(TraceLevel.TRACE, "Output error reason attribute: " + outputErrorReason);
+			// The rejected JSON string of a batch replaces the batch
+			if (batchInput) {
+				Attribute errorJsonMessageAttribute = ssOp1.getAttribute(inputJsonMessage);
+				errorJsonMessage = errorJsonMessageAttribute != null
+						&& (errorJsonMessageAttribute.getType().getMetaType() == MetaType.RSTRING
+						|| errorJsonMessageAttribute.getType().getMetaType() == MetaType.USTRING);
+			}
+			errorStream = getOutput(1);
+			errorTuple = errorStream.newTuple();
+		} else if (outputErrorReason != null) {
+			throw new IllegalArgumentException(Messages.getString("AVRO_ERROR_PORT_REQUIRED", "outputErrorReason"));
+		}
+
+		// The discriminator selects the Avro schema of a JSON string
+		if (avroSchemaAttribute != null && avroSchemaField != null)
+			throw new IllegalArgumentException(Messages.getString("AVRO_PARAMETERS_EXCLUSIVE", "avroSchemaAttribute", "avroSchemaField"));
+		if (avroSchemaField != null && batchInput)
+			throw new IllegalArgumentException(Messages.getString("AVRO_PARAMETERS_EXCLUSIVE", "avroSchemaField", "batchInput"));
+		if (avroSchemaAttribute != null) {
+			tracer.log(TraceLevel.TRACE, "Avro schema attribute: " + avroSchemaAttribute);
+			Attribute avroSchemaAttributeAttribute = ssIp0.getAttribute(avroSchemaAttribute);
+			if (avroSchemaAttributeAttribute == null) {
+				tracer.log(TraceLevel.ERROR, Messages.getString("AVRO_INPUT_ATTRIBUTE_NOT_FOUND", "avroSchemaAttribute", avroSchemaAttribute));
+				throw new IllegalArgumentException(Messages.getString("AVRO_INPUT_ATTRIBUTE_NOT_FOUND", "avroSchemaAttribute", avroSchemaAttribute));
+			}
+			MetaType attributeType = avroSchemaAttributeAttribute.getType().getMetaType();
+			if (attributeType!=MetaType.RSTRING && attributeType!=MetaType.USTRING) {
+				tracer.log(TraceLevel.ERROR, Messages.getString("AVRO_ATTRIBUTE_WRONG_TYPE", "avroSchemaAttribute", avroSchemaAttribute, "rstring or ustring"));
+				throw new IllegalArgumentException(Messages.getString("AVRO_ATTRIBUTE_WRONG_TYPE", "avroSchemaAttribute", avroSchemaAttribute, "rstring or ustring"));
+			}
+		}
+		boolean routed = avroSchemaAttribute != null || avroSchemaField != null;
+		if (routed && avroSchemaDirectory == null)
+			throw new IllegalArgumentException(Messages.getString("AVRO_PARAMETER_REQUIRED", "avroSchemaDirectory",
+					avroSchemaAttribute != null ? "avroSchemaAttribute" : "avroSchemaField",
+					avroSchemaAttribute != null ? avroSchemaAttribute : avroSchemaField));
+
 		// Get the Avro schema file to parse the Avro messages
-		tracer.log(TraceLevel.TRACE, "Retrieving and parsing Avro message schema file " + avroMessageSchemaFile);
-		InputStream avscInput = new FileInputStream(avroMessageSchemaFile);
-		Schema.Parser parser = new Schema.Parser();
-		messageSchema = parser.parse(avscInput);
+		if (avroMessageSchemaFile != null) {
+			tracer.log(TraceLevel.TRACE, "Retrieving and parsing Avro message schema file " + avroMessageSchemaFile);
+			InputStream avscInput = new FileInputStream(avroMessageSchemaFile);
+			Schema.Parser parser = new Schema.Parser();
+			messageSchema = parser.parse(avscInput);
+		} else if (!routed) {
+			throw new IllegalArgumentException(Messages.getString("AVRO_SCHEMA_REQUIRED", "avroMessageSchemaFile",
+					"avroSchemaAttribute, avroSchemaField"));
+		}
 
 		tracer.log(TraceLevel.TRACE, "Embed Avro schema in generated output Avro message block: " + embedAvroSchema);
 		tracer.log(TraceLevel.TRACE, "Submit Avro message block when punctuation is received: " + submitOnPunct);
 		tracer.log(TraceLevel.TRACE, "Ignore parsing error: " + ignoreParsingError);
 
 		// submitOnPunct.. is only valid if Avro schema is embedded in the output
-		if (!embedAvroSchema && ( submitOnPunct || (tuplesPerMessage != 0) || (bytesPerMessage != 0) || (timePerMessage != 0) ) )
-			throw new Exception(Messages.getString("AVRO_EMBEDDED_SCHEMA_REQUIRED","submitOnPunct, bytesPerMessage, timePerMessage, tuplesPerMessage"));
+		if (!embedAvroSchema && ( submitOnPunct || (tuplesPerMessage != 0) || (bytesPerMessage != 0) || (timePerMessage != 0) || (bytesPerBlock != 0) || (codec != null) || (compressionLevel != null) || asyncSubmit ) )
+			throw new Exception(Messages.getString("AVRO_EMBEDDED_SCHEMA_REQUIRED","submitOnPunct, bytesPerMessage, timePerMessage, tuplesPerMessage, bytesPerBlock, codec, compressionLevel, asyncSubmit"));
 		// If Avro schema is embedded in the output, submitOnPunct is mandatory
 		if (embedAvroSchema && !submitOnPunct && tuplesPerMessage == 0 && bytesPerMessage == 0 && timePerMessage == 0)
 			throw new Exception(Messages.getString("AVRO_MISSING_THRESHOLD","submitOnPunct, bytesPerMessage, timePerMessage, tuplesPerMessage"));
+		if (embedAvroSchema && (messageFormat != null || (avroSchemaDirectory != null && !routed)))
+			throw new Exception(Messages.getString("AVRO_EMBEDDED_SCHEMA_NOT_ALLOWED", "messageFormat, avroSchemaDirectory"));
+		if (messageFormat == null)
+			messageFormat = MessageFormat.BINARY.getParameterValue();
+		tracer.log(TraceLevel.TRACE, "Avro message format: " + messageFormat);
+		format = MessageFormat.fromParameter("messageFormat", messageFormat);
+		if (format == MessageFormat.SCHEMA_REGISTRY) {
+			if (avroSchemaDirectory == null)
+				throw new IllegalArgumentException(Messages.getString("AVRO_PARAMETER_REQUIRED", "avroSchemaDirectory",
+						"messageFormat", messageFormat));
+			tracer.log(TraceLevel.TRACE, "Loading schema registry from directory " + avroSchemaDirectory);
+			schemaRegistry = new LocalSchemaRegistry(new File(avroSchemaDirectory));
+		}
+		if (bytesPerBlock == 0)
+			bytesPerBlock = AvroBlockBuilder.DEFAULT_BYTES_PER_BLOCK;
+		if (bytesPerBlock < AvroBlockBuilder.MIN_BYTES_PER_BLOCK || bytesPerBlock > AvroBlockBuilder.MAX_BYTES_PER_BLOCK)
+			throw new IllegalArgumentException(Messages.getString("AVRO_PARAMETER_OUT_OF_RANGE", "bytesPerBlock",
+					bytesPerBlock, AvroBlockBuilder.MIN_BYTES_PER_BLOCK, AvroBlockBuilder.MAX_BYTES_PER_BLOCK));
+		if (parsingThreads < 1 || parsingThreads > MAX_PARSING_THREADS)
+			throw new IllegalArgumentException(Messages.getString("AVRO_PARAMETER_OUT_OF_RANGE", "parsingThreads",
+					parsingThreads, 1, MAX_PARSING_THREADS));
+		tracer.log(TraceLevel.TRACE, "Batch input: " + batchInput);
+		if (codec == null)
+			codec = DataFileConstants.NULL_CODEC;
+		CodecFactory codecFactory = AvroBlockBuilder.createCodecFactory(codec, compressionLevel);
+		tracer.log(TraceLevel.TRACE, "Data block codec: " + codecFactory);
 
 		// Prepare and initialize variables that don't change for every input
 		// record
-		jsonReader = new GenericDatumReader<GenericRecord>(messageSchema);
-		avroWriter = new GenericDatumWriter<GenericRecord>(messageSchema);
-		avroDataFileWriter = new DataFileWriter<GenericRecord>(avroWriter);
+		outStream = getOutput(0);
+		outTuple = outStream.newTuple();
+		routes = new MessageRoutes<Route>(this, outStream, outputAvroMessage);
 		if (embedAvroSchema)
-			avroDataFileWriter.create(messageSchema, avroBlockByteArray);
-		numberOfBatchedMessages = 0;
+			routes.setEmbeddedSchema((int) bytesPerBlock, codecFactory, asyncSubmit ? operatorContext.getThreadFactory() : null,
+					tuplesPerMessage, bytesPerMessage, timePerMessage);
+		else
+			routes.setMessageFormat(format, schemaRegistry);
+		if (batchInput) {
+			if (parsingThreads > 1) {
+				tracer.log(TraceLevel.TRACE, "Parsing JSON strings with " + parsingThreads + " threads");
+				parsingWorkers = Executors.newFixedThreadPool(parsingThreads - 1, operatorContext.getThreadFactory());
+			}
+			jsonBatch = new ArrayList<Object>();
+		}
+		if (messageSchema != null)
+			routes.setDefaultRoute(new Route(messageSchema));
+		if (routed) {
+			tracer.log(TraceLevel.TRACE, "Loading Avro schemas from directory " + avroSchemaDirectory);
+			routes.setSchemaStore(new SchemaDirectoryStore(new File(avroSchemaDirectory)),
+					new SchemaRouter.RouteFactory<Route>() {
+						@Override
+						public Route createRoute(Schema schema) throws Exception {
+							tracer.log(TraceLevel.TRACE, "Creating transcoder of Avro schema " + schema.getFullName());
+							return new Route(schema);
+						}
+					});
+			if (avroSchemaField != null)
+				schemaFieldReader = new JsonFieldReader(avroSchemaField);
+		}
 
 		tracer.log(TraceLevel.TRACE, "JSONToAvro operator initialized, ready to receive tuples");
 
@@ -263,44 +562,44 @@ public class JSONToAvro extends AbstractOperator {
 	@Override
 	public final void process(StreamingInput<Tuple> inputStream, Tuple tuple) throws Exception {
 
-		String jsonInput = tuple.getString(inputJsonMessage);
-
 		if (tracer.isTraceEnabled())
-			tracer.log(TraceLevel.TRACE, "Input JSON string: " + jsonInput);
+			tracer.log(TraceLevel.TRACE, "Input JSON string: " + getJsonString(tuple));
 
-		// Create a new tuple for output port 0 and copy over any matching
-		// attributes
-		outStream = getOutput(0);
-		outTuple = outStream.newTuple();
-		outTuple.assign(tuple);
+		// The timer thread submits Avro message blocks, too, the tuples are
+		// only processed under the lock of the operator if there is a timer
+		if (routes.isTimed()) {
+			synchronized (this) {
+				processTuple(tuple);
+			}
+		} else {
+			processTuple(tuple);
+		}
+	}
 
-		// Decode the JSON string
-		GenericRecord datum = null;
+	// Transcode the JSON string of a tuple and submit it or add it to the Avro
+	// message block
+	private void processTuple(Tuple tuple) throws Exception {
 		try {
-			Decoder decodedJson = DecoderFactory.get().jsonDecoder(messageSchema, jsonInput);
-			datum = jsonReader.read(null, decodedJson);
-
-			// Encode the datum to Avro
-			if (embedAvroSchema) {
-				avroDataFileWriter.append(datum);
-				avroDataFileWriter.flush();
-				numberOfBatchedMessages++;
-				// Check if any of the threshold parameters has been exceeded
-				if (tuplesPerMessage != 0 && numberOfBatchedMessages >= tuplesPerMessage)
-					submitAvroToOuput();
-				if (bytesPerMessage != 0 && avroBlockByteArray.size() >= bytesPerMessage)
-					submitAvroToOuput();
-				if (timePerMessage != 0) {
-					if (System.currentTimeMillis() >= (lastSubmitted + (1000 * timePerMessage)))
-						submitAvroToOuput();
-				}
+			// Transcode the JSON string directly to Avro
+			if (batchInput) {
+				processBatch(tuple);
+			} else if (embedAvroSchema) {
+				Route route = transcodeOrReject(tuple, avroRecord);
+				if (route == null)
+					return;
+				route.blockSubmitter.appendEncoded(tuple, avroRecord.toByteBuffer());
+				routes.submitOnThreshold(route);
 			} else {
-				Encoder encoder = EncoderFactory.get().binaryEncoder(avroMessageByteArray, null);
-				avroWriter.write(datum, encoder);
-				encoder.flush();
+				// Reuse the tuple for output port 0 and copy over any
+				// matching attributes
+				outTuple.assign(tuple);
+				if (transcodeOrReject(tuple, avroMessageByteArray) == null)
+					return;
 				submitAvroToOuput();
 			}
 		} catch (Exception e) {
+			String jsonInput = (rejectedJson != null) ? toJsonString(rejectedJson) : getJsonString(tuple);
+			rejectedJson = null;
 			tracer.log(TraceLevel.ERROR, "Error while converting JSON string to AVRO schema: " + e.getMessage()
 					+ ". JSON String: " + jsonInput);
 			// If parsing errors must not be ignored, make the operator fail
@@ -310,32 +609,261 @@ public class JSONToAvro extends AbstractOperator {
 		}
 	}
 
+	/**
+	 * Transcode the JSON string of a tuple with the schema of its route, and
+	 * reject the tuple if the JSON string is invalid or has no schema. A
+	 * rejected tuple is submitted to the error output port with its reason
+	 * code, or it is skipped if parsing errors are ignored. Rejections are
+	 * logged at most once per interval, with their count.
+	 * 
+	 * @param tuple
+	 *            The tuple holding the JSON string
+	 * @param out
+	 *            The stream that receives the binary Avro encoding, preceded by
+	 *            the message header if Avro schema is not embedded
+	 * @return the route of the JSON string, or null if the tuple was rejected
+	 * @throws Exception
+	 *             if the JSON string is invalid and the operator must fail
+	 */
+	private Route transcodeOrReject(Tuple tuple, BlobOutputStream out) throws Exception {
+		try {
+			Route route = getRoute(tuple);
+			transcode(tuple, route.transcoder, out, route.header);
+			return route;
+		} catch (TranscodeException | JsonProcessingException e) {
+			reject(tuple, null, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Select the route of a tuple by its discriminator. Without discriminator,
+	 * or if the discriminator does not name a schema, this is the route of the
+	 * schema of parameter avroMessageSchemaFile.
+	 * 
+	 * @param tuple
+	 *            The tuple holding the JSON string
+	 * @return the route
+	 * @throws TranscodeException
+	 *             if no schema is found or its route cannot be created
+	 * @throws IOException
+	 *             if the JSON string is invalid before the discriminator field
+	 */
+	private Route getRoute(Tuple tuple) throws IOException {
+		String value = null;
+		if (avroSchemaAttribute != null) {
+			value = tuple.getString(avroSchemaAttribute);
+		} else if (schemaFieldReader != null) {
+			switch (inputJsonMessageType) {
+			case RSTRING:
+				value = schemaFieldReader.read(((RString) tuple.getObject(inputJsonMessage)).getByteBuffer());
+				break;
+			case BLOB:
+				value = schemaFieldReader.read(tuple.getBlob(inputJsonMessage).getByteBuffer());
+				break;
+			default:
+				value = schemaFieldReader.read(tuple.getString(inputJsonMessage));
+			}
+		}
+		return routes.getRoute(value);
+	}
+
+	/**
+	 * Transcode the batch of JSON strings of a tuple and submit their Avro
+	 * messages. The JSON strings that fail are rejected one by one.
+	 * 
+	 * @param tuple
+	 *            The tuple holding the batch of JSON strings
+	 * @throws Exception
+	 *             if a JSON string is invalid and the operator must fail
+	 */
+	private void processBatch(Tuple tuple) throws Exception {
+		Route route;
+		try {
+			route = getRoute(tuple);
+		} catch (TranscodeException e) {
+			reject(tuple, null, e);
+			return;
+		}
+		JsonBatchTranscoder batchTranscoder = route.batchTranscoder;
+		jsonBatch.clear();
+		errorTupleAssigned = false;
+		if (inputJsonMessageIsList) {
+			for (Object json : tuple.getList(inputJsonMessage))
+				jsonBatch.add((json instanceof RString) ? ((RString) json).getByteBuffer() : json);
+		} else {
+			switch (inputJsonMessageType) {
+			case RSTRING:
+				batchTranscoder.addLines(((RString) tuple.getObject(inputJsonMessage)).getByteBuffer(), jsonBatch);
+				break;
+			case BLOB:
+				batchTranscoder.addLines(tuple.getBlob(inputJsonMessage).getByteBuffer(), jsonBatch);
+				break;
+			default:
+				JsonBatchTranscoder.addLines(tuple.getString(inputJsonMessage), jsonBatch);
+			}
+		}
+		if (tracer.isTraceEnabled())
+			tracer.log(TraceLevel.TRACE, "Batch of " + jsonBatch.size() + " JSON strings");
+		batchTranscoder.transcode(jsonBatch);
+		List<Blob> avroMessages = avroMessageIsList ? new ArrayList<Blob>() : null;
+		for (int c = 0; c < batchTranscoder.getChunkCount(); c++) {
+			JsonBatchTranscoder.Chunk chunk = batchTranscoder.getChunk(c);
+			for (int i = 0; i < chunk.getCount(); i++) {
+				Exception failure = chunk.getFailure(i);
+				if (failure != null) {
+					reject(tuple, jsonBatch.get(chunk.getFrom() + i), failure);
+				} else if (embedAvroSchema) {
+					route.blockSubmitter.appendEncoded(tuple, chunk.getEncoding(i));
+				} else if (avroMessageIsList) {
+					avroMessages.add(chunk.getEncodingBlob(i));
+				} else {
+					outTuple.assign(tuple);
+					outTuple.setBlob(outputAvroMessage, chunk.getEncodingBlob(i));
+					outStream.submit(outTuple);
+				}
+			}
+		}
+		if (embedAvroSchema) {
+			routes.submitOnThreshold(route);
+		} else if (avroMessageIsList && !avroMessages.isEmpty()) {
+			outTuple.assign(tuple);
+			outTuple.setList(outputAvroMessage, avroMessages);
+			outStream.submit(outTuple);
+		}
+	}
+
+	/**
+	 * Reject an invalid JSON string. The tuple is submitted to the error output
+	 * port with the reason code, or it is skipped if parsing errors are ignored.
+	 * 
+	 * @param tuple
+	 *            The tuple holding the JSON string
+	 * @param json
+	 *            The JSON string of a batch, or null for the JSON string of the
+	 *            tuple
+	 * @param e
+	 *            The failure of the JSON string
+	 * @throws Exception
+	 *             the failure if the operator must fail
+	 */
+	private void reject(Tuple tuple, Object json, Exception e) throws Exception {
+		if (errorStream == null && !ignoreParsingError) {
+			rejectedJson = json;
+			throw e;
+		}
+		logRejected(tuple, json, e);
+		if (errorStream != null) {
+			Reason reason = (e instanceof TranscodeException) ? ((TranscodeException) e).getReason() : Reason.INVALID_JSON;
+			// The attributes of a batch are copied once for all its rejected
+			// JSON strings, which only replace the JSON string and the reason
+			if (json == null || !errorTupleAssigned) {
+				errorTuple.assign(tuple);
+				errorTupleAssigned = (json != null);
+			}
+			if (json != null && errorJsonMessage)
+				errorTuple.setString(inputJsonMessage, toJsonString(json));
+			if (outputErrorReason != null)
+				errorTuple.setString(outputErrorReason, reason.name());
+			errorStream.submit(errorTuple);
+		}
+	}
+
+	/**
+	 * Log a rejected JSON string. The JSON string is only logged in debug
+	 * level, errors are logged at most once per interval.
+	 */
+	private void logRejected(Tuple tuple, Object json, Exception e) {
+		if (tracer.isDebugEnabled())
+			tracer.log(TraceLevel.DEBUG, "Rejected JSON string: " + e.getMessage() + ". JSON String: "
+					+ ((json != null) ? toJsonString(json) : getJsonString(tuple)));
+		rejections.reject(e);
+	}
+
+	/**
+	 * Transcode the JSON string of a tuple into its binary Avro encoding. The
+	 * bytes left in the stream or in the encoder by a failed JSON string are
+	 * discarded. An rstring or blob is transcoded from its UTF-8 bytes.
+	 * 
+	 * @param tuple
+	 *            The tuple holding the JSON string
+	 * @param transcoder
+	 *            The transcoder of the schema
+	 * @param out
+	 *            The stream that receives the binary Avro encoding
+	 * @param header
+	 *            The message header which precedes the record, or null
+	 * @throws IOException
+	 *             if the JSON string is invalid or does not match the schema
+	 */
+	private void transcode(Tuple tuple, JsonTranscoder transcoder, BlobOutputStream out, byte[] header) throws IOException {
+		// The encoder flushes bytes of a failed record when it is reused, so
+		// the stream is reset after the encoder
+		avroMessageEncoder = EncoderFactory.get().binaryEncoder(out, avroMessageEncoder);
+		out.reset();
+		if (header != null)
+			out.write(header, 0, header.length);
+		switch (inputJsonMessageType) {
+		case RSTRING:
+			transcoder.transcode(((RString) tuple.getObject(inputJsonMessage)).getByteBuffer(), avroMessageEncoder);
+			break;
+		case BLOB:
+			transcoder.transcode(tuple.getBlob(inputJsonMessage).getByteBuffer(), avroMessageEncoder);
+			break;
+		default:
+			transcoder.transcode(tuple.getString(inputJsonMessage), avroMessageEncoder);
+		}
+		avroMessageEncoder.flush();
+	}
+
+	/**
+	 * Get the JSON string of a tuple for tracing and error messages
+	 * 
+	 * @param tuple
+	 *            The tuple holding the JSON string
+	 * @return the JSON string
+	 */
+	private String getJsonString(Tuple tuple) {
+		if (inputJsonMessageIsList)
+			return String.valueOf(tuple.getList(inputJsonMessage));
+		if (inputJsonMessageType == MetaType.BLOB)
+			return toJsonString(tuple.getBlob(inputJsonMessage).getByteBuffer());
+		return tuple.getString(inputJsonMessage);
+	}
+
+	// Decode a JSON string of a batch, which is a String or UTF-8 bytes
+	private static String toJsonString(Object json) {
+		if (json instanceof ByteBuffer) {
+			ByteBuffer bytes = ((ByteBuffer) json).duplicate();
+			byte[] utf8 = new byte[bytes.remaining()];
+			bytes.get(utf8);
+			return new String(utf8, StandardCharsets.UTF_8);
+		}
+		return (String) json;
+	}
+
+	/**
+	 * Start the timer that submits the Avro message block when timePerMessage
+	 * is exceeded, also if no tuples arrive.
+	 */
+	@Override
+	public void allPortsReady() throws Exception {
+		super.allPortsReady();
+		if (embedAvroSchema)
+			routes.startTimer(getOperatorContext().getScheduledExecutorService());
+	}
+
 	// Submit the Avro byte array to the output port and reset byte array
 	private void submitAvroToOuput() throws Exception {
-		// Send block of messages with Avro schema included and punctuation
+		// Send the blocks of messages with Avro schema included and punctuation
 		if (embedAvroSchema) {
-			if (numberOfBatchedMessages > 0) {
-				if (tracer.isTraceEnabled())
-					tracer.log(TraceLevel.TRACE, "Submitting " + numberOfBatchedMessages
-							+ " Avro messages with a total length of " + avroBlockByteArray.size() + " bytes");
-				outTuple.setBlob(outputAvroMessage, ValueFactory.newBlob(avroBlockByteArray.toByteArray()));
-				outStream.submit(outTuple);
-				outStream.punctuate(Punctuation.WINDOW_MARKER);
-				// Reset for the next block
-				avroBlockByteArray.reset();
-				avroDataFileWriter.close();
-				avroDataFileWriter.create(messageSchema, avroBlockByteArray);
-				lastSubmitted = System.currentTimeMillis();
-				numberOfBatchedMessages = 0;
-			}
+			routes.submitAll();
 		} else { // Send individual message
 			if (tracer.isTraceEnabled())
 				tracer.log(TraceLevel.TRACE,
 						"Submitting Avro message with length " + avroMessageByteArray.size() + " bytes");
-			outTuple.setBlob(outputAvroMessage, ValueFactory.newBlob(avroMessageByteArray.toByteArray()));
+			outTuple.setBlob(outputAvroMessage, avroMessageByteArray.toBlob());
 			outStream.submit(outTuple);
-			// Reset for the next message
-			avroMessageByteArray.reset();
 		}
 	}
 
@@ -345,22 +873,65 @@ public class JSONToAvro extends AbstractOperator {
 	 * true, or when the final punctuation is received.
 	 */
 	public void processPunctuation(StreamingInput<Tuple> inputStream, Punctuation mark) throws Exception {
+		// The timer thread submits Avro message blocks, too
+		if (routes.isTimed()) {
+			synchronized (this) {
+				processMark(inputStream, mark);
+			}
+		} else {
+			processMark(inputStream, mark);
+		}
+	}
+
+	private void processMark(StreamingInput<Tuple> inputStream, Punctuation mark) throws Exception {
+		if (mark == Punctuation.FINAL_MARKER)
+			rejections.flush();
 		// If Avro messages are batched, submit current batch and punctuation if
 		// submitOnPunct
 		if (embedAvroSchema) {
 			if (submitOnPunct && mark == Punctuation.WINDOW_MARKER)
 				submitAvroToOuput();
+			// All message blocks must be out before the final punctuation
 			if (mark == Punctuation.FINAL_MARKER)
-				submitAvroToOuput();
+				routes.submitFinal();
 		}
 		// Else forward window punctuation mark to the output port
 		else
 			super.processPunctuation(inputStream, mark);
 	}
 
+	/**
+	 * Stop the timer and the thread that submit the Avro message block.
+	 */
+	@Override
+	public void shutdown() throws Exception {
+		if (routes != null)
+			routes.shutdown();
+		if (parsingWorkers != null)
+			parsingWorkers.shutdown();
+		super.shutdown();
+	}
+
 	static final String DESC = "This operator converts JSON strings into binary Avro messages.\\n\\n"
+			+ "The JSON strings have the Avro JSON encoding of the schema of parameter `avroMessageSchemaFile`. They are "
+			+ "transcoded directly into binary Avro by a transcoder which is compiled once from the schema, so no Avro "
+			+ "record is built per JSON string. The fields of a JSON object can be in any order, fields that are not in the "
+			+ "schema are ignored. An rstring or blob input attribute is parsed from its UTF-8 bytes without decoding "
+			+ "it into a Java string first.\\n\\n"
+			+ "With parameter `batchInput`, an input tuple holds many JSON strings, either as newline-delimited JSON or as a "
+			+ "list of JSON strings. They are encoded into the current Avro message block, or into a list of Avro messages, so "
+			+ "a single tuple replaces thousands of tuples. The JSON strings of a batch can be parsed in parallel with parameter "
+			+ "`parsingThreads`.\\n\\n"
+			+ "With parameter `avroSchemaAttribute` or `avroSchemaField`, the JSON strings of one stream can have different "
+			+ "Avro schemas. The discriminator names the schema in the directory of parameter `avroSchemaDirectory`, and every "
+			+ "schema has its own transcoder and, if Avro schema is embedded in the output, its own Avro message block, which "
+			+ "is submitted with its own punctuation when its threshold is reached.\\n\\n"
 			+ "If an input or output message attribute is not found or has an incompatible type, the operator will fail. "
-			+ "If an invalid JSON string is found in the input, the operator will fail if parameter `ignoreParsingError` is false.\\n\\n"
+			+ "If an invalid JSON string is found in the input, the operator will fail if parameter `ignoreParsingError` is false "
+			+ "and the optional error output port is not present. Otherwise the input tuple is rejected: it is submitted to the "
+			+ "error output port with a short reason code, or it is skipped. Rejected JSON strings are logged at most once per "
+			+ "10 seconds with their count, so a flood of invalid JSON strings does not slow down the operator. The count of the "
+			+ "last rejections is logged at the latest with the final punctuation.\\n\\n"
 			+ "If parameter `embedAvroSchema` is false, the operator passes window punctuation marker transparently to the output port. "
 			+ "If parameter `embedAvroSchema` is true, the operator generates window punctuation markers.\\n\\n"
 			+ "This operator must not be used inside a consistent region.";
@@ -0,0 +1,338 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.ibm.streams.operator.log4j.TraceLevel;
+import com.ibm.streams.operator.types.Blob;
+import com.ibm.streamsx.avro.io.BlobOutputStream;
+import com.ibm.streamsx.avro.io.JsonTranscoder;
+import com.ibm.streamsx.avro.io.TranscodeException;
+
+/**
+ * Transcodes a batch of JSON strings, for example the lines of
+ * newline-delimited JSON, into their binary Avro encodings.
+ *
+ * The batch is split into chunks of consecutive JSON strings. Every chunk is
+ * transcoded into one buffer, which holds the encodings of the JSON strings
+ * one after the other. A JSON string which is invalid or does not match the
+ * schema is not encoded, its failure is kept instead. With more than one
+ * thread, the first chunk is transcoded on the calling thread and the other
+ * chunks on a pool of worker threads, each with its own transcoder. The pool
+ * can be shared by the batch transcoders of several schemas. The chunks and
+ * their buffers are reused for the next batch.
+ *
+ * The batch transcoder is not thread safe, the operator must serialize the
+ * calls.
+ */
+class JsonBatchTranscoder {
+
+	/** The minimum number of JSON strings which are transcoded by a worker */
+	static final int MIN_JSONS_PER_CHUNK = 64;
+
+	/** The number of chunks per worker thread */
+	static final int CHUNKS_PER_THREAD = 2;
+
+	private static Logger tracer = Logger.getLogger(JsonBatchTranscoder.class.getName());
+
+	/**
+	 * The binary Avro encodings of consecutive JSON strings of a batch
+	 */
+	static class Chunk {
+		private final BlobOutputStream out = new BlobOutputStream();
+		private BinaryEncoder encoder;
+		private int from;
+		private int count;
+		private int[] ends = new int[0];
+		private Exception[] failures = new Exception[0];
+
+		/**
+		 * @return the index of the first JSON string of the chunk in the batch
+		 */
+		int getFrom() {
+			return from;
+		}
+
+		/**
+		 * @return the number of JSON strings of the chunk
+		 */
+		int getCount() {
+			return count;
+		}
+
+		/**
+		 * @param i
+		 *            The index of the JSON string in the chunk
+		 * @return the failure of the JSON string, or null if it was encoded
+		 */
+		Exception getFailure(int i) {
+			return failures[i];
+		}
+
+		/**
+		 * @param i
+		 *            The index of the JSON string in the chunk
+		 * @return a view of the encoding of the JSON string, which is valid
+		 *         until the next batch
+		 */
+		ByteBuffer getEncoding(int i) {
+			int start = getStart(i);
+			return out.toByteBuffer(start, ends[i] - start);
+		}
+
+		/**
+		 * @param i
+		 *            The index of the JSON string in the chunk
+		 * @return a blob with the encoding of the JSON string
+		 */
+		Blob getEncodingBlob(int i) {
+			int start = getStart(i);
+			return out.toBlob(start, ends[i] - start);
+		}
+
+		private int getStart(int i) {
+			return (i == 0) ? 0 : ends[i - 1];
+		}
+
+		// Transcode the JSON strings from index from to from + count
+		private void transcode(JsonTranscoder transcoder, List<Object> jsons, int from, int count, byte[] header)
+				throws IOException {
+			this.from = from;
+			this.count = count;
+			if (ends.length < count) {
+				ends = new int[count];
+				failures = new Exception[count];
+			}
+			encoder = EncoderFactory.get().binaryEncoder(out, encoder);
+			out.reset();
+			for (int i = 0; i < count; i++) {
+				int start = out.size();
+				if (header != null)
+					out.write(header, 0, header.length);
+				Object json = jsons.get(from + i);
+				try {
+					if (json instanceof ByteBuffer)
+						transcoder.transcode((ByteBuffer) json, encoder);
+					else
+						transcoder.transcode((String) json, encoder);
+					encoder.flush();
+					failures[i] = null;
+				} catch (TranscodeException | JsonProcessingException e) {
+					// The encoder flushes the bytes of the failed JSON string
+					// when it is reused, so the stream is truncated after
+					encoder = EncoderFactory.get().binaryEncoder(out, encoder);
+					out.truncate(start);
+					failures[i] = e;
+				}
+				ends[i] = out.size();
+			}
+		}
+	}
+
+	private final Schema schema;
+	private final byte[] header;
+	private final JsonTranscoder transcoder;
+	private final int threads;
+	private final ExecutorService workers;
+	private final ThreadLocal<JsonTranscoder> workerTranscoder = new ThreadLocal<JsonTranscoder>() {
+		@Override
+		protected JsonTranscoder initialValue() {
+			return new JsonTranscoder(schema);
+		}
+	};
+	private final List<Chunk> chunks = new ArrayList<Chunk>();
+	private final List<Future<?>> pending = new ArrayList<Future<?>>();
+	private int chunkCount;
+	private byte[] lineBytes = new byte[0];
+
+	/**
+	 * @param schema
+	 *            The Avro schema of the JSON strings
+	 * @param transcoder
+	 *            The transcoder of the calling thread
+	 * @param header
+	 *            The message header which precedes every encoding, or null
+	 * @param threads
+	 *            The number of threads including the calling thread
+	 * @param workers
+	 *            The pool of the other threads, or null with one thread. The
+	 *            caller shuts the pool down.
+	 */
+	JsonBatchTranscoder(Schema schema, JsonTranscoder transcoder, byte[] header, int threads,
+			ExecutorService workers) {
+		this.schema = schema;
+		this.transcoder = transcoder;
+		this.header = header;
+		this.threads = (workers != null) ? threads : 1;
+		this.workers = workers;
+	}
+
+	/**
+	 * Add the lines of UTF-8 encoded newline-delimited JSON to a batch. Blank
+	 * lines are skipped. The lines are views of the bytes, or of a copy of the
+	 * bytes if the buffer has no accessible array, which is valid until the
+	 * next call.
+	 *
+	 * @param ndjson
+	 *            The UTF-8 bytes between the position and the limit of the
+	 *            buffer. The position is not changed.
+	 * @param jsons
+	 *            The batch which receives the lines as byte buffers
+	 */
+	void addLines(ByteBuffer ndjson, List<Object> jsons) {
+		byte[] bytes;
+		int offset;
+		int end;
+		if (ndjson.hasArray()) {
+			bytes = ndjson.array();
+			offset = ndjson.arrayOffset() + ndjson.position();
+		} else {
+			if (lineBytes.length < ndjson.remaining())
+				lineBytes = new byte[ndjson.remaining()];
+			ndjson.duplicate().get(lineBytes, 0, ndjson.remaining());
+			bytes = lineBytes;
+			offset = 0;
+		}
+		end = offset + ndjson.remaining();
+		int start = offset;
+		boolean blank = true;
+		for (int i = offset; i < end; i++) {
+			byte b = bytes[i];
+			if (b == '\n') {
+				if (!blank)
+					jsons.add(ByteBuffer.wrap(bytes, start, i - start));
+				start = i + 1;
+				blank = true;
+			} else if (b != ' ' && b != '\t' && b != '\r') {
+				blank = false;
+			}
+		}
+		if (!blank)
+			jsons.add(ByteBuffer.wrap(bytes, start, end - start));
+	}
+
+	/**
+	 * Add the lines of newline-delimited JSON to a batch. Blank lines are
+	 * skipped.
+	 *
+	 * @param ndjson
+	 *            The newline-delimited JSON
+	 * @param jsons
+	 *            The batch which receives the lines as strings
+	 */
+	static void addLines(String ndjson, List<Object> jsons) {
+		int start = 0;
+		boolean blank = true;
+		for (int i = 0; i < ndjson.length(); i++) {
+			char c = ndjson.charAt(i);
+			if (c == '\n') {
+				if (!blank)
+					jsons.add(ndjson.substring(start, i));
+				start = i + 1;
+				blank = true;
+			} else if (c != ' ' && c != '\t' && c != '\r') {
+				blank = false;
+			}
+		}
+		if (!blank)
+			jsons.add(ndjson.substring(start));
+	}
+
+	/**
+	 * Transcode a batch of JSON strings. The method returns when all chunks
+	 * are transcoded.
+	 *
+	 * @param jsons
+	 *            The JSON strings as String, or as byte buffer with the UTF-8
+	 *            bytes between position and limit
+	 * @throws Exception
+	 *             if a chunk could not be transcoded
+	 */
+	void transcode(final List<Object> jsons) throws Exception {
+		int size = jsons.size();
+		int maxChunks = (threads > 1) ? threads * CHUNKS_PER_THREAD : 1;
+		chunkCount = Math.max(1, Math.min(maxChunks, (size + MIN_JSONS_PER_CHUNK - 1) / MIN_JSONS_PER_CHUNK));
+		while (chunks.size() < chunkCount)
+			chunks.add(new Chunk());
+		try {
+			int from = 0;
+			int firstSize = 0;
+			for (int c = 0; c < chunkCount; c++) {
+				final int chunkFrom = from;
+				final int chunkSize = (size - from) / (chunkCount - c);
+				final Chunk chunk = chunks.get(c);
+				from += chunkSize;
+				if (c == 0) {
+					firstSize = chunkSize;
+					continue;
+				}
+				pending.add(workers.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						chunk.transcode(workerTranscoder.get(), jsons, chunkFrom, chunkSize, header);
+						return null;
+					}
+				}));
+			}
+			// The calling thread transcodes the first chunk
+			chunks.get(0).transcode(transcoder, jsons, 0, firstSize, header);
+			for (Future<?> future : pending) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					tracer.log(TraceLevel.ERROR, "Error while transcoding JSON strings: " + e.getCause().getMessage());
+					if (e.getCause() instanceof Exception)
+						throw (Exception) e.getCause();
+					throw e;
+				}
+			}
+		} finally {
+			// After an error, the workers must be done with their chunks
+			// before the chunks are reused
+			for (Future<?> future : pending) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					// Already reported
+				}
+			}
+			pending.clear();
+		}
+	}
+
+	/**
+	 * @return the number of chunks of the last batch
+	 */
+	int getChunkCount() {
+		return chunkCount;
+	}
+
+	/**
+	 * @param c
+	 *            The index of the chunk
+	 * @return the chunk of the last batch
+	 */
+	Chunk getChunk(int c) {
+		return chunks.get(c);
+	}
+
+}
@@ -0,0 +1,51 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.DatumWriter;
+
+/**
+ * An Avro schema with everything that is needed to write its records: the
+ * datum writer, and the message header if Avro schema is not embedded or the
+ * message block if it is. Without discriminator an operator has a single
+ * route, otherwise a route is created for every schema when its first record
+ * arrives. Operators extend the route with their own compiled writers.
+ *
+ * @param <D>
+ *            The type of the records written by the datum writer
+ */
+class MessageRoute<D> {
+
+	final Schema schema;
+	final DatumWriter<D> writer;
+	final byte[] header;
+	final AvroBlockSubmitter<D> blockSubmitter;
+	// Maintained by the routes, read and written while holding their lock
+	long lastSubmitted = System.currentTimeMillis();
+
+	/**
+	 * @param schema
+	 *            The Avro schema of the records
+	 * @param writer
+	 *            The writer that encodes the records
+	 * @param routes
+	 *            The routes of the operator, which create the message header
+	 *            or the message block
+	 * @throws Exception
+	 *             if the message header or the message block cannot be
+	 *             created
+	 */
+	MessageRoute(Schema schema, DatumWriter<D> writer, MessageRoutes<?> routes) throws Exception {
+		this.schema = schema;
+		this.writer = writer;
+		header = routes.createHeader(schema);
+		blockSubmitter = routes.createBlockSubmitter(schema, writer);
+	}
+
+}
@@ -0,0 +1,336 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.io.DatumWriter;
+import org.apache.log4j.Logger;
+
+import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamingOutput;
+import com.ibm.streams.operator.log4j.TraceLevel;
+import com.ibm.streamsx.avro.io.MessageFormat;
+import com.ibm.streamsx.avro.io.TranscodeException;
+import com.ibm.streamsx.avro.io.TranscodeException.Reason;
+import com.ibm.streamsx.avro.schema.SchemaDirectoryStore;
+import com.ibm.streamsx.avro.schema.SchemaRegistry;
+
+/**
+ * The routes of an operator that writes Avro messages, shared by TupleToAvro
+ * and JSONToAvro. The routes select the route of a record by its
+ * discriminator, create the message header or the message block of a route,
+ * and submit the message blocks when one of the thresholds
+ * {@code tuplesPerMessage}, {@code bytesPerMessage} or
+ * {@code timePerMessage} is reached, at a punctuation or at the end.
+ *
+ * With {@code timePerMessage} a timer submits the message blocks on time, also
+ * when no further records arrive. The timer holds the lock of the operator
+ * while it submits, the operator must hold the same lock while it calls the
+ * routes. Without timer the routes are not thread safe, the operator must
+ * serialize the calls.
+ *
+ * @param <R>
+ *            The type of the routes
+ */
+class MessageRoutes<R extends MessageRoute<?>> {
+
+	private static Logger tracer = Logger.getLogger(MessageRoutes.class.getName());
+
+	private final Object lock;
+	private final StreamingOutput<OutputTuple> outStream;
+	private final String outputAvroMessage;
+	private final List<R> routes = new ArrayList<R>();
+	private R defaultRoute;
+	private SchemaRouter<R> schemaRouter;
+	// Without embedded Avro schema
+	private MessageFormat format;
+	private SchemaRegistry schemaRegistry;
+	// With embedded Avro schema
+	private boolean embedAvroSchema = false;
+	private int bytesPerBlock;
+	private CodecFactory codecFactory;
+	private ExecutorService submitWorker;
+	private long tuplesPerMessage;
+	private long bytesPerMessage;
+	private long millisPerMessage;
+	private ScheduledExecutorService scheduler;
+	private ScheduledFuture<?> timedSubmit;
+
+	/**
+	 * @param lock
+	 *            The lock of the operator, which the timer holds while it
+	 *            submits message blocks
+	 * @param outStream
+	 *            The output port receiving the Avro messages
+	 * @param outputAvroMessage
+	 *            The blob attribute of the output tuple holding the message
+	 *            block
+	 */
+	MessageRoutes(Object lock, StreamingOutput<OutputTuple> outStream, String outputAvroMessage) {
+		this.lock = lock;
+		this.outStream = outStream;
+		this.outputAvroMessage = outputAvroMessage;
+	}
+
+	/**
+	 * Every Avro message is a single record preceded by a header
+	 *
+	 * @param format
+	 *            The message format which creates the header
+	 * @param schemaRegistry
+	 *            The schema registry of the schema ids, or null
+	 */
+	void setMessageFormat(MessageFormat format, SchemaRegistry schemaRegistry) {
+		this.format = format;
+		this.schemaRegistry = schemaRegistry;
+	}
+
+	/**
+	 * The records are collected into message blocks with embedded Avro schema
+	 *
+	 * @param bytesPerBlock
+	 *            The uncompressed size of a data block in bytes
+	 * @param codecFactory
+	 *            The codec that compresses the data blocks
+	 * @param submitThreadFactory
+	 *            The factory of the single thread that submits the message
+	 *            blocks of all routes, or null to submit synchronously
+	 * @param tuplesPerMessage
+	 *            The number of records of a message block, or 0
+	 * @param bytesPerMessage
+	 *            The estimated size of a message block in bytes, or 0
+	 * @param timePerMessage
+	 *            The seconds after which a message block is submitted, or 0
+	 */
+	void setEmbeddedSchema(int bytesPerBlock, CodecFactory codecFactory, ThreadFactory submitThreadFactory,
+			long tuplesPerMessage, long bytesPerMessage, long timePerMessage) {
+		embedAvroSchema = true;
+		this.bytesPerBlock = bytesPerBlock;
+		this.codecFactory = codecFactory;
+		// The message blocks of all schemas are submitted by one thread, so
+		// they are submitted in order
+		if (submitThreadFactory != null)
+			submitWorker = Executors.newSingleThreadExecutor(submitThreadFactory);
+		this.tuplesPerMessage = tuplesPerMessage;
+		this.bytesPerMessage = bytesPerMessage;
+		millisPerMessage = 1000 * timePerMessage;
+	}
+
+	// The message header of a route, null if Avro schema is embedded
+	byte[] createHeader(Schema schema) {
+		return embedAvroSchema ? null : format.createHeader(schema, schemaRegistry);
+	}
+
+	// The message block of a route, null if Avro schema is not embedded
+	<D> AvroBlockSubmitter<D> createBlockSubmitter(Schema schema, DatumWriter<D> writer) throws IOException {
+		return embedAvroSchema ? new AvroBlockSubmitter<D>(outStream, outputAvroMessage, schema, writer,
+				bytesPerBlock, codecFactory, submitWorker) : null;
+	}
+
+	/**
+	 * @param route
+	 *            The route of the records without discriminator or whose
+	 *            discriminator does not name a schema
+	 */
+	void setDefaultRoute(R route) {
+		defaultRoute = route;
+		routes.add(route);
+	}
+
+	/**
+	 * @return the route of the records without discriminator, or null
+	 */
+	R getDefaultRoute() {
+		return defaultRoute;
+	}
+
+	/**
+	 * Select the routes by the discriminators of the records
+	 *
+	 * @param schemaStore
+	 *            The schemas named by the discriminators
+	 * @param routeFactory
+	 *            The factory of the routes
+	 */
+	void setSchemaStore(SchemaDirectoryStore schemaStore, final SchemaRouter.RouteFactory<R> routeFactory) {
+		schemaRouter = new SchemaRouter<R>(schemaStore, new SchemaRouter.RouteFactory<R>() {
+			@Override
+			public R createRoute(Schema schema) throws Exception {
+				R route = routeFactory.createRoute(schema);
+				routes.add(route);
+				return route;
+			}
+		});
+	}
+
+	/**
+	 * Select the route of a record by its discriminator. Without discriminator,
+	 * or if the discriminator does not name a schema, this is the default
+	 * route.
+	 *
+	 * @param value
+	 *            The discriminator of the record, or null
+	 * @return the route
+	 * @throws TranscodeException
+	 *             with reason code {@link Reason#UNKNOWN_SCHEMA} if no schema
+	 *             is found, or {@link Reason#INVALID_SCHEMA} if the route of the
+	 *             schema cannot be created
+	 */
+	R getRoute(String value) throws TranscodeException {
+		if (schemaRouter == null)
+			return defaultRoute;
+		R route = schemaRouter.getRoute(value);
+		if (route == null)
+			route = defaultRoute;
+		if (route == null)
+			throw new TranscodeException(Reason.UNKNOWN_SCHEMA, null, value);
+		return route;
+	}
+
+	/**
+	 * Submit the message block of a route if one of the thresholds is reached
+	 *
+	 * @param route
+	 *            The route whose message block got a record
+	 * @throws Exception
+	 *             if the message block cannot be submitted
+	 */
+	void submitOnThreshold(R route) throws Exception {
+		if (tuplesPerMessage != 0 && route.blockSubmitter.getRecordCount() >= tuplesPerMessage)
+			submitBlock(route);
+		if (bytesPerMessage != 0 && route.blockSubmitter.getEstimatedSize() >= bytesPerMessage)
+			submitBlock(route);
+		if (millisPerMessage != 0 && System.currentTimeMillis() >= route.lastSubmitted + millisPerMessage)
+			submitBlock(route);
+	}
+
+	/**
+	 * Submit the message blocks of all routes which have records
+	 *
+	 * @throws Exception
+	 *             if a message block cannot be submitted
+	 */
+	void submitAll() throws Exception {
+		for (R route : routes)
+			submitBlock(route);
+	}
+
+	/**
+	 * Stop the timer and submit the message blocks of all routes. All message
+	 * blocks are out when the method returns, so the final punctuation can
+	 * follow.
+	 *
+	 * @throws Exception
+	 *             if a message block cannot be submitted
+	 */
+	void submitFinal() throws Exception {
+		cancelTimer();
+		submitAll();
+		for (R route : routes)
+			route.blockSubmitter.drain();
+	}
+
+	// Submit the Avro message block of a route with its punctuation
+	private void submitBlock(R route) throws Exception {
+		if (route.blockSubmitter.getRecordCount() > 0) {
+			route.blockSubmitter.submit();
+			route.lastSubmitted = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * @return true if a timer submits the message blocks when timePerMessage
+	 *         is exceeded
+	 */
+	boolean isTimed() {
+		return millisPerMessage != 0;
+	}
+
+	/**
+	 * Start the timer that submits the message blocks when timePerMessage is
+	 * exceeded, also if no records arrive
+	 *
+	 * @param scheduler
+	 *            The scheduler of the operator
+	 */
+	void startTimer(ScheduledExecutorService scheduler) {
+		if (!isTimed())
+			return;
+		synchronized (lock) {
+			this.scheduler = scheduler;
+			for (R route : routes)
+				route.lastSubmitted = System.currentTimeMillis();
+			scheduleTimedSubmit(millisPerMessage);
+		}
+	}
+
+	private void scheduleTimedSubmit(long delay) {
+		timedSubmit = scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				timedSubmit();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	// Submit the Avro message blocks for which timePerMessage has been
+	// exceeded since their last submission and reschedule the timer for the
+	// next deadline
+	private void timedSubmit() {
+		synchronized (lock) {
+			if (timedSubmit == null)
+				return;
+			long now = System.currentTimeMillis();
+			long nextDeadline = now + millisPerMessage;
+			for (R route : routes) {
+				if (now >= route.lastSubmitted + millisPerMessage) {
+					try {
+						submitBlock(route);
+					} catch (Exception e) {
+						tracer.log(TraceLevel.ERROR, "Error while submitting Avro message block: " + e.getMessage());
+					}
+					// Without records there was nothing to submit, start a new
+					// period
+					route.lastSubmitted = now;
+				}
+				nextDeadline = Math.min(nextDeadline, route.lastSubmitted + millisPerMessage);
+			}
+			scheduleTimedSubmit(nextDeadline - now);
+		}
+	}
+
+	private void cancelTimer() {
+		synchronized (lock) {
+			if (timedSubmit != null) {
+				timedSubmit.cancel(false);
+				timedSubmit = null;
+			}
+		}
+	}
+
+	/**
+	 * Stop the timer and the thread that submits the message blocks
+	 */
+	void shutdown() {
+		cancelTimer();
+		if (submitWorker != null)
+			submitWorker.shutdown();
+	}
+
+}
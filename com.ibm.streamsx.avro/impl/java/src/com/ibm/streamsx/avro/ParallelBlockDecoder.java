@@ -0,0 +1,193 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.avro.generic.GenericRecord;
+import org.apache.log4j.Logger;
+
+import com.ibm.streams.operator.log4j.TraceLevel;
+import com.ibm.streamsx.avro.io.AvroBlockReader;
+import com.ibm.streamsx.avro.io.AvroBlockReader.DataBlock;
+import com.ibm.streamsx.avro.io.DataBlockDecoder;
+import com.ibm.streamsx.avro.io.JsonFormat;
+import com.ibm.streamsx.avro.io.JsonWriter;
+
+/**
+ * Decodes the data blocks of an Avro message block on a pool of worker threads
+ * and converts their records to JSON. The JSON strings of every data block are
+ * handed over to a handler in the order of the data blocks in the message
+ * block.
+ *
+ * The data blocks are found by their length and checked by their sync marker
+ * on the calling thread. Every data block is decompressed, decoded and
+ * converted by a worker, and the calling thread hands over the JSON strings of
+ * the data blocks in order. The number of data blocks in progress is limited,
+ * so the calling thread waits for the workers when the limit is reached.
+ */
+class ParallelBlockDecoder {
+
+	/**
+	 * Receives the JSON strings of the data blocks in the order of the data
+	 * blocks. The array holds the JSON string of every record of a data block,
+	 * or with newline-delimited JSON a single element with the UTF-8 bytes of
+	 * the JSON lines of the data block.
+	 */
+	interface BlockHandler {
+		void handle(Object[] jsons) throws Exception;
+	}
+
+	/** The maximum number of data blocks in progress per worker thread */
+	static final int MAX_PENDING_PER_THREAD = 4;
+
+	private static Logger tracer = Logger.getLogger(ParallelBlockDecoder.class.getName());
+
+	/*
+	 * The decoder, record and JSON writer of a worker thread, which are reused
+	 * for every data block the worker decodes
+	 */
+	private class Worker {
+		final DataBlockDecoder decoder = new DataBlockDecoder();
+		final JsonWriter jsonWriter = new JsonWriter(jsonFormat);
+		GenericRecord record;
+	}
+
+	private final JsonFormat jsonFormat;
+	private final boolean rstring;
+	private final boolean lines;
+	private final int maxPending;
+	private final ExecutorService workers;
+	private final ArrayDeque<Future<Object[]>> pending = new ArrayDeque<Future<Object[]>>();
+	private final ThreadLocal<Worker> worker = new ThreadLocal<Worker>() {
+		@Override
+		protected Worker initialValue() {
+			return new Worker();
+		}
+	};
+
+	/**
+	 * @param jsonFormat
+	 *            The format of the JSON strings
+	 * @param rstring
+	 *            true to create the JSON strings as rstring, false to create
+	 *            them as String for a ustring attribute
+	 * @param lines
+	 *            true to convert the records of a data block to
+	 *            newline-delimited JSON
+	 * @param threads
+	 *            The number of worker threads
+	 * @param threadFactory
+	 *            The factory for the worker threads
+	 */
+	ParallelBlockDecoder(JsonFormat jsonFormat, boolean rstring, boolean lines, int threads,
+			ThreadFactory threadFactory) {
+		this.jsonFormat = jsonFormat;
+		this.rstring = rstring;
+		this.lines = lines;
+		maxPending = threads * MAX_PENDING_PER_THREAD;
+		workers = Executors.newFixedThreadPool(threads, threadFactory);
+	}
+
+	/**
+	 * Decode all records of an opened message block and hand over their JSON
+	 * strings. The method returns when the JSON strings of all data blocks are
+	 * handed over.
+	 *
+	 * @param reader
+	 *            The reader of the message block
+	 * @param handler
+	 *            The handler of the JSON strings, which is called on the
+	 *            calling thread
+	 * @throws Exception
+	 *             if a data block is invalid or the handler fails
+	 */
+	void decode(AvroBlockReader reader, BlockHandler handler) throws Exception {
+		try {
+			DataBlock block;
+			while ((block = reader.nextBlock()) != null) {
+				if (pending.size() >= maxPending)
+					handleHead(handler);
+				final DataBlock nextBlock = block;
+				pending.add(workers.submit(new Callable<Object[]>() {
+					@Override
+					public Object[] call() throws Exception {
+						return decode(nextBlock);
+					}
+				}));
+			}
+			while (!pending.isEmpty())
+				handleHead(handler);
+		} finally {
+			// After an error, the remaining data blocks are discarded
+			for (Future<Object[]> future : pending)
+				future.cancel(false);
+			pending.clear();
+		}
+	}
+
+	/**
+	 * Stop the worker threads
+	 */
+	void shutdown() {
+		workers.shutdown();
+	}
+
+	// Decode a data block on a worker thread
+	private Object[] decode(DataBlock block) throws Exception {
+		Worker w = worker.get();
+		w.decoder.open(block);
+		if (lines) {
+			w.jsonWriter.reset();
+			while (w.decoder.hasNext()) {
+				GenericRecord record = w.decoder.next(w.record);
+				if (record == null)
+					continue;
+				w.record = record;
+				w.jsonWriter.write(record);
+				w.jsonWriter.writeNewLine();
+			}
+			return new Object[] { w.jsonWriter.toByteArray() };
+		}
+		// Records that do not match the filter are left out
+		Object[] jsons = new Object[(int) block.getRecordCount()];
+		int count = 0;
+		while (w.decoder.hasNext()) {
+			GenericRecord record = w.decoder.next(w.record);
+			if (record == null)
+				continue;
+			w.record = record;
+			w.jsonWriter.reset();
+			w.jsonWriter.write(record);
+			jsons[count++] = rstring ? w.jsonWriter.toRString() : w.jsonWriter.toString();
+		}
+		return (count < jsons.length) ? Arrays.copyOf(jsons, count) : jsons;
+	}
+
+	// Wait for the oldest data block and hand over its JSON strings
+	private void handleHead(BlockHandler handler) throws Exception {
+		Object[] jsons;
+		try {
+			jsons = pending.poll().get();
+		} catch (ExecutionException e) {
+			tracer.log(TraceLevel.ERROR, "Error while decoding Avro data block: " + e.getCause().getMessage());
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+		handler.handle(jsons);
+	}
+
+}
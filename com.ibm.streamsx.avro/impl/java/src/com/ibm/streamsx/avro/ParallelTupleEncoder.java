@@ -0,0 +1,203 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.log4j.Logger;
+
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.log4j.TraceLevel;
+import com.ibm.streamsx.avro.io.BlobOutputStream;
+
+/**
+ * Encodes tuples to binary Avro on a pool of worker threads and hands the
+ * encoded tuples over to a handler in input order.
+ *
+ * Every tuple is queued in input order before it is encoded. When a worker
+ * has encoded a tuple, it passes all encoded tuples from the head of the queue
+ * to the handler, so the handler is called in input order, but not always on
+ * the same thread. The tuples which cannot be encoded are passed to the
+ * handler in the same order. The handler is called while holding the lock
+ * given to the encoder, which is the lock the operator uses to serialize its
+ * submissions.
+ *
+ * The number of tuples in the queue is limited. When the limit is reached,
+ * {@link #encode(Tuple)} waits for the workers.
+ */
+class ParallelTupleEncoder {
+
+	/**
+	 * Receives the encoded tuples and the tuples which cannot be encoded in
+	 * input order
+	 */
+	interface EncodedTupleHandler {
+		void handle(Tuple tuple, byte[] encodedTuple) throws Exception;
+
+		void reject(Tuple tuple, Exception failure);
+	}
+
+	/** The maximum number of queued tuples per worker thread */
+	static final int MAX_PENDING_PER_THREAD = 64;
+
+	private static Logger tracer = Logger.getLogger(ParallelTupleEncoder.class.getName());
+
+	/*
+	 * A queued tuple, which is done when it is encoded or has failed
+	 */
+	private static class Entry {
+		final Tuple tuple;
+		byte[] encodedTuple;
+		Exception failure;
+		boolean done;
+
+		Entry(Tuple tuple) {
+			this.tuple = tuple;
+		}
+	}
+
+	/*
+	 * The stream and encoder of a worker thread, which are reused for every
+	 * tuple the worker encodes
+	 */
+	private static class WorkerEncoder {
+		final BlobOutputStream encodedTuple = new BlobOutputStream();
+		BinaryEncoder encoder;
+	}
+
+	private final DatumWriter<Tuple> datumWriter;
+	private final byte[] messageHeader;
+	private final Object lock;
+	private final EncodedTupleHandler handler;
+	private final ExecutorService workers;
+	private final Semaphore pendingPermits;
+	private final ArrayDeque<Entry> pending = new ArrayDeque<Entry>();
+	private final ThreadLocal<WorkerEncoder> workerEncoder = new ThreadLocal<WorkerEncoder>() {
+		@Override
+		protected WorkerEncoder initialValue() {
+			return new WorkerEncoder();
+		}
+	};
+
+	/**
+	 * @param datumWriter
+	 *            The writer that encodes the tuples, it is used by all
+	 *            worker threads
+	 * @param messageHeader
+	 *            The header written before every encoded tuple, or null
+	 * @param threads
+	 *            The number of worker threads
+	 * @param threadFactory
+	 *            The factory for the worker threads
+	 * @param lock
+	 *            The lock which is held while the handler is called
+	 * @param handler
+	 *            The handler of the encoded tuples
+	 */
+	ParallelTupleEncoder(DatumWriter<Tuple> datumWriter, byte[] messageHeader, int threads,
+			ThreadFactory threadFactory, Object lock, EncodedTupleHandler handler) {
+		this.datumWriter = datumWriter;
+		this.messageHeader = messageHeader;
+		this.lock = lock;
+		this.handler = handler;
+		workers = Executors.newFixedThreadPool(threads, threadFactory);
+		pendingPermits = new Semaphore(threads * MAX_PENDING_PER_THREAD);
+	}
+
+	/**
+	 * Queue a tuple and encode it on a worker thread. The caller must not hold
+	 * the lock, otherwise the workers cannot hand over the encoded tuples
+	 * while the queue is full.
+	 *
+	 * @param tuple
+	 *            The tuple
+	 * @throws InterruptedException
+	 */
+	void encode(Tuple tuple) throws InterruptedException {
+		pendingPermits.acquire();
+		final Entry entry = new Entry(tuple);
+		synchronized (lock) {
+			pending.add(entry);
+			workers.execute(new Runnable() {
+				@Override
+				public void run() {
+					encode(entry);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Wait until all queued tuples are handed over to the handler. The caller
+	 * may hold the lock, which is released while waiting.
+	 *
+	 * @throws InterruptedException
+	 */
+	void drain() throws InterruptedException {
+		synchronized (lock) {
+			while (!pending.isEmpty())
+				lock.wait();
+		}
+	}
+
+	/**
+	 * Stop the worker threads
+	 */
+	void shutdown() {
+		workers.shutdown();
+	}
+
+	// Encode the tuple on a worker thread and hand over the encoded tuples
+	// from the head of the queue
+	private void encode(Entry entry) {
+		byte[] encodedTuple = null;
+		Exception failure = null;
+		try {
+			WorkerEncoder worker = workerEncoder.get();
+			// The encoder flushes bytes of a failed tuple when it is reused, so
+			// the stream is reset after the encoder
+			worker.encoder = EncoderFactory.get().binaryEncoder(worker.encodedTuple, worker.encoder);
+			worker.encodedTuple.reset();
+			if (messageHeader != null)
+				worker.encodedTuple.write(messageHeader, 0, messageHeader.length);
+			datumWriter.write(entry.tuple, worker.encoder);
+			worker.encoder.flush();
+			encodedTuple = worker.encodedTuple.toByteArray();
+		} catch (Exception e) {
+			failure = e;
+		}
+		synchronized (lock) {
+			entry.encodedTuple = encodedTuple;
+			entry.failure = failure;
+			entry.done = true;
+			while (!pending.isEmpty() && pending.peek().done) {
+				Entry head = pending.poll();
+				pendingPermits.release();
+				if (head.encodedTuple == null) {
+					handler.reject(head.tuple, head.failure);
+					continue;
+				}
+				try {
+					handler.handle(head.tuple, head.encodedTuple);
+				} catch (Exception e) {
+					tracer.log(TraceLevel.ERROR, "Error while submitting Avro message: " + e.getMessage());
+				}
+			}
+			if (pending.isEmpty())
+				lock.notifyAll();
+		}
+	}
+
+}
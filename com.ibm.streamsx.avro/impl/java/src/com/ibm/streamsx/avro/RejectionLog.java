@@ -0,0 +1,71 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro;
+
+import org.apache.log4j.Logger;
+
+import com.ibm.streams.operator.log4j.TraceLevel;
+
+/**
+ * Logs the records rejected by an operator at most once per interval with
+ * their count, so a flood of invalid records does not slow down the operator.
+ * The first rejection is logged at once, the count of the last rejections is
+ * logged when the log is flushed, for example at the final punctuation.
+ *
+ * The log is not thread safe, the operator must serialize the calls.
+ */
+class RejectionLog {
+
+	/** Rejections are logged at most once per interval */
+	static final long INTERVAL_MILLIS = 10000;
+
+	private final Logger tracer;
+	private final String description;
+	private long count = 0;
+	private long lastLogged = 0;
+	private Exception lastFailure;
+
+	/**
+	 * @param tracer
+	 *            The logger of the operator
+	 * @param description
+	 *            What is rejected, for example
+	 *            {@code "JSON strings while converting to AVRO schema"}
+	 */
+	RejectionLog(Logger tracer, String description) {
+		this.tracer = tracer;
+		this.description = description;
+	}
+
+	/**
+	 * Count a rejected record, and log the count if the interval is over
+	 *
+	 * @param failure
+	 *            The failure of the record
+	 */
+	void reject(Exception failure) {
+		count++;
+		lastFailure = failure;
+		if (System.currentTimeMillis() - lastLogged >= INTERVAL_MILLIS)
+			flush();
+	}
+
+	/**
+	 * Log the count of the rejections which are not logged yet
+	 */
+	void flush() {
+		if (count > 0) {
+			tracer.log(TraceLevel.ERROR, "Rejected " + count + " " + description + ". Last error: "
+					+ lastFailure.getMessage());
+			count = 0;
+			lastFailure = null;
+		}
+		lastLogged = System.currentTimeMillis();
+	}
+
+}
@@ -0,0 +1,125 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import org.apache.avro.Schema;
+import org.apache.log4j.Logger;
+
+import com.ibm.streams.operator.log4j.TraceLevel;
+import com.ibm.streamsx.avro.io.TranscodeException;
+import com.ibm.streamsx.avro.io.TranscodeException.Reason;
+import com.ibm.streamsx.avro.schema.SchemaDirectoryStore;
+
+/**
+ * Selects the route of a record by a discriminator value, which names an Avro
+ * schema of a schema directory. A route holds everything that is needed to
+ * write the records of one schema, like the compiled writer and the message
+ * block. It is created when the first record of its schema arrives.
+ *
+ * The discriminator values that name a schema are cached, values without
+ * schema are not, so the cache cannot grow beyond the names of the schemas.
+ * If the route of a schema cannot be created, for example because the schema
+ * does not match the input, the failure is logged once and cached like a
+ * route, so the records of the schema are rejected without trying again.
+ * The router is not thread safe, the operator must serialize the calls.
+ *
+ * @param <R>
+ *            The type of the routes
+ */
+class SchemaRouter<R> {
+
+	/**
+	 * Creates the route of a schema
+	 *
+	 * @param <R>
+	 *            The type of the routes
+	 */
+	interface RouteFactory<R> {
+		R createRoute(Schema schema) throws Exception;
+	}
+
+	private static Logger tracer = Logger.getLogger(SchemaRouter.class.getName());
+
+	private final SchemaDirectoryStore schemaStore;
+	private final RouteFactory<R> routeFactory;
+	private final HashMap<String, R> routesByValue = new HashMap<String, R>();
+	private final IdentityHashMap<Schema, R> routesBySchema = new IdentityHashMap<Schema, R>();
+	private final HashMap<String, TranscodeException> failuresByValue = new HashMap<String, TranscodeException>();
+	private final IdentityHashMap<Schema, TranscodeException> failuresBySchema = new IdentityHashMap<Schema, TranscodeException>();
+
+	/**
+	 * @param schemaStore
+	 *            The schemas of the schema directory
+	 * @param routeFactory
+	 *            The factory of the routes
+	 */
+	SchemaRouter(SchemaDirectoryStore schemaStore, RouteFactory<R> routeFactory) {
+		this.schemaStore = schemaStore;
+		this.routeFactory = routeFactory;
+	}
+
+	/**
+	 * Get the route of a discriminator value. The route is created for the
+	 * first value that names its schema.
+	 *
+	 * @param value
+	 *            The full name of the schema or the name of its schema file
+	 *            without extension
+	 * @return the route, or null if the value is null or no schema has this
+	 *         name
+	 * @throws TranscodeException
+	 *             with reason code {@link Reason#INVALID_SCHEMA} if the route
+	 *             of the schema cannot be created
+	 */
+	R getRoute(String value) throws TranscodeException {
+		if (value == null)
+			return null;
+		R route = routesByValue.get(value);
+		if (route == null) {
+			TranscodeException failure = failuresByValue.get(value);
+			if (failure != null)
+				throw failure;
+			Schema schema = schemaStore.findByName(value);
+			if (schema == null)
+				return null;
+			route = routesBySchema.get(schema);
+			if (route == null) {
+				failure = failuresBySchema.get(schema);
+				if (failure == null)
+					failure = createRoute(schema);
+				if (failure != null) {
+					failuresByValue.put(value, failure);
+					throw failure;
+				}
+				route = routesBySchema.get(schema);
+			}
+			routesByValue.put(value, route);
+		}
+		return route;
+	}
+
+	// Create the route of a schema, returns the failure if it cannot be
+	// created
+	private TranscodeException createRoute(Schema schema) {
+		try {
+			routesBySchema.put(schema, routeFactory.createRoute(schema));
+			return null;
+		} catch (Exception e) {
+			tracer.log(TraceLevel.ERROR, "The records of Avro schema " + schema.getFullName()
+					+ " are rejected, its route cannot be created: " + e.getMessage());
+			TranscodeException failure = new TranscodeException(Reason.INVALID_SCHEMA, schema.getFullName(),
+					e.getMessage());
+			failuresBySchema.put(schema, failure);
+			return failure;
+		}
+	}
+
+}
@@ -7,15 +7,15 @@
 
 package com.ibm.streamsx.avro;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import org.apache.avro.Schema;
-import org.apache.avro.file.DataFileWriter;
-import org.apache.avro.generic.GenericDatumWriter;
-import org.apache.avro.generic.GenericRecord;
-import org.apache.avro.io.Encoder;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.io.BinaryEncoder;
 import org.apache.avro.io.EncoderFactory;
 import org.apache.log4j.Logger;
 
@@ -41,11 +41,19 @@ import com.ibm.streams.operator.model.OutputPortSet;
 import com.ibm.streams.operator.model.Libraries;
 import com.ibm.streams.operator.model.OutputPortSet.WindowPunctuationOutputMode;
 import com.ibm.streams.operator.state.ConsistentRegionContext;
+import com.ibm.streams.operator.types.ValueFactory;
 import com.ibm.streams.operator.model.OutputPorts;
 import com.ibm.streams.operator.model.Parameter;
 import com.ibm.streams.operator.model.PrimitiveOperator;
-import com.ibm.streams.operator.types.ValueFactory;
+import com.ibm.streamsx.avro.io.AvroBlockBuilder;
+import com.ibm.streamsx.avro.io.BlobOutputStream;
+import com.ibm.streamsx.avro.io.MessageFormat;
+import com.ibm.streamsx.avro.schema.LocalSchemaRegistry;
+import com.ibm.streamsx.avro.schema.SchemaDirectoryStore;
+import com.ibm.streamsx.avro.schema.SchemaRegistry;
+import com.ibm.streamsx.avro.convert.TupleDatumWriter;
 import com.ibm.streamsx.avro.convert.TupleToAvroConverter;
+import com.ibm.streamsx.avro.convert.TupleToAvroMapping;
 
 /**
  * Processes tuples and converts them to Avro
@@ -63,6 +71,8 @@ public class TupleToAvro extends AbstractOperator {
 
 	public static final String OPER_NAME = "TupleToAvro";
 	
+	private static final int MAX_ENCODING_THREADS = 256;
+
 	private static Logger tracer = Logger.getLogger(TupleToAvro.class.getName());
 
 	private String outputAvroMessage = null;
@@ -74,6 +84,15 @@ public class TupleToAvro extends AbstractOperator {
 	private long bytesPerMessage = 0;
 	private long tuplesPerMessage = 0;
 	private long timePerMessage = 0;
+	private long bytesPerBlock = 0;
+	private String codec = null;
+	private Integer compressionLevel = null;
+	private boolean asyncSubmit = false;
+	private String messageFormat = null;
+	private String avroSchemaDirectory = null;
+	private boolean directEncoding = false;
+	private int encodingThreads = 1;
+	private String avroSchemaAttribute = null;
 	private Schema messageSchema;
 
 	@Parameter(optional = true, description = "The ouput stream attribute which contains the output Avro message(s). This attribute must be of type blob. Default is the sole output attribute when the schema has one attribute otherwise `avroMessage`.")
@@ -81,11 +100,25 @@ public class TupleToAvro extends AbstractOperator {
 		this.outputAvroMessage = outputAvroMessage;
 	}
 
-	@Parameter(optional = false, description = "File that contains the Avro schema to serialize the Avro message(s).")
+	@Parameter(optional = true, description = "File that contains the Avro schema to serialize the Avro message(s). "
+			+ "Required unless parameter `avroSchemaAttribute` is set. With this parameter, the schema is used for the "
+			+ "tuples whose discriminator does not name a schema of the schema directory.")
 	public void setAvroMessageSchemaFile(String avroMessageSchemaFile) {
 		this.avroMessageSchemaFile = avroMessageSchemaFile;
 	}
 
+	@Parameter(optional = true, description = "The input stream attribute whose value selects the Avro schema of the tuple, "
+			+ "for example the event type. This attribute must be of `rstring` or `ustring` type. The value is the full name "
+			+ "of an Avro schema in the directory of parameter `avroSchemaDirectory`, or the name of its schema file without "
+			+ "the extension `.avsc`. Every schema gets its own writer and, if Avro schema is embedded in the output, its own "
+			+ "Avro message block, which are created when the first tuple of the schema arrives. A tuple without schema is "
+			+ "skipped, unless parameter `avroMessageSchemaFile` is set, and so is a tuple whose schema does not match the "
+			+ "input attributes. Skipped tuples are logged at most once per 10 seconds with their count. Cannot be used together with parameter "
+			+ "`encodingThreads`.")
+	public void setAvroSchemaAttribute(String avroSchemaAttribute) {
+		this.avroSchemaAttribute = avroSchemaAttribute;
+	}
+
 	@Parameter(optional = true, description = "Embed the schema in the generated Avro message. "
 			+ "When generating Avro messages that must be persisted to a file system, "
 			+ "the schema is expected to be included in the file. If this parameter is set to true, "
@@ -118,20 +151,108 @@ public class TupleToAvro extends AbstractOperator {
 	}
 
 	@Parameter(optional = true, description = "This parameter controls the maximum time in seconds before the Avro message block "
-			+ "is submitted to the output port. Default is 0l. Only valid if Avro schema is embedded in the output.")
+			+ "is submitted to the output port. The time is checked by a timer, so the Avro message block is also submitted "
+			+ "when no further tuples arrive. Default is 0l. Only valid if Avro schema is embedded in the output.")
 	public void setTimePerMessage(Long timePerMessage) {
 		this.timePerMessage = timePerMessage;
 	}
 
+	@Parameter(optional = true, description = "When set to true, the tuple attributes are written directly to the binary "
+			+ "Avro encoder in the field order of the Avro schema, without building an intermediate Avro record. The generated "
+			+ "Avro messages are the same as in the default mode, but less objects are allocated per tuple. Default is false.")
+	public void setDirectEncoding(Boolean directEncoding) {
+		this.directEncoding = directEncoding;
+	}
+
+	@Parameter(optional = true, description = "The number of threads that convert and encode the tuples to Avro. With more "
+			+ "than one thread, the tuples are encoded in parallel and the encoded tuples are submitted or added to the Avro "
+			+ "message block in input order. Valid values are from 1 to 256. Default is 1, the tuples are encoded on the "
+			+ "thread that processes the input tuple.")
+	public void setEncodingThreads(Integer encodingThreads) {
+		this.encodingThreads = encodingThreads;
+	}
+
+	@Parameter(optional = true, description = "This parameter controls the uncompressed size in bytes of the data blocks "
+			+ "within the Avro message block. Records are collected in a data block until this size is reached, then the "
+			+ "data block is closed with a sync marker and a new data block is started. The last data block is closed when "
+			+ "the Avro message block is submitted. Valid values are from 32 to 1073741824. Default is 64000. "
+			+ "Only valid if Avro schema is embedded in the output.")
+	public void setBytesPerBlock(Long bytesPerBlock) {
+		this.bytesPerBlock = bytesPerBlock;
+	}
+
+	@Parameter(optional = true, description = "The codec that compresses the data blocks within the Avro message block. "
+			+ "Valid codecs are `null` (no compression), `deflate`, `snappy`, `bzip2`, `xz` and `zstandard`. "
+			+ "Default is `null`. Only valid if Avro schema is embedded in the output.")
+	public void setCodec(String codec) {
+		this.codec = codec;
+	}
+
+	@Parameter(optional = true, description = "The compression level of the codec. Valid levels are from 0 to 9 for "
+			+ "codec `deflate` and `xz`, and from 1 to 22 for codec `zstandard`. The other codecs have no compression level. "
+			+ "Default is the default level of the codec: 6 for `deflate` and `xz`, 3 for `zstandard`. "
+			+ "Only valid if Avro schema is embedded in the output.")
+	public void setCompressionLevel(Integer compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	@Parameter(optional = true, description = "When set to true, the Avro message block is closed, compressed and submitted "
+			+ "by a separate thread, while the following tuples are collected in a second message block. The message blocks and "
+			+ "window punctuations are submitted in order. Tuple processing only waits when the previous message block has not "
+			+ "been submitted yet. Default is false. Only valid if Avro schema is embedded in the output.")
+	public void setAsyncSubmit(Boolean asyncSubmit) {
+		this.asyncSubmit = asyncSubmit;
+	}
+
+	@Parameter(optional = true, description = "The format of the generated Avro messages. With `binary`, the message is the "
+			+ "binary Avro encoding of the record. With `singleObject`, the message has the Avro single-object encoding: the "
+			+ "marker bytes `C3 01` and the 8 byte little-endian CRC-64-AVRO fingerprint of the Avro schema precede the binary "
+			+ "record, so the receiver can look up the schema of the message. With `schemaRegistry`, the message has the schema "
+			+ "registry wire format: the magic byte 0 and the 4 byte big-endian schema id of the Avro schema in the schema "
+			+ "registry of parameter `avroSchemaDirectory` precede the binary record. Default is `binary`. Only valid if Avro "
+			+ "schema is not embedded in the output.")
+	public void setMessageFormat(String messageFormat) {
+		this.messageFormat = messageFormat;
+	}
+
+	@Parameter(optional = true, description = "Directory of the local schema registry, which contains a file `<id>.avsc` "
+			+ "for every registered Avro schema, where `<id>` is the schema id. Required if parameter `messageFormat` is "
+			+ "`schemaRegistry`. Also the directory of the Avro schemas which are selected by parameter `avroSchemaAttribute`, "
+			+ "then it is required and the schema files can have any name. Schema files added while the operator runs are "
+			+ "loaded when a discriminator names an unknown schema. Only valid if Avro schema is not embedded in the output, "
+			+ "unless the schema is selected by a discriminator.")
+	public void setAvroSchemaDirectory(String avroSchemaDirectory) {
+		this.avroSchemaDirectory = avroSchemaDirectory;
+	}
+
 	// Variables
 	StreamingOutput<OutputTuple> outStream;
 	OutputTuple outTuple;
-	GenericDatumWriter<GenericRecord> avroWriter;
-	DataFileWriter<GenericRecord> avroDataFileWriter;
-	ByteArrayOutputStream avroMessageByteArray = new ByteArrayOutputStream();
-	ByteArrayOutputStream avroBlockByteArray = new ByteArrayOutputStream();
-	long lastSubmitted = System.currentTimeMillis();
-	int numberOfBatchedMessages = 0;
+	StreamSchema inputSchema;
+	MessageFormat format;
+	SchemaRegistry schemaRegistry;
+	MessageRoutes<MessageRoute<Tuple>> routes;
+	RejectionLog rejections = new RejectionLog(tracer, "tuples while converting to AVRO schema");
+	ParallelTupleEncoder parallelEncoder;
+	BinaryEncoder avroMessageEncoder;
+	BlobOutputStream avroMessageByteArray = new BlobOutputStream();
+
+	/*
+	 * Create the route of an Avro schema with the writer bound to the input
+	 * attributes. Without discriminator there is a single route, otherwise a
+	 * route is created for every schema when its first tuple arrives.
+	 */
+	private MessageRoute<Tuple> createRoute(Schema schema) throws Exception {
+		// Check Streams and Avro schema
+		boolean validMapping = TupleToAvroConverter.isValidTupleToAvroMapping(getOperatorContext().getName(),
+				inputSchema, schema);
+		if (!validMapping) {
+			throw new Exception(Messages.getString("AVRO_NO_SCHEMA_MATCH"));
+		}
+		// Bind the input attributes to the Avro fields once for all tuples
+		TupleToAvroMapping tupleMapping = TupleToAvroConverter.createMapping(inputSchema, schema);
+		return new MessageRoute<Tuple>(schema, new TupleDatumWriter(tupleMapping, directEncoding), routes);
+	}
 
 	/**
 	 * Compile time operator checks: Do not use the operator in a consistent region
@@ -185,36 +306,113 @@ public class TupleToAvro extends AbstractOperator {
 		}
 		tracer.log(TraceLevel.TRACE, "Output Avro message attribute: " + outputAvroMessage);
 
-		// Get the Avro schema file to parse the Avro messages
-		tracer.log(TraceLevel.TRACE, "Retrieving and parsing Avro message schema file " + avroMessageSchemaFile);
-		InputStream avscInput = new FileInputStream(avroMessageSchemaFile);
-		Schema.Parser parser = new Schema.Parser();
-		messageSchema = parser.parse(avscInput);
+		// The discriminator selects the Avro schema of a tuple
+		if (avroSchemaAttribute != null) {
+			tracer.log(TraceLevel.TRACE, "Avro schema attribute: " + avroSchemaAttribute);
+			Attribute avroSchemaAttributeAttribute = ssIp0.getAttribute(avroSchemaAttribute);
+			if (avroSchemaAttributeAttribute == null) {
+				tracer.log(TraceLevel.ERROR, Messages.getString("AVRO_INPUT_ATTRIBUTE_NOT_FOUND", "avroSchemaAttribute", avroSchemaAttribute));
+				throw new IllegalArgumentException(Messages.getString("AVRO_INPUT_ATTRIBUTE_NOT_FOUND", "avroSchemaAttribute", avroSchemaAttribute));
+			}
+			MetaType attributeType = avroSchemaAttributeAttribute.getType().getMetaType();
+			if (attributeType!=MetaType.RSTRING && attributeType!=MetaType.USTRING) {
+				tracer.log(TraceLevel.ERROR, Messages.getString("AVRO_ATTRIBUTE_WRONG_TYPE", "avroSchemaAttribute", avroSchemaAttribute, "rstring or ustring"));
+				throw new IllegalArgumentException(Messages.getString("AVRO_ATTRIBUTE_WRONG_TYPE", "avroSchemaAttribute", avroSchemaAttribute, "rstring or ustring"));
+			}
+			if (avroSchemaDirectory == null)
+				throw new IllegalArgumentException(Messages.getString("AVRO_PARAMETER_REQUIRED", "avroSchemaDirectory",
+						"avroSchemaAttribute", avroSchemaAttribute));
+			// The parallel encoder has a single writer
+			if (encodingThreads > 1)
+				throw new IllegalArgumentException(Messages.getString("AVRO_PARAMETERS_EXCLUSIVE", "avroSchemaAttribute", "encodingThreads"));
+		}
 
-		// Check Streams and Avro schema
-		boolean validMapping = TupleToAvroConverter.isValidTupleToAvroMapping(operatorContext.getName(), ssIp0,
-				messageSchema);
-		if (!validMapping) {
-			throw new Exception(Messages.getString("AVRO_NO_SCHEMA_MATCH"));
+		// Get the Avro schema file to parse the Avro messages
+		if (avroMessageSchemaFile != null) {
+			tracer.log(TraceLevel.TRACE, "Retrieving and parsing Avro message schema file " + avroMessageSchemaFile);
+			InputStream avscInput = new FileInputStream(avroMessageSchemaFile);
+			Schema.Parser parser = new Schema.Parser();
+			messageSchema = parser.parse(avscInput);
+		} else if (avroSchemaAttribute == null) {
+			throw new IllegalArgumentException(Messages.getString("AVRO_SCHEMA_REQUIRED", "avroMessageSchemaFile",
+					"avroSchemaAttribute"));
 		}
 
 		tracer.log(TraceLevel.TRACE, "Embed Avro schema in generated output Avro message block: " + embedAvroSchema);
 		tracer.log(TraceLevel.TRACE, "Submit Avro message block when punctuation is received: " + submitOnPunct);
+		tracer.log(TraceLevel.TRACE, "Encode tuples directly without Avro record: " + directEncoding);
 
 		// submitOnPunct is only valid if Avro schema is embedded in the output
-		if (!embedAvroSchema && ( submitOnPunct || (tuplesPerMessage != 0) || (bytesPerMessage != 0) || (timePerMessage != 0) ) )
-			throw new Exception(Messages.getString("AVRO_EMBEDDED_SCHEMA_REQUIRED","submitOnPunct, bytesPerMessage, timePerMessage, tuplesPerMessage"));
+		if (!embedAvroSchema && ( submitOnPunct || (tuplesPerMessage != 0) || (bytesPerMessage != 0) || (timePerMessage != 0) || (bytesPerBlock != 0) || (codec != null) || (compressionLevel != null) || asyncSubmit ) )
+			throw new Exception(Messages.getString("AVRO_EMBEDDED_SCHEMA_REQUIRED","submitOnPunct, bytesPerMessage, timePerMessage, tuplesPerMessage, bytesPerBlock, codec, compressionLevel, asyncSubmit"));
 		// If Avro schema is embedded in the output, submitOnPunct is mandatory
 		if (embedAvroSchema && !submitOnPunct && tuplesPerMessage == 0 && bytesPerMessage == 0 && timePerMessage == 0)
 			throw new Exception(Messages.getString("AVRO_MISSING_THRESHOLD","submitOnPunct, bytesPerMessage, timePerMessage, tuplesPerMessage"));
+		if (embedAvroSchema && (messageFormat != null || (avroSchemaDirectory != null && avroSchemaAttribute == null)))
+			throw new Exception(Messages.getString("AVRO_EMBEDDED_SCHEMA_NOT_ALLOWED", "messageFormat, avroSchemaDirectory"));
+		if (messageFormat == null)
+			messageFormat = MessageFormat.BINARY.getParameterValue();
+		tracer.log(TraceLevel.TRACE, "Avro message format: " + messageFormat);
+		format = MessageFormat.fromParameter("messageFormat", messageFormat);
+		if (format == MessageFormat.SCHEMA_REGISTRY) {
+			if (avroSchemaDirectory == null)
+				throw new IllegalArgumentException(Messages.getString("AVRO_PARAMETER_REQUIRED", "avroSchemaDirectory",
+						"messageFormat", messageFormat));
+			tracer.log(TraceLevel.TRACE, "Loading schema registry from directory " + avroSchemaDirectory);
+			schemaRegistry = new LocalSchemaRegistry(new File(avroSchemaDirectory));
+		}
+		if (bytesPerBlock == 0)
+			bytesPerBlock = AvroBlockBuilder.DEFAULT_BYTES_PER_BLOCK;
+		if (bytesPerBlock < AvroBlockBuilder.MIN_BYTES_PER_BLOCK || bytesPerBlock > AvroBlockBuilder.MAX_BYTES_PER_BLOCK)
+			throw new IllegalArgumentException(Messages.getString("AVRO_PARAMETER_OUT_OF_RANGE", "bytesPerBlock",
+					bytesPerBlock, AvroBlockBuilder.MIN_BYTES_PER_BLOCK, AvroBlockBuilder.MAX_BYTES_PER_BLOCK));
+		if (encodingThreads < 1 || encodingThreads > MAX_ENCODING_THREADS)
+			throw new IllegalArgumentException(Messages.getString("AVRO_PARAMETER_OUT_OF_RANGE", "encodingThreads",
+					encodingThreads, 1, MAX_ENCODING_THREADS));
+		if (codec == null)
+			codec = DataFileConstants.NULL_CODEC;
+		CodecFactory codecFactory = AvroBlockBuilder.createCodecFactory(codec, compressionLevel);
+		tracer.log(TraceLevel.TRACE, "Data block codec: " + codecFactory);
 
 		// Prepare and initialize variables that don't change for every input
 		// record
-		avroWriter = new GenericDatumWriter<GenericRecord>(messageSchema);
-		avroDataFileWriter = new DataFileWriter<GenericRecord>(avroWriter);
+		inputSchema = ssIp0;
+		outStream = getOutput(0);
+		outTuple = outStream.newTuple();
+		routes = new MessageRoutes<MessageRoute<Tuple>>(this, outStream, outputAvroMessage);
 		if (embedAvroSchema)
-			avroDataFileWriter.create(messageSchema, avroBlockByteArray);
-		numberOfBatchedMessages = 0;
+			routes.setEmbeddedSchema((int) bytesPerBlock, codecFactory, asyncSubmit ? operatorContext.getThreadFactory() : null,
+					tuplesPerMessage, bytesPerMessage, timePerMessage);
+		else
+			routes.setMessageFormat(format, schemaRegistry);
+		if (messageSchema != null)
+			routes.setDefaultRoute(createRoute(messageSchema));
+		if (avroSchemaAttribute != null) {
+			tracer.log(TraceLevel.TRACE, "Loading Avro schemas from directory " + avroSchemaDirectory);
+			routes.setSchemaStore(new SchemaDirectoryStore(new File(avroSchemaDirectory)),
+					new SchemaRouter.RouteFactory<MessageRoute<Tuple>>() {
+						@Override
+						public MessageRoute<Tuple> createRoute(Schema schema) throws Exception {
+							tracer.log(TraceLevel.TRACE, "Creating writer of Avro schema " + schema.getFullName());
+							return TupleToAvro.this.createRoute(schema);
+						}
+					});
+		}
+		if (encodingThreads > 1) {
+			tracer.log(TraceLevel.TRACE, "Encoding tuples with " + encodingThreads + " threads");
+			parallelEncoder = new ParallelTupleEncoder(routes.getDefaultRoute().writer, routes.getDefaultRoute().header, encodingThreads, operatorContext.getThreadFactory(),
+					this, new ParallelTupleEncoder.EncodedTupleHandler() {
+						@Override
+						public void handle(Tuple tuple, byte[] encodedTuple) throws Exception {
+							submitEncoded(tuple, encodedTuple);
+						}
+
+						@Override
+						public void reject(Tuple tuple, Exception failure) {
+							rejectTuple(tuple, failure);
+						}
+					});
+		}
 
 		tracer.log(TraceLevel.TRACE, "TupleToAvro operator initialized, ready to receive tuples");
 
@@ -229,69 +427,94 @@ public class TupleToAvro extends AbstractOperator {
 		if (tracer.isTraceEnabled())
 			tracer.log(TraceLevel.TRACE, "Input tuple: " + tuple);
 
-		// Create a new tuple for output port 0 and copy over any matching
-		// attributes
-		outStream = getOutput(0);
-		outTuple = outStream.newTuple();
-		outTuple.assign(tuple);
+		// The encoded tuples are submitted in input order by the encoding
+		// threads
+		if (parallelEncoder != null) {
+			parallelEncoder.encode(tuple);
+			return;
+		}
 
-		// Parse the tuple input and assign to Avro datum
-		GenericRecord datum = TupleToAvroConverter.convertTupleToAvro(tuple, inputStream.getStreamSchema(),
-				messageSchema);
+		// The timer thread submits Avro message blocks, too, the tuples are
+		// only processed under the lock of the operator if there is a timer
+		if (routes.isTimed()) {
+			synchronized (this) {
+				processTuple(tuple);
+			}
+		} else {
+			processTuple(tuple);
+		}
+	}
 
+	// Encode a tuple and submit it or add it to the Avro message block
+	private void processTuple(Tuple tuple) {
 		try {
-			// Encode the datum to Avro
+			// Encode the tuple to Avro
+			MessageRoute<Tuple> route = routes.getRoute(
+					(avroSchemaAttribute != null) ? tuple.getString(avroSchemaAttribute) : null);
 			if (embedAvroSchema) {
-				avroDataFileWriter.append(datum);
-				avroDataFileWriter.flush();
-				numberOfBatchedMessages++;
-				// Check if any of the threshold parameters has been exceeded
-				if (tuplesPerMessage != 0 && numberOfBatchedMessages >= tuplesPerMessage)
-					submitAvroToOuput();
-				if (bytesPerMessage != 0 && avroBlockByteArray.size() >= bytesPerMessage)
-					submitAvroToOuput();
-				if (timePerMessage != 0) {
-					if (System.currentTimeMillis() >= (lastSubmitted + (1000 * timePerMessage)))
-						submitAvroToOuput();
-				}
+				route.blockSubmitter.append(tuple, tuple);
+				routes.submitOnThreshold(route);
 			} else {
-				Encoder encoder = EncoderFactory.get().binaryEncoder(avroMessageByteArray, null);
-				avroWriter.write(datum, encoder);
-				encoder.flush();
+				// Reuse the tuple for output port 0 and copy over any
+				// matching attributes
+				outTuple.assign(tuple);
+				// The encoder flushes bytes of a failed tuple when it is
+				// reused, so the stream is reset after the encoder
+				avroMessageEncoder = EncoderFactory.get().binaryEncoder(avroMessageByteArray, avroMessageEncoder);
+				avroMessageByteArray.reset();
+				if (route.header != null)
+					avroMessageByteArray.write(route.header, 0, route.header.length);
+				route.writer.write(tuple, avroMessageEncoder);
+				avroMessageEncoder.flush();
 				submitAvroToOuput();
 			}
 		} catch (Exception e) {
-			tracer.log(TraceLevel.ERROR, "Error while converting tuple to AVRO schema: " + e.getMessage() + ". Tuple: " + inputStream);
-			e.printStackTrace();
+			rejectTuple(tuple, e);
+		}
+	}
+
+	// The tuple is skipped, failures are logged at most once per interval
+	private void rejectTuple(Tuple tuple, Exception failure) {
+		if (tracer.isDebugEnabled())
+			tracer.log(TraceLevel.DEBUG, "Rejected tuple: " + failure.getMessage() + ". Tuple: " + tuple, failure);
+		rejections.reject(failure);
+	}
+
+	// Add a tuple encoded by the parallel encoder to the Avro message block,
+	// or submit it as individual message
+	private void submitEncoded(Tuple tuple, byte[] encodedTuple) throws Exception {
+		if (embedAvroSchema) {
+			routes.getDefaultRoute().blockSubmitter.appendEncoded(tuple, ByteBuffer.wrap(encodedTuple));
+			routes.submitOnThreshold(routes.getDefaultRoute());
+		} else {
+			outTuple.assign(tuple);
+			outTuple.setBlob(outputAvroMessage, ValueFactory.newBlob(encodedTuple));
+			outStream.submit(outTuple);
 		}
 	}
 
+	/**
+	 * Start the timer that submits the Avro message block when timePerMessage
+	 * is exceeded, also if no tuples arrive.
+	 */
+	@Override
+	public void allPortsReady() throws Exception {
+		super.allPortsReady();
+		if (embedAvroSchema)
+			routes.startTimer(getOperatorContext().getScheduledExecutorService());
+	}
+
 	// Submit the Avro byte array to the output port and reset byte array
 	private void submitAvroToOuput() throws Exception {
-		// Send block of messages with Avro schema included and punctuation
+		// Send the blocks of messages with Avro schema included and punctuation
 		if (embedAvroSchema) {
-			if (numberOfBatchedMessages > 0) {
-				if (tracer.isTraceEnabled())
-					tracer.log(TraceLevel.TRACE, "Submitting " + numberOfBatchedMessages
-							+ " Avro messages with a total length of " + avroBlockByteArray.size() + " bytes");
-				outTuple.setBlob(outputAvroMessage, ValueFactory.newBlob(avroBlockByteArray.toByteArray()));
-				outStream.submit(outTuple);
-				outStream.punctuate(Punctuation.WINDOW_MARKER);
-				// Reset for the next block
-				avroBlockByteArray.reset();
-				avroDataFileWriter.close();
-				avroDataFileWriter.create(messageSchema, avroBlockByteArray);
-				lastSubmitted = System.currentTimeMillis();
-				numberOfBatchedMessages = 0;
-			}
+			routes.submitAll();
 		} else { // Send individual message
 			if (tracer.isTraceEnabled())
 				tracer.log(TraceLevel.TRACE,
 						"Submitting Avro message with length " + avroMessageByteArray.size() + " bytes");
-			outTuple.setBlob(outputAvroMessage, ValueFactory.newBlob(avroMessageByteArray.toByteArray()));
+			outTuple.setBlob(outputAvroMessage, avroMessageByteArray.toBlob());
 			outStream.submit(outTuple);
-			// Reset for the next message
-			avroMessageByteArray.reset();
 		}
 	}
 
@@ -301,23 +524,57 @@ public class TupleToAvro extends AbstractOperator {
 	 * true, or when the final punctuation is received.
 	 */
 	public void processPunctuation(StreamingInput<Tuple> inputStream, Punctuation mark) throws Exception {
+		// All tuples before the punctuation must be submitted first
+		if (parallelEncoder != null)
+			parallelEncoder.drain();
+		// The timer thread submits Avro message blocks, too
+		if (routes.isTimed()) {
+			synchronized (this) {
+				processMark(inputStream, mark);
+			}
+		} else {
+			processMark(inputStream, mark);
+		}
+	}
+
+	private void processMark(StreamingInput<Tuple> inputStream, Punctuation mark) throws Exception {
+		if (mark == Punctuation.FINAL_MARKER)
+			rejections.flush();
 		// If Avro messages are batched, submit current batch and punctuation if
 		// submitOnPunct
 		if (embedAvroSchema) {
 			if (submitOnPunct && mark == Punctuation.WINDOW_MARKER)
 				submitAvroToOuput();
+			// All message blocks must be out before the final punctuation
 			if (mark == Punctuation.FINAL_MARKER)
-				submitAvroToOuput();
+				routes.submitFinal();
 		}
 		// Else forward window punctuation mark to the output port
 		else
 			super.processPunctuation(inputStream, mark);
 	}
 
+	/**
+	 * Stop the timer and the threads that encode the tuples and submit the Avro
+	 * message block.
+	 */
+	@Override
+	public void shutdown() throws Exception {
+		if (parallelEncoder != null)
+			parallelEncoder.shutdown();
+		if (routes != null)
+			routes.shutdown();
+		super.shutdown();
+	}
+
 	static final String DESC = "This operator converts Streams tuples into binary Avro messages. The input tuples can be"
 			+ "nested types with lists and tuples, but the attribute types must be mappable to the Avro primitive types. "
 			+ "boolean, float32, float64, int32, int64, rstring and ustring are respectively mapped to "
 			+ "Boolean, Float, Double, Integer, Long, String.\\n\\n"
+			+ "With parameter `avroSchemaAttribute`, the tuples of one stream can be converted with different Avro schemas. "
+			+ "The attribute names the schema in the directory of parameter `avroSchemaDirectory`, and every schema has its "
+			+ "own writer and, if Avro schema is embedded in the output, its own Avro message block, which is submitted with "
+			+ "its own punctuation when its threshold is reached.\\n\\n"
 			+ "If parameter `embedAvroSchema` is false, the operator passes window punctuation marker transparently to the output port. "
 			+ "If parameter `embedAvroSchema` is true, the operator generates window punctuation markers.\\n\\n"
 			+ "If the output message attribute is not found or has no blob type, the operator will fail.\\n\\n"
@@ -0,0 +1,239 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.convert;
+
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.log4j.Logger;
+
+import com.ibm.streams.operator.Attribute;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type;
+import com.ibm.streams.operator.Type.MetaType;
+import com.ibm.streams.operator.log4j.TraceLevel;
+import com.ibm.streams.operator.meta.CollectionType;
+import com.ibm.streams.operator.meta.TupleType;
+import com.ibm.streamsx.avro.Messages;
+
+/**
+ * Validates and builds the mapping of an Avro record schema to a tuple schema.
+ * This is the counterpart of {@link TupleToAvroConverter}: an attribute is
+ * mapped to the Avro field with the same name, and the attribute and field
+ * types must match in the same way. A record field can additionally be a
+ * union of null and the type of the attribute. A null value is converted to
+ * the default value of the attribute.
+ */
+public class AvroToTupleConverter {
+
+	private static Logger LOGGER = Logger.getLogger(AvroToTupleConverter.class.getCanonicalName());
+
+	/*
+	 * Check the schema of the output tuple (recursively)
+	 */
+	public static boolean isValidAvroToTupleMapping(String tupleSchemaName, StreamSchema tupleSchema, Schema avroSchema)
+			throws Exception {
+		boolean validMapping = true;
+		LOGGER.log(TraceLevel.TRACE,
+				"Checking attributes in tuple schema " + tupleSchemaName + ": " + tupleSchema.getAttributeNames());
+		for (String attributeName : tupleSchema.getAttributeNames()) {
+			Attribute attribute = tupleSchema.getAttribute(attributeName);
+			Field avroField = avroSchema.getField(attributeName);
+			if (avroField != null)
+				validMapping = validMapping & isValidAvroToAttributeMapping(attributeName, attribute.getType(),
+						getNonNullSchema(avroField.schema()));
+			else
+				LOGGER.log(TraceLevel.INFO, "Attribute " + attributeName + " in schema " + tupleSchemaName
+						+ " does not have a corresponding field in the Avro schema. It will not be mapped.");
+		}
+		return validMapping;
+	}
+
+	/*
+	 * Check that the Avro type can be decoded into the tuple output attribute
+	 * (recursively)
+	 */
+	private static boolean isValidAvroToAttributeMapping(String attributeName, Type tupleAttributeType,
+			Schema avroSchema) throws Exception {
+		boolean validMapping = true;
+		MetaType attributeMetaType = tupleAttributeType.getMetaType();
+		Schema.Type avroSchemaType = avroSchema.getType();
+		LOGGER.log(TraceLevel.TRACE, "Checking attribute: " + attributeName + ", type: " + tupleAttributeType
+				+ ", metatype: " + attributeMetaType + ". Avro type is: " + avroSchemaType);
+		if (!SupportedTypes.SUPPORTED_STREAMS_TYPES.contains(attributeMetaType)) {
+			LOGGER.log(TraceLevel.ERROR, Messages.getString("AVRO_TYPE_NOT_SUPPORTED", tupleAttributeType, attributeName,
+					SupportedTypes.SUPPORTED_STREAMS_TYPES));
+			validMapping = false;
+		} else {
+			switch (attributeMetaType) {
+			case BOOLEAN:
+				if (avroSchemaType != Schema.Type.BOOLEAN) {
+					LOGGER.log(TraceLevel.ERROR, Messages.getString("AVRO_WRONG_MAPPING", "boolean attribute " + attributeName, "Boolean type", avroSchemaType));
+					validMapping = false;
+				}
+				break;
+			case FLOAT32:
+				if (avroSchemaType != Schema.Type.FLOAT) {
+					LOGGER.log(TraceLevel.ERROR, Messages.getString("AVRO_WRONG_MAPPING", "float32 attribute " + attributeName, "Float type", avroSchemaType));
+					validMapping = false;
+				}
+				break;
+			case FLOAT64:
+				if (avroSchemaType != Schema.Type.DOUBLE) {
+					LOGGER.log(TraceLevel.ERROR, Messages.getString("AVRO_WRONG_MAPPING", "float64 attribute " + attributeName, "Double type", avroSchemaType));
+					validMapping = false;
+				}
+				break;
+			case INT32:
+				if (avroSchemaType != Schema.Type.INT) {
+					LOGGER.log(TraceLevel.ERROR, Messages.getString("AVRO_WRONG_MAPPING", "int32 attribute " + attributeName, "Integer type", avroSchemaType));
+					validMapping = false;
+				}
+				break;
+			case INT64:
+				if (avroSchemaType != Schema.Type.LONG) {
+					LOGGER.log(TraceLevel.ERROR, Messages.getString("AVRO_WRONG_MAPPING", "int64 attribute " + attributeName, "Long type", avroSchemaType));
+					validMapping = false;
+				}
+				break;
+			case RSTRING:
+			case USTRING:
+				if (avroSchemaType != Schema.Type.STRING) {
+					LOGGER.log(TraceLevel.ERROR, Messages.getString("AVRO_WRONG_MAPPING", "rstring or ustring attribute " + attributeName, "String type", avroSchemaType));
+					validMapping = false;
+				}
+				break;
+			case TUPLE:
+				if (avroSchemaType != Schema.Type.RECORD) {
+					LOGGER.log(TraceLevel.ERROR, Messages.getString("AVRO_WRONG_MAPPING", "tuple attribute " + attributeName, "Record type", avroSchemaType));
+					validMapping = false;
+				} else {
+					StreamSchema subStreamSchema = ((TupleType) tupleAttributeType).getTupleSchema();
+					validMapping = isValidAvroToTupleMapping(attributeName, subStreamSchema, avroSchema);
+				}
+				break;
+			case LIST:
+				if (avroSchemaType != Schema.Type.ARRAY) {
+					LOGGER.log(TraceLevel.ERROR, Messages.getString("AVRO_WRONG_MAPPING", "list<> attribute " + attributeName, "Array type", avroSchemaType));
+					validMapping = false;
+				} else {
+					// The array elements must not be null, as there is no
+					// default value for a list element
+					Type tupleElementType = ((CollectionType) tupleAttributeType).getElementType();
+					Schema avroArrayElementType = avroSchema.getElementType();
+					validMapping = isValidAvroToAttributeMapping(attributeName, tupleElementType, avroArrayElementType);
+				}
+				break;
+			default:
+				LOGGER.log(TraceLevel.WARN,
+						"Ignoring attribute " + attributeName + " because of unsupported type " + tupleAttributeType);
+			}
+		}
+
+		return validMapping;
+	}
+
+	/*
+	 * Build the precompiled mapping of the Avro schema to the tuple schema
+	 * (recursively). The mapping must have been checked with
+	 * isValidAvroToTupleMapping before.
+	 */
+	public static AvroToTupleMapping createMapping(StreamSchema tupleSchema, Schema avroSchema) {
+		List<Field> fields = avroSchema.getFields();
+		int[] fieldAttributeIndexes = new int[fields.size()];
+		AvroToTupleMapping.FieldDecoder[] fieldDecoders = new AvroToTupleMapping.FieldDecoder[fields.size()];
+		Tuple defaultTuple = tupleSchema.getTuple();
+		for (Field avroField : fields) {
+			Attribute attribute = tupleSchema.getAttribute(avroField.name());
+			AvroToTupleMapping.FieldDecoder decoder = null;
+			// If there is an attribute associated with this Avro field, bind it
+			if (attribute != null) {
+				Schema fieldSchema = avroField.schema();
+				decoder = createFieldDecoder(attribute.getName(), attribute.getType(), getNonNullSchema(fieldSchema));
+				if (decoder != null && fieldSchema != getNonNullSchema(fieldSchema))
+					decoder = new AvroToTupleMapping.NullableDecoder(
+							fieldSchema.getIndexNamed(Schema.Type.NULL.getName()), decoder,
+							defaultTuple.getObject(attribute.getIndex()));
+			}
+			if (decoder != null) {
+				fieldAttributeIndexes[avroField.pos()] = attribute.getIndex();
+				fieldDecoders[avroField.pos()] = decoder;
+			} else {
+				fieldAttributeIndexes[avroField.pos()] = -1;
+				fieldDecoders[avroField.pos()] = new AvroToTupleMapping.SkipDecoder(avroField.schema());
+			}
+		}
+		return new AvroToTupleMapping(avroSchema, tupleSchema, fieldAttributeIndexes, fieldDecoders);
+	}
+
+	/*
+	 * Get the decoder for the appropriate type
+	 */
+	private static AvroToTupleMapping.FieldDecoder createFieldDecoder(String attributeName, Type tupleAttributeType,
+			Schema avroSchema) {
+		AvroToTupleMapping.FieldDecoder decoder = null;
+		MetaType metaType = tupleAttributeType.getMetaType();
+		switch (metaType) {
+		case BOOLEAN:
+			decoder = new AvroToTupleMapping.BooleanDecoder();
+			break;
+		case FLOAT32:
+			decoder = new AvroToTupleMapping.FloatDecoder();
+			break;
+		case FLOAT64:
+			decoder = new AvroToTupleMapping.DoubleDecoder();
+			break;
+		case INT32:
+			decoder = new AvroToTupleMapping.IntDecoder();
+			break;
+		case INT64:
+			decoder = new AvroToTupleMapping.LongDecoder();
+			break;
+		case RSTRING:
+			decoder = new AvroToTupleMapping.RStringDecoder();
+			break;
+		case USTRING:
+			decoder = new AvroToTupleMapping.UStringDecoder();
+			break;
+		case TUPLE:
+			StreamSchema subStreamSchema = ((TupleType) tupleAttributeType).getTupleSchema();
+			decoder = new AvroToTupleMapping.TupleDecoder(createMapping(subStreamSchema, avroSchema));
+			break;
+		case LIST:
+			// Obtain the type of the elements contained in the Streams list
+			Type tupleElementType = ((CollectionType) tupleAttributeType).getElementType();
+			// Obtain the type of the elements contained in the Avro array
+			Schema avroArrayElementType = avroSchema.getElementType();
+			AvroToTupleMapping.FieldDecoder elementDecoder = createFieldDecoder(attributeName, tupleElementType,
+					avroArrayElementType);
+			if (elementDecoder != null)
+				decoder = new AvroToTupleMapping.ListDecoder(elementDecoder);
+			break;
+		default:
+			LOGGER.log(TraceLevel.WARN,
+					"Ignoring attribute " + attributeName + " because of unsupported type " + metaType);
+		}
+		return decoder;
+	}
+
+	/*
+	 * Get the other branch of a union of null and one other type, otherwise the
+	 * schema itself
+	 */
+	private static Schema getNonNullSchema(Schema avroSchema) {
+		if (avroSchema.getType() == Schema.Type.UNION && avroSchema.getTypes().size() == 2) {
+			Integer nullIndex = avroSchema.getIndexNamed(Schema.Type.NULL.getName());
+			if (nullIndex != null)
+				return avroSchema.getTypes().get(1 - nullIndex);
+		}
+		return avroSchema;
+	}
+
+}
@@ -0,0 +1,325 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.convert;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.ResolvingDecoder;
+import org.apache.avro.util.Utf8;
+
+import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.types.RString;
+
+/**
+ * Precompiled mapping of an Avro record schema to a tuple schema. The mapping
+ * binds the position of every Avro field to the index of its attribute and to
+ * a decoder for the attribute type, so decoding a record needs no field or
+ * attribute lookups by name and no type dispatching.
+ *
+ * A record is read directly from an Avro decoder into the attributes of an
+ * output tuple without building a Generic Record. Fields without attribute
+ * are skipped. If the decoder is a {@link ResolvingDecoder}, the fields are
+ * read in the order of the writer schema.
+ *
+ * Instances are created with {@link AvroToTupleConverter#createMapping} after
+ * the mapping has been validated. A mapping reuses its string buffers and is
+ * not thread safe.
+ */
+public class AvroToTupleMapping {
+
+	/*
+	 * Reads an Avro value from a decoder and converts it into the value of a
+	 * tuple attribute
+	 */
+	static abstract class FieldDecoder {
+
+		abstract Object read(Decoder decoder) throws IOException;
+
+		void decode(Decoder decoder, OutputTuple tuple, int attributeIndex) throws IOException {
+			tuple.setObject(attributeIndex, read(decoder));
+		}
+	}
+
+	private final Schema avroSchema;
+	private final StreamSchema tupleSchema;
+	// Attribute index and decoder of every Avro field in schema order, the
+	// index is -1 for a field without attribute
+	private final int[] fieldAttributeIndexes;
+	private final FieldDecoder[] fieldDecoders;
+	// The default values of the attributes, which are the initial values of a
+	// nested tuple
+	private final Object[] defaultValues;
+
+	AvroToTupleMapping(Schema avroSchema, StreamSchema tupleSchema, int[] fieldAttributeIndexes,
+			FieldDecoder[] fieldDecoders) {
+		this.avroSchema = avroSchema;
+		this.tupleSchema = tupleSchema;
+		this.fieldAttributeIndexes = fieldAttributeIndexes;
+		this.fieldDecoders = fieldDecoders;
+		Tuple defaultTuple = tupleSchema.getTuple();
+		defaultValues = new Object[tupleSchema.getAttributeCount()];
+		for (int i = 0; i < defaultValues.length; i++) {
+			defaultValues[i] = defaultTuple.getObject(i);
+		}
+	}
+
+	/**
+	 * @return the Avro record schema of this mapping
+	 */
+	public Schema getAvroSchema() {
+		return avroSchema;
+	}
+
+	/**
+	 * Read an Avro record into the mapped attributes of a tuple. The other
+	 * attributes are not changed.
+	 *
+	 * @param decoder
+	 *            The decoder positioned at the record, which has the Avro
+	 *            schema of this mapping or resolves the writer schema to it
+	 * @param tuple
+	 *            The tuple which must have the schema this mapping was created
+	 *            for
+	 * @throws IOException
+	 */
+	public void read(Decoder decoder, OutputTuple tuple) throws IOException {
+		if (decoder instanceof ResolvingDecoder) {
+			for (Field field : ((ResolvingDecoder) decoder).readFieldOrder()) {
+				fieldDecoders[field.pos()].decode(decoder, tuple, fieldAttributeIndexes[field.pos()]);
+			}
+		} else {
+			for (int pos = 0; pos < fieldDecoders.length; pos++) {
+				fieldDecoders[pos].decode(decoder, tuple, fieldAttributeIndexes[pos]);
+			}
+		}
+	}
+
+	/**
+	 * Read a nested Avro record into a new tuple
+	 */
+	Tuple readTuple(Decoder decoder) throws IOException {
+		Object[] values = defaultValues.clone();
+		if (decoder instanceof ResolvingDecoder) {
+			for (Field field : ((ResolvingDecoder) decoder).readFieldOrder()) {
+				readField(decoder, field.pos(), values);
+			}
+		} else {
+			for (int pos = 0; pos < fieldDecoders.length; pos++) {
+				readField(decoder, pos, values);
+			}
+		}
+		return tupleSchema.getTuple(values);
+	}
+
+	private void readField(Decoder decoder, int pos, Object[] values) throws IOException {
+		Object value = fieldDecoders[pos].read(decoder);
+		if (fieldAttributeIndexes[pos] >= 0)
+			values[fieldAttributeIndexes[pos]] = value;
+	}
+
+	/*
+	 * Decoder for an Avro field that has no corresponding attribute. The value
+	 * is skipped.
+	 */
+	static class SkipDecoder extends FieldDecoder {
+
+		private final Schema fieldSchema;
+
+		SkipDecoder(Schema fieldSchema) {
+			this.fieldSchema = fieldSchema;
+		}
+
+		@Override
+		Object read(Decoder decoder) throws IOException {
+			GenericDatumReader.skip(fieldSchema, decoder);
+			return null;
+		}
+
+		@Override
+		void decode(Decoder decoder, OutputTuple tuple, int attributeIndex) throws IOException {
+			GenericDatumReader.skip(fieldSchema, decoder);
+		}
+	}
+
+	/*
+	 * Decoder for an Avro field which is a union of null and the type of the
+	 * attribute. A null value is converted to the default value of the
+	 * attribute.
+	 */
+	static class NullableDecoder extends FieldDecoder {
+
+		private final int nullIndex;
+		private final FieldDecoder valueDecoder;
+		private final Object defaultValue;
+
+		NullableDecoder(int nullIndex, FieldDecoder valueDecoder, Object defaultValue) {
+			this.nullIndex = nullIndex;
+			this.valueDecoder = valueDecoder;
+			this.defaultValue = defaultValue;
+		}
+
+		@Override
+		Object read(Decoder decoder) throws IOException {
+			if (decoder.readIndex() == nullIndex) {
+				decoder.readNull();
+				return defaultValue;
+			}
+			return valueDecoder.read(decoder);
+		}
+
+		@Override
+		void decode(Decoder decoder, OutputTuple tuple, int attributeIndex) throws IOException {
+			if (decoder.readIndex() == nullIndex) {
+				decoder.readNull();
+				tuple.setObject(attributeIndex, defaultValue);
+			} else {
+				valueDecoder.decode(decoder, tuple, attributeIndex);
+			}
+		}
+	}
+
+	static class BooleanDecoder extends FieldDecoder {
+
+		@Override
+		Object read(Decoder decoder) throws IOException {
+			return decoder.readBoolean();
+		}
+
+		@Override
+		void decode(Decoder decoder, OutputTuple tuple, int attributeIndex) throws IOException {
+			tuple.setBoolean(attributeIndex, decoder.readBoolean());
+		}
+	}
+
+	static class FloatDecoder extends FieldDecoder {
+
+		@Override
+		Object read(Decoder decoder) throws IOException {
+			return decoder.readFloat();
+		}
+
+		@Override
+		void decode(Decoder decoder, OutputTuple tuple, int attributeIndex) throws IOException {
+			tuple.setFloat(attributeIndex, decoder.readFloat());
+		}
+	}
+
+	static class DoubleDecoder extends FieldDecoder {
+
+		@Override
+		Object read(Decoder decoder) throws IOException {
+			return decoder.readDouble();
+		}
+
+		@Override
+		void decode(Decoder decoder, OutputTuple tuple, int attributeIndex) throws IOException {
+			tuple.setDouble(attributeIndex, decoder.readDouble());
+		}
+	}
+
+	static class IntDecoder extends FieldDecoder {
+
+		@Override
+		Object read(Decoder decoder) throws IOException {
+			return decoder.readInt();
+		}
+
+		@Override
+		void decode(Decoder decoder, OutputTuple tuple, int attributeIndex) throws IOException {
+			tuple.setInt(attributeIndex, decoder.readInt());
+		}
+	}
+
+	static class LongDecoder extends FieldDecoder {
+
+		@Override
+		Object read(Decoder decoder) throws IOException {
+			return decoder.readLong();
+		}
+
+		@Override
+		void decode(Decoder decoder, OutputTuple tuple, int attributeIndex) throws IOException {
+			tuple.setLong(attributeIndex, decoder.readLong());
+		}
+	}
+
+	/*
+	 * Decoder that copies the UTF-8 bytes of an Avro string into an rstring
+	 * without decoding them to a String
+	 */
+	static class RStringDecoder extends FieldDecoder {
+
+		private Utf8 utf8;
+
+		@Override
+		Object read(Decoder decoder) throws IOException {
+			utf8 = decoder.readString(utf8);
+			return new RString(Arrays.copyOf(utf8.getBytes(), utf8.getByteLength()));
+		}
+	}
+
+	static class UStringDecoder extends FieldDecoder {
+
+		@Override
+		Object read(Decoder decoder) throws IOException {
+			return decoder.readString();
+		}
+	}
+
+	/*
+	 * Decoder that decodes the elements of an Avro array into a Streams list
+	 */
+	static class ListDecoder extends FieldDecoder {
+
+		private final FieldDecoder elementDecoder;
+
+		ListDecoder(FieldDecoder elementDecoder) {
+			this.elementDecoder = elementDecoder;
+		}
+
+		@Override
+		Object read(Decoder decoder) throws IOException {
+			long count = decoder.readArrayStart();
+			List<Object> list = new ArrayList<Object>((int) Math.min(count, Integer.MAX_VALUE));
+			while (count > 0) {
+				for (long i = 0; i < count; i++) {
+					list.add(elementDecoder.read(decoder));
+				}
+				count = decoder.arrayNext();
+			}
+			return list;
+		}
+	}
+
+	/*
+	 * Decoder that decodes a nested Avro record into a nested tuple
+	 */
+	static class TupleDecoder extends FieldDecoder {
+
+		private final AvroToTupleMapping subMapping;
+
+		TupleDecoder(AvroToTupleMapping subMapping) {
+			this.subMapping = subMapping;
+		}
+
+		@Override
+		Object read(Decoder decoder) throws IOException {
+			return subMapping.readTuple(decoder);
+		}
+	}
+
+}
@@ -0,0 +1,55 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.convert;
+
+import java.io.IOException;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.Encoder;
+
+import com.ibm.streams.operator.Tuple;
+
+/**
+ * Avro datum writer for tuples. In direct encoding mode the tuple attributes
+ * are written straight to the encoder. Otherwise the tuple is converted to a
+ * Generic Record first, which is written by a GenericDatumWriter.
+ */
+public class TupleDatumWriter implements DatumWriter<Tuple> {
+
+	private final TupleToAvroMapping tupleMapping;
+	private final GenericDatumWriter<GenericRecord> genericWriter;
+
+	/**
+	 * @param tupleMapping
+	 *            The mapping of the tuple schema to the Avro schema
+	 * @param directEncoding
+	 *            Write the tuples without building a Generic Record
+	 */
+	public TupleDatumWriter(TupleToAvroMapping tupleMapping, boolean directEncoding) {
+		this.tupleMapping = tupleMapping;
+		this.genericWriter = directEncoding ? null
+				: new GenericDatumWriter<GenericRecord>(tupleMapping.getAvroSchema());
+	}
+
+	@Override
+	public void setSchema(Schema schema) {
+		// The schema is determined by the tuple mapping
+	}
+
+	@Override
+	public void write(Tuple tuple, Encoder encoder) throws IOException {
+		if (genericWriter == null)
+			tupleMapping.write(tuple, encoder);
+		else
+			genericWriter.write(tupleMapping.convert(tuple), encoder);
+	}
+
+}
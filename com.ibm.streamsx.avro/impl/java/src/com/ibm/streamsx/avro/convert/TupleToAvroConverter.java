@@ -7,12 +7,10 @@
 
 package com.ibm.streamsx.avro.convert;
 
-import java.util.List;
+import java.util.Arrays;
 
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Field;
-import org.apache.avro.generic.GenericArray;
-import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.log4j.Logger;
 
@@ -24,7 +22,6 @@ import com.ibm.streams.operator.Type.MetaType;
 import com.ibm.streams.operator.log4j.TraceLevel;
 import com.ibm.streams.operator.meta.CollectionType;
 import com.ibm.streams.operator.meta.TupleType;
-import com.ibm.streams.operator.types.RString;
 import com.ibm.streamsx.avro.Messages;
 
 public class TupleToAvroConverter {
@@ -138,81 +135,91 @@ public class TupleToAvroConverter {
 	}
 
 	/*
-	 * Convert the an input schema to an Avro Generic Record
+	 * Build the precompiled mapping of the tuple schema to the Avro schema
+	 * (recursively). The mapping must have been checked with
+	 * isValidTupleToAvroMapping before.
 	 */
-	public static GenericRecord convertTupleToAvro(Tuple tuple, StreamSchema streamSchema, Schema avroSchema) {
-		GenericRecord datum = new GenericData.Record(avroSchema);
-		for (String attributeName : streamSchema.getAttributeNames()) {
-			Attribute attribute = streamSchema.getAttribute(attributeName);
-			Object tupleAttribute = tuple.getObject(attributeName);
-			Field avroField = avroSchema.getField(attributeName);
-			// If there is an Avro field associated with this attribute, convert
-			if (avroField != null)
-				datum.put(attributeName,
-						convertAttributeToAvro(attributeName, tupleAttribute, attribute.getType(), avroField.schema()));
+	public static TupleToAvroMapping createMapping(StreamSchema tupleSchema, Schema avroSchema) {
+		int attributeCount = 0;
+		int[] attributeIndexes = new int[tupleSchema.getAttributeCount()];
+		int[] fieldPositions = new int[tupleSchema.getAttributeCount()];
+		TupleToAvroMapping.AttributeConverter[] converters = new TupleToAvroMapping.AttributeConverter[tupleSchema
+				.getAttributeCount()];
+		for (int attributeIndex = 0; attributeIndex < tupleSchema.getAttributeCount(); attributeIndex++) {
+			Attribute attribute = tupleSchema.getAttribute(attributeIndex);
+			Field avroField = avroSchema.getField(attribute.getName());
+			// If there is an Avro field associated with this attribute, bind it
+			if (avroField != null) {
+				TupleToAvroMapping.AttributeConverter converter = createAttributeConverter(attribute.getName(),
+						attribute.getType(), avroField.schema());
+				if (converter != null) {
+					attributeIndexes[attributeCount] = attributeIndex;
+					fieldPositions[attributeCount] = avroField.pos();
+					converters[attributeCount] = converter;
+					attributeCount++;
+				}
+			}
 		}
-		return datum;
+		return new TupleToAvroMapping(avroSchema, Arrays.copyOf(attributeIndexes, attributeCount),
+				Arrays.copyOf(fieldPositions, attributeCount), Arrays.copyOf(converters, attributeCount));
 	}
 
 	/*
-	 * Get the Avro object for the appropriate type
+	 * Get the converter for the appropriate type
 	 */
-	private static Object convertAttributeToAvro(String attributeName, Object tupleAttribute, Type tupleAttributeType,
-			Schema avroSchema) {
-		Object returnObject = null;
+	private static TupleToAvroMapping.AttributeConverter createAttributeConverter(String attributeName,
+			Type tupleAttributeType, Schema avroSchema) {
+		TupleToAvroMapping.AttributeConverter converter = null;
 		MetaType metaType = tupleAttributeType.getMetaType();
 		switch (metaType) {
 		case BOOLEAN:
-			returnObject = (Boolean) tupleAttribute;
+			converter = new TupleToAvroMapping.BooleanConverter();
 			break;
 		case FLOAT32:
-			returnObject = (Float) tupleAttribute;
+			converter = new TupleToAvroMapping.FloatConverter();
 			break;
 		case FLOAT64:
-			returnObject = (Double) tupleAttribute;
+			converter = new TupleToAvroMapping.DoubleConverter();
 			break;
 		case INT32:
-			returnObject = (Integer) tupleAttribute;
+			converter = new TupleToAvroMapping.IntConverter();
 			break;
 		case INT64:
-			returnObject = (Long) tupleAttribute;
+			converter = new TupleToAvroMapping.LongConverter();
 			break;
 		case RSTRING:
-			returnObject = ((RString) tupleAttribute).getString();
+			converter = new TupleToAvroMapping.RStringConverter();
 			break;
 		case USTRING:
-			returnObject = tupleAttribute.toString();
+			converter = new TupleToAvroMapping.UStringConverter();
 			break;
 		case TUPLE:
-			Tuple subTuple = (Tuple) tupleAttribute;
-			StreamSchema subStreamSchema = subTuple.getStreamSchema();
-			GenericRecord subDatum = convertTupleToAvro(subTuple, subStreamSchema, avroSchema);
-			// Return the Avro record
-			returnObject = subDatum;
+			StreamSchema subStreamSchema = ((TupleType) tupleAttributeType).getTupleSchema();
+			converter = new TupleToAvroMapping.TupleConverter(createMapping(subStreamSchema, avroSchema));
 			break;
 		case LIST:
-			@SuppressWarnings("unchecked")
-			List<Object> subList = (List<Object>) tupleAttribute;
 			// Obtain the type of the elements contained in the Streams list
 			Type tupleElementType = ((CollectionType) tupleAttributeType).getElementType();
 			// Obtain the type of the elements contained in the Avro array
 			Schema avroArrayElementType = avroSchema.getElementType();
-			// Now loop through all list elements and populate the associated
-			// Avro array elements
-			GenericArray<Object> subArray = new GenericData.Array<Object>(subList.size(), avroSchema);
-			for (Object arrayElement : subList) {
-				Object avroElement = convertAttributeToAvro(attributeName, arrayElement, tupleElementType,
-						avroArrayElementType);
-				subArray.add(avroElement);
-			}
-			// Return the Avro array
-			returnObject = subArray;
+			TupleToAvroMapping.AttributeConverter elementConverter = createAttributeConverter(attributeName,
+					tupleElementType, avroArrayElementType);
+			if (elementConverter != null)
+				converter = new TupleToAvroMapping.ListConverter(avroSchema, elementConverter);
 			break;
 		default:
 			LOGGER.log(TraceLevel.WARN,
 					"Ignoring attribute " + attributeName + " because of unsupported type " + metaType);
 		}
-		return returnObject;
+		return converter;
+	}
+
+	/*
+	 * Convert a tuple to an Avro Generic Record. The mapping is created for
+	 * every call, operators create it once with createMapping.
+	 */
+	public static GenericRecord convertTupleToAvro(Tuple tuple, StreamSchema streamSchema, Schema avroSchema) {
+		return createMapping(streamSchema, avroSchema).convert(tuple);
 	}
 
 }
@@ -0,0 +1,338 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.convert;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.Encoder;
+
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.types.RString;
+
+/**
+ * Precompiled mapping of a tuple schema to an Avro record schema. The mapping
+ * binds the index of every mapped attribute to the position of its Avro field
+ * and to a converter for the attribute type, so converting a tuple needs no
+ * attribute or field lookups by name and no type dispatching.
+ *
+ * A tuple can either be converted to an Avro Generic Record or be written
+ * directly to an Avro encoder in the field order of the Avro schema. Both ways
+ * produce the same binary Avro encoding.
+ *
+ * Instances are created with
+ * {@link TupleToAvroConverter#createMapping} after the
+ * mapping has been validated. A mapping is immutable and can be shared by
+ * several threads.
+ */
+public class TupleToAvroMapping {
+
+	/*
+	 * Converts a tuple attribute value into its Avro representation or writes
+	 * it directly to an Avro encoder
+	 */
+	static abstract class AttributeConverter {
+
+		abstract Object convert(Object tupleAttribute);
+
+		abstract void writeValue(Object tupleAttribute, Encoder encoder) throws IOException;
+
+		void write(Tuple tuple, int attributeIndex, Encoder encoder) throws IOException {
+			writeValue(tuple.getObject(attributeIndex), encoder);
+		}
+	}
+
+	private final Schema avroSchema;
+	private final int[] attributeIndexes;
+	private final int[] fieldPositions;
+	private final AttributeConverter[] converters;
+	// Attribute index and converter of every Avro field in schema order, the
+	// index is -1 for a field without attribute
+	private final int[] fieldAttributeIndexes;
+	private final AttributeConverter[] fieldConverters;
+
+	TupleToAvroMapping(Schema avroSchema, int[] attributeIndexes, int[] fieldPositions,
+			AttributeConverter[] converters) {
+		this.avroSchema = avroSchema;
+		this.attributeIndexes = attributeIndexes;
+		this.fieldPositions = fieldPositions;
+		this.converters = converters;
+		List<Field> fields = avroSchema.getFields();
+		fieldAttributeIndexes = new int[fields.size()];
+		fieldConverters = new AttributeConverter[fields.size()];
+		for (Field field : fields) {
+			fieldAttributeIndexes[field.pos()] = -1;
+			fieldConverters[field.pos()] = new MissingFieldConverter(field);
+		}
+		for (int i = 0; i < converters.length; i++) {
+			fieldAttributeIndexes[fieldPositions[i]] = attributeIndexes[i];
+			fieldConverters[fieldPositions[i]] = converters[i];
+		}
+	}
+
+	/**
+	 * @return the Avro record schema of this mapping
+	 */
+	public Schema getAvroSchema() {
+		return avroSchema;
+	}
+
+	/**
+	 * Convert a tuple to an Avro Generic Record
+	 *
+	 * @param tuple
+	 *            The tuple which must have the schema this mapping was created
+	 *            for
+	 * @return the Avro record
+	 */
+	public GenericRecord convert(Tuple tuple) {
+		GenericData.Record datum = new GenericData.Record(avroSchema);
+		for (int i = 0; i < converters.length; i++) {
+			datum.put(fieldPositions[i], converters[i].convert(tuple.getObject(attributeIndexes[i])));
+		}
+		return datum;
+	}
+
+	/**
+	 * Write a tuple as binary Avro record without building a Generic Record.
+	 * The written bytes are the same as writing the record returned by
+	 * {@link #convert(Tuple)} with a GenericDatumWriter.
+	 *
+	 * @param tuple
+	 *            The tuple which must have the schema this mapping was created
+	 *            for
+	 * @param encoder
+	 *            The encoder receiving the Avro record
+	 * @throws IOException
+	 */
+	public void write(Tuple tuple, Encoder encoder) throws IOException {
+		for (int pos = 0; pos < fieldConverters.length; pos++) {
+			fieldConverters[pos].write(tuple, fieldAttributeIndexes[pos], encoder);
+		}
+	}
+
+	/*
+	 * Writer for an Avro field that has no corresponding attribute. The field
+	 * is null in the Generic Record, so it can only be written if the field
+	 * type allows a null value.
+	 */
+	static class MissingFieldConverter extends AttributeConverter {
+
+		private final Field field;
+		private final int nullIndex;
+
+		MissingFieldConverter(Field field) {
+			this.field = field;
+			Schema fieldSchema = field.schema();
+			if (fieldSchema.getType() == Schema.Type.UNION) {
+				Integer index = fieldSchema.getIndexNamed(Schema.Type.NULL.getName());
+				nullIndex = (index != null) ? index : -2;
+			} else {
+				nullIndex = (fieldSchema.getType() == Schema.Type.NULL) ? -1 : -2;
+			}
+		}
+
+		@Override
+		Object convert(Object tupleAttribute) {
+			return null;
+		}
+
+		@Override
+		void writeValue(Object tupleAttribute, Encoder encoder) throws IOException {
+			if (nullIndex == -2)
+				throw new NullPointerException("null of " + field.schema().getFullName() + " in field " + field.name());
+			if (nullIndex >= 0)
+				encoder.writeIndex(nullIndex);
+			encoder.writeNull();
+		}
+
+		@Override
+		void write(Tuple tuple, int attributeIndex, Encoder encoder) throws IOException {
+			writeValue(null, encoder);
+		}
+	}
+
+	static class BooleanConverter extends AttributeConverter {
+
+		@Override
+		Object convert(Object tupleAttribute) {
+			return tupleAttribute;
+		}
+
+		@Override
+		void writeValue(Object tupleAttribute, Encoder encoder) throws IOException {
+			encoder.writeBoolean((Boolean) tupleAttribute);
+		}
+
+		@Override
+		void write(Tuple tuple, int attributeIndex, Encoder encoder) throws IOException {
+			encoder.writeBoolean(tuple.getBoolean(attributeIndex));
+		}
+	}
+
+	static class FloatConverter extends AttributeConverter {
+
+		@Override
+		Object convert(Object tupleAttribute) {
+			return tupleAttribute;
+		}
+
+		@Override
+		void writeValue(Object tupleAttribute, Encoder encoder) throws IOException {
+			encoder.writeFloat((Float) tupleAttribute);
+		}
+
+		@Override
+		void write(Tuple tuple, int attributeIndex, Encoder encoder) throws IOException {
+			encoder.writeFloat(tuple.getFloat(attributeIndex));
+		}
+	}
+
+	static class DoubleConverter extends AttributeConverter {
+
+		@Override
+		Object convert(Object tupleAttribute) {
+			return tupleAttribute;
+		}
+
+		@Override
+		void writeValue(Object tupleAttribute, Encoder encoder) throws IOException {
+			encoder.writeDouble((Double) tupleAttribute);
+		}
+
+		@Override
+		void write(Tuple tuple, int attributeIndex, Encoder encoder) throws IOException {
+			encoder.writeDouble(tuple.getDouble(attributeIndex));
+		}
+	}
+
+	static class IntConverter extends AttributeConverter {
+
+		@Override
+		Object convert(Object tupleAttribute) {
+			return tupleAttribute;
+		}
+
+		@Override
+		void writeValue(Object tupleAttribute, Encoder encoder) throws IOException {
+			encoder.writeInt((Integer) tupleAttribute);
+		}
+
+		@Override
+		void write(Tuple tuple, int attributeIndex, Encoder encoder) throws IOException {
+			encoder.writeInt(tuple.getInt(attributeIndex));
+		}
+	}
+
+	static class LongConverter extends AttributeConverter {
+
+		@Override
+		Object convert(Object tupleAttribute) {
+			return tupleAttribute;
+		}
+
+		@Override
+		void writeValue(Object tupleAttribute, Encoder encoder) throws IOException {
+			encoder.writeLong((Long) tupleAttribute);
+		}
+
+		@Override
+		void write(Tuple tuple, int attributeIndex, Encoder encoder) throws IOException {
+			encoder.writeLong(tuple.getLong(attributeIndex));
+		}
+	}
+
+	static class RStringConverter extends AttributeConverter {
+
+		@Override
+		Object convert(Object tupleAttribute) {
+			return ((RString) tupleAttribute).getString();
+		}
+
+		@Override
+		void writeValue(Object tupleAttribute, Encoder encoder) throws IOException {
+			encoder.writeString(((RString) tupleAttribute).getString());
+		}
+	}
+
+	static class UStringConverter extends AttributeConverter {
+
+		@Override
+		Object convert(Object tupleAttribute) {
+			return tupleAttribute.toString();
+		}
+
+		@Override
+		void writeValue(Object tupleAttribute, Encoder encoder) throws IOException {
+			encoder.writeString(tupleAttribute.toString());
+		}
+	}
+
+	/*
+	 * Converter that converts the elements of a Streams list into an Avro array
+	 */
+	static class ListConverter extends AttributeConverter {
+
+		private final Schema avroArraySchema;
+		private final AttributeConverter elementConverter;
+
+		ListConverter(Schema avroArraySchema, AttributeConverter elementConverter) {
+			this.avroArraySchema = avroArraySchema;
+			this.elementConverter = elementConverter;
+		}
+
+		@Override
+		Object convert(Object tupleAttribute) {
+			List<?> subList = (List<?>) tupleAttribute;
+			GenericData.Array<Object> subArray = new GenericData.Array<Object>(subList.size(), avroArraySchema);
+			for (Object arrayElement : subList) {
+				subArray.add(elementConverter.convert(arrayElement));
+			}
+			return subArray;
+		}
+
+		@Override
+		void writeValue(Object tupleAttribute, Encoder encoder) throws IOException {
+			List<?> subList = (List<?>) tupleAttribute;
+			encoder.writeArrayStart();
+			encoder.setItemCount(subList.size());
+			for (Object arrayElement : subList) {
+				encoder.startItem();
+				elementConverter.writeValue(arrayElement, encoder);
+			}
+			encoder.writeArrayEnd();
+		}
+	}
+
+	/*
+	 * Converter that converts a nested tuple into a nested Avro record
+	 */
+	static class TupleConverter extends AttributeConverter {
+
+		private final TupleToAvroMapping subMapping;
+
+		TupleConverter(TupleToAvroMapping subMapping) {
+			this.subMapping = subMapping;
+		}
+
+		@Override
+		Object convert(Object tupleAttribute) {
+			return subMapping.convert((Tuple) tupleAttribute);
+		}
+
+		@Override
+		void writeValue(Object tupleAttribute, Encoder encoder) throws IOException {
+			subMapping.write((Tuple) tupleAttribute, encoder);
+		}
+	}
+
+}
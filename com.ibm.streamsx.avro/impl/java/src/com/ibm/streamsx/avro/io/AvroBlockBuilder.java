@@ -0,0 +1,204 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.EncoderFactory;
+
+import com.ibm.streams.operator.types.Blob;
+import com.ibm.streamsx.avro.Messages;
+
+/**
+ * Builds Avro message blocks with embedded schema. A message block has the
+ * layout of an Avro container file: the header with the schema followed by one
+ * or more data blocks. Records are collected into a data block until the
+ * uncompressed block reaches {@code bytesPerBlock} bytes. Only then the data
+ * block is compressed with the codec and written with its sync marker.
+ *
+ * The records are encoded into a reusable buffer and appended pre-encoded, so
+ * the size of the open data block is known exactly. The builder is not thread
+ * safe.
+ *
+ * @param <D>
+ *            The type of the records written by the datum writer
+ */
+public class AvroBlockBuilder<D> {
+
+	/** The default uncompressed size of a data block */
+	public static final int DEFAULT_BYTES_PER_BLOCK = DataFileConstants.DEFAULT_SYNC_INTERVAL;
+	/** The minimum uncompressed size of a data block */
+	public static final int MIN_BYTES_PER_BLOCK = 32;
+	/** The maximum uncompressed size of a data block */
+	public static final int MAX_BYTES_PER_BLOCK = 1 << 30;
+	/** The supported compression codecs */
+	public static final String[] CODECS = { DataFileConstants.NULL_CODEC, DataFileConstants.DEFLATE_CODEC,
+			DataFileConstants.SNAPPY_CODEC, DataFileConstants.BZIP2_CODEC, DataFileConstants.XZ_CODEC,
+			DataFileConstants.ZSTANDARD_CODEC };
+
+	private final Schema schema;
+	private final DatumWriter<D> datumWriter;
+	private final int bytesPerBlock;
+	private final DataFileWriter<D> dataFileWriter;
+	private final BlobOutputStream messageBlock = new BlobOutputStream();
+	private final BlobOutputStream record = new BlobOutputStream();
+	private BinaryEncoder recordEncoder;
+	private long openDataBlockSize = 0;
+	private int recordCount = 0;
+
+	/**
+	 * @param schema
+	 *            The Avro schema of the records, which is embedded in every
+	 *            message block
+	 * @param datumWriter
+	 *            The writer that encodes the records
+	 * @param bytesPerBlock
+	 *            The uncompressed size of a data block in bytes
+	 * @param codec
+	 *            The codec that compresses the data blocks
+	 * @throws IOException
+	 */
+	public AvroBlockBuilder(Schema schema, DatumWriter<D> datumWriter, int bytesPerBlock, CodecFactory codec)
+			throws IOException {
+		this.schema = schema;
+		this.datumWriter = datumWriter;
+		this.bytesPerBlock = bytesPerBlock;
+		dataFileWriter = new DataFileWriter<D>(datumWriter);
+		dataFileWriter.setSyncInterval(bytesPerBlock);
+		dataFileWriter.setCodec(codec);
+		dataFileWriter.create(schema, messageBlock);
+	}
+
+	/**
+	 * Create the codec factory for a codec name and compression level
+	 *
+	 * @param codecName
+	 *            The name of the codec, one of {@link #CODECS}
+	 * @param compressionLevel
+	 *            The compression level for the codecs deflate (0 to 9), xz (0
+	 *            to 9) and zstandard (1 to 22), or null for the default level
+	 * @return the codec factory
+	 * @throws IllegalArgumentException
+	 *             if the codec is not supported or the level is invalid for
+	 *             the codec
+	 */
+	public static CodecFactory createCodecFactory(String codecName, Integer compressionLevel) {
+		switch (codecName) {
+		case DataFileConstants.DEFLATE_CODEC:
+			return CodecFactory.deflateCodec(checkCompressionLevel(codecName, compressionLevel, 0, 9,
+					CodecFactory.DEFAULT_DEFLATE_LEVEL));
+		case DataFileConstants.XZ_CODEC:
+			return CodecFactory.xzCodec(checkCompressionLevel(codecName, compressionLevel, 0, 9,
+					CodecFactory.DEFAULT_XZ_LEVEL));
+		case DataFileConstants.ZSTANDARD_CODEC:
+			return CodecFactory.zstandardCodec(checkCompressionLevel(codecName, compressionLevel, 1, 22,
+					CodecFactory.DEFAULT_ZSTANDARD_LEVEL));
+		case DataFileConstants.NULL_CODEC:
+			checkCompressionLevel(codecName, compressionLevel, 0, -1, 0);
+			return CodecFactory.nullCodec();
+		case DataFileConstants.SNAPPY_CODEC:
+			checkCompressionLevel(codecName, compressionLevel, 0, -1, 0);
+			return CodecFactory.snappyCodec();
+		case DataFileConstants.BZIP2_CODEC:
+			checkCompressionLevel(codecName, compressionLevel, 0, -1, 0);
+			return CodecFactory.bzip2Codec();
+		default:
+			throw new IllegalArgumentException(
+					Messages.getString("AVRO_INVALID_CODEC", codecName, String.join(", ", CODECS)));
+		}
+	}
+
+	/*
+	 * Check the compression level of a codec, a codec without levels has an
+	 * empty range
+	 */
+	private static int checkCompressionLevel(String codecName, Integer compressionLevel, int min, int max,
+			int defaultLevel) {
+		if (compressionLevel == null)
+			return defaultLevel;
+		if (compressionLevel < min || compressionLevel > max)
+			throw new IllegalArgumentException(
+					Messages.getString("AVRO_INVALID_COMPRESSION_LEVEL", compressionLevel, codecName));
+		return compressionLevel;
+	}
+
+	/**
+	 * Encode a record and append it to the open data block
+	 *
+	 * @param datum
+	 *            The record
+	 * @throws IOException
+	 */
+	public void append(D datum) throws IOException {
+		// The encoder flushes bytes of a failed record when it is reused, so
+		// the stream is reset after the encoder
+		recordEncoder = EncoderFactory.get().binaryEncoder(record, recordEncoder);
+		record.reset();
+		datumWriter.write(datum, recordEncoder);
+		recordEncoder.flush();
+		appendEncoded(record.toByteBuffer());
+	}
+
+	/**
+	 * Append an encoded record to the open data block
+	 *
+	 * @param encodedDatum
+	 *            The binary Avro encoding of the record
+	 * @throws IOException
+	 */
+	public void appendEncoded(ByteBuffer encodedDatum) throws IOException {
+		int length = encodedDatum.remaining();
+		dataFileWriter.appendEncoded(encodedDatum);
+		recordCount++;
+		openDataBlockSize += length;
+		// The data file writer has closed the data block when its sync
+		// interval is reached
+		if (openDataBlockSize >= bytesPerBlock)
+			openDataBlockSize = 0;
+	}
+
+	/**
+	 * @return the number of records in the message block
+	 */
+	public int getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * @return the estimated size of the message block in bytes: the size of the
+	 *         header and of the closed data blocks, and the uncompressed size of
+	 *         the open data block
+	 */
+	public long getEstimatedSize() {
+		return messageBlock.size() + openDataBlockSize;
+	}
+
+	/**
+	 * Close the open data block and hand the message block over to a blob. The
+	 * builder starts a new message block with a new header.
+	 *
+	 * @return the blob holding the message block
+	 * @throws IOException
+	 */
+	public Blob toBlob() throws IOException {
+		dataFileWriter.close();
+		Blob blob = messageBlock.toBlob();
+		dataFileWriter.create(schema, messageBlock);
+		openDataBlockSize = 0;
+		recordCount = 0;
+		return blob;
+	}
+
+}
@@ -0,0 +1,316 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+import org.apache.avro.InvalidAvroMagicException;
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+
+import com.ibm.streamsx.avro.schema.EmbeddedSchemaCache;
+
+/**
+ * Reads the records of Avro message blocks with embedded schema, which have
+ * the layout of an Avro container file. This is the counterpart of
+ * {@link AvroBlockBuilder}.
+ *
+ * Unlike {@link org.apache.avro.file.DataFileStream}, the reader does not parse
+ * the embedded schema of every message block. The schema bytes of the header
+ * are looked up in a schema cache, and the data blocks are decoded straight
+ * after the header. The message block is read from a byte buffer, which can
+ * be a read-only view of a blob, so the blob is never copied as a whole. The
+ * data blocks are slices of the message block and can be handed to other
+ * threads with {@link #nextBlock()}. The decoders and the codecs are reused
+ * for all message blocks. The reader is not thread safe.
+ */
+public class AvroBlockReader {
+
+	private static final byte[] SCHEMA_KEY = DataFileConstants.SCHEMA.getBytes(StandardCharsets.UTF_8);
+	private static final byte[] CODEC_KEY = DataFileConstants.CODEC.getBytes(StandardCharsets.UTF_8);
+
+	/**
+	 * A data block of a message block, which can be decoded on any thread by a
+	 * {@link DataBlockDecoder}. The data block is a slice of the buffer of the
+	 * message block. It carries the schemas of its records, the decoder reads
+	 * them with its own datum reader.
+	 */
+	public static class DataBlock {
+		final ByteBuffer data;
+		final long recordCount;
+		final String codecName;
+		final Schema writerSchema;
+		final Schema readerSchema;
+		final RecordFilter filter;
+
+		DataBlock(ByteBuffer data, long recordCount, String codecName, Schema writerSchema, Schema readerSchema,
+				RecordFilter filter) {
+			this.data = data;
+			this.recordCount = recordCount;
+			this.codecName = codecName;
+			this.writerSchema = writerSchema;
+			this.readerSchema = readerSchema;
+			this.filter = filter;
+		}
+
+		/**
+		 * @return the number of records in the data block
+		 */
+		public long getRecordCount() {
+			return recordCount;
+		}
+	}
+
+	private final EmbeddedSchemaCache schemas;
+	private final DataBlockDecoder blockDecoder = new DataBlockDecoder();
+	private final byte[] sync = new byte[DataFileConstants.SYNC_SIZE];
+	private ByteBuffer data;
+	private byte[] schemaBytes = new byte[0];
+	private int position;
+	private int limit;
+	private Schema writerSchema;
+	private String codecName;
+	private FilterExpression filterExpression;
+	private RecordFilter filter;
+
+	/**
+	 * @param schemas
+	 *            The cache of the embedded schemas
+	 */
+	public AvroBlockReader(EmbeddedSchemaCache schemas) {
+		this.schemas = schemas;
+	}
+
+	/**
+	 * Set the filter of the records. A record that does not match the filter
+	 * is skipped without decoding it and is returned as null by
+	 * {@link #next(GenericRecord)} and {@link DataBlockDecoder#next}. The
+	 * filter is compiled for the embedded schema of every message block.
+	 *
+	 * @param filterExpression
+	 *            The filter, or null to read all records
+	 */
+	public void setFilter(FilterExpression filterExpression) {
+		this.filterExpression = filterExpression;
+	}
+
+	/**
+	 * Start reading a message block
+	 *
+	 * @param data
+	 *            The array holding the message block, which must not change
+	 *            until all data blocks are decoded
+	 * @param offset
+	 *            The offset of the message block in the array
+	 * @param length
+	 *            The length of the message block
+	 * @throws IOException
+	 *             if the header of the message block is invalid
+	 */
+	public void open(byte[] data, int offset, int length) throws IOException {
+		open(ByteBuffer.wrap(data, offset, length));
+	}
+
+	/**
+	 * Start reading a message block
+	 *
+	 * @param message
+	 *            The buffer holding the message block between its position and
+	 *            its limit, which must not change until all data blocks are
+	 *            decoded. The position of the buffer is not changed.
+	 * @throws IOException
+	 *             if the header of the message block is invalid
+	 */
+	public void open(ByteBuffer message) throws IOException {
+		data = message;
+		position = message.position();
+		limit = message.limit();
+		blockDecoder.close();
+		if (limit - position < DataFileConstants.MAGIC.length)
+			throw new IOException("Not an Avro data file.", new EOFException());
+		for (int i = 0; i < DataFileConstants.MAGIC.length; i++) {
+			if (data.get(position++) != DataFileConstants.MAGIC[i])
+				throw new InvalidAvroMagicException("Not an Avro data file.");
+		}
+		codecName = DataFileConstants.NULL_CODEC;
+		int schemaOffset = -1;
+		int schemaLength = 0;
+		for (long l = readMapBlockCount(); l != 0; l = readMapBlockCount()) {
+			for (long i = 0; i < l; i++) {
+				int keyLength = readLength();
+				int keyOffset = skip(keyLength);
+				int valueLength = readLength();
+				int valueOffset = skip(valueLength);
+				if (equals(SCHEMA_KEY, keyOffset, keyLength)) {
+					schemaOffset = valueOffset;
+					schemaLength = valueLength;
+				} else if (equals(CODEC_KEY, keyOffset, keyLength)) {
+					codecName = new String(getBytes(valueOffset, valueLength), 0, valueLength, StandardCharsets.UTF_8);
+				}
+			}
+		}
+		int syncOffset = skip(DataFileConstants.SYNC_SIZE);
+		for (int i = 0; i < DataFileConstants.SYNC_SIZE; i++)
+			sync[i] = data.get(syncOffset + i);
+		if (schemaOffset < 0)
+			throw new IOException("No Avro schema in the header of the Avro message block");
+		if (data.hasArray())
+			writerSchema = schemas.getSchema(data.array(), data.arrayOffset() + schemaOffset, schemaLength);
+		else
+			writerSchema = schemas.getSchema(getBytes(schemaOffset, schemaLength), 0, schemaLength);
+		filter = (filterExpression != null) ? filterExpression.getFilter(writerSchema) : null;
+	}
+
+	/**
+	 * @return the embedded schema of the message block
+	 */
+	public Schema getSchema() {
+		return writerSchema;
+	}
+
+	/**
+	 * @return true if the message block has more records
+	 * @throws IOException
+	 *             if a data block is invalid
+	 */
+	public boolean hasNext() throws IOException {
+		while (!blockDecoder.hasNext()) {
+			DataBlock block = nextBlock();
+			if (block == null)
+				return false;
+			blockDecoder.open(block);
+		}
+		return true;
+	}
+
+	/**
+	 * Read the next record of the message block
+	 *
+	 * @param reuse
+	 *            The record to reuse, or null
+	 * @return the record, or null if the record does not match the filter
+	 * @throws IOException
+	 * @throws NoSuchElementException
+	 *             if the message block has no more records
+	 */
+	public GenericRecord next(GenericRecord reuse) throws IOException {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		return blockDecoder.next(reuse);
+	}
+
+	/**
+	 * Get the decoder of the next record of the message block without
+	 * decoding the record. The caller must read exactly one record with the
+	 * schema of {@link #getSchema()} from the decoder before the next call.
+	 * The records are not filtered.
+	 *
+	 * @return the decoder positioned at the next record
+	 * @throws IOException
+	 * @throws NoSuchElementException
+	 *             if the message block has no more records
+	 */
+	public BinaryDecoder nextDecoder() throws IOException {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		return blockDecoder.nextDecoder();
+	}
+
+	/**
+	 * Get the next data block without decoding it. The records of a data block
+	 * returned by this method are not returned by {@link #next(GenericRecord)}.
+	 *
+	 * @return the next data block, or null at the end of the message block
+	 * @throws IOException
+	 *             if the data block is invalid
+	 */
+	public DataBlock nextBlock() throws IOException {
+		if (position == limit)
+			return null;
+		long recordCount = readLong();
+		long blockSize = readLong();
+		if (blockSize > Integer.MAX_VALUE || blockSize < 0)
+			throw new IOException("Block size invalid or too large for this implementation: " + blockSize);
+		int blockOffset = skip((int) blockSize);
+		int syncOffset = skip(DataFileConstants.SYNC_SIZE);
+		for (int i = 0; i < DataFileConstants.SYNC_SIZE; i++) {
+			if (data.get(syncOffset + i) != sync[i])
+				throw new IOException("Invalid sync!");
+		}
+		ByteBuffer block = data.duplicate();
+		block.limit(blockOffset + (int) blockSize).position(blockOffset);
+		return new DataBlock(block.slice(), recordCount, codecName, writerSchema, schemas.getReaderSchema(), filter);
+	}
+
+	// Copy bytes of a header value out of the buffer into a reused array
+	private byte[] getBytes(int offset, int length) {
+		if (schemaBytes.length < length)
+			schemaBytes = new byte[length];
+		for (int i = 0; i < length; i++)
+			schemaBytes[i] = data.get(offset + i);
+		return schemaBytes;
+	}
+
+	// The number of entries of a map block, a negative count is followed by
+	// the size of the block in bytes
+	private long readMapBlockCount() throws IOException {
+		long count = readLong();
+		if (count < 0) {
+			readLong();
+			count = -count;
+		}
+		return count;
+	}
+
+	private int readLength() throws IOException {
+		long length = readLong();
+		if (length < 0 || length > limit - position)
+			throw new EOFException();
+		return (int) length;
+	}
+
+	// Skip bytes and return their offset
+	private int skip(int length) throws IOException {
+		if (length > limit - position)
+			throw new EOFException();
+		int offset = position;
+		position += length;
+		return offset;
+	}
+
+	// Read a zig-zag encoded variable length long
+	private long readLong() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			if (position == limit)
+				throw new EOFException();
+			int b = data.get(position++) & 0xFF;
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return (value >>> 1) ^ -(value & 1);
+		}
+		throw new IOException("Invalid long encoding");
+	}
+
+	private boolean equals(byte[] key, int offset, int length) {
+		if (key.length != length)
+			return false;
+		for (int i = 0; i < length; i++) {
+			if (key[i] != data.get(offset + i))
+				return false;
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,62 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.io;
+
+import com.ibm.streamsx.avro.Messages;
+
+/**
+ * The records of an Avro message block that are converted into one output
+ * tuple
+ */
+public enum BatchOutput {
+
+	/** A tuple for every record */
+	RECORD("record"),
+	/** A tuple for every data block of the message block */
+	DATA_BLOCK("dataBlock"),
+	/** A tuple for the whole message block */
+	BLOB("blob");
+
+	private final String parameterValue;
+
+	private BatchOutput(String parameterValue) {
+		this.parameterValue = parameterValue;
+	}
+
+	/**
+	 * @return the name of the batch in operator parameters
+	 */
+	public String getParameterValue() {
+		return parameterValue;
+	}
+
+	/**
+	 * Get the batch for the value of an operator parameter
+	 *
+	 * @param parameterName
+	 *            The name of the parameter
+	 * @param parameterValue
+	 *            The name of the batch
+	 * @return the batch output
+	 * @throws IllegalArgumentException
+	 *             if the batch is not supported
+	 */
+	public static BatchOutput fromParameter(String parameterName, String parameterValue) {
+		StringBuilder validValues = new StringBuilder();
+		for (BatchOutput batch : values()) {
+			if (batch.parameterValue.equals(parameterValue))
+				return batch;
+			if (validValues.length() > 0)
+				validValues.append(", ");
+			validValues.append(batch.parameterValue);
+		}
+		throw new IllegalArgumentException(Messages.getString("AVRO_INVALID_PARAMETER_VALUE", parameterName,
+				parameterValue, validValues));
+	}
+
+}
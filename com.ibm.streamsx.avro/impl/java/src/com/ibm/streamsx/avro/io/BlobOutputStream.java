@@ -0,0 +1,110 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.io;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import com.ibm.streams.operator.types.Blob;
+import com.ibm.streams.operator.types.ValueFactory;
+
+/**
+ * Byte array output stream which hands its buffer over to a blob without
+ * copying the written bytes.
+ *
+ * The blob references the buffer, so the stream continues with a new buffer
+ * which is sized for the last content. As long as the content size stays about
+ * the same, this is one allocation per blob and the buffer never grows.
+ * Several blobs can be created from parts of the content, then the stream
+ * continues with a new buffer when it is reset. The stream is not thread safe.
+ */
+public class BlobOutputStream extends ByteArrayOutputStream {
+
+	private static final int MIN_BUFFER_SIZE = 64;
+
+	// Blobs reference the buffer
+	private boolean shared = false;
+
+	public BlobOutputStream() {
+		super(MIN_BUFFER_SIZE);
+	}
+
+	/**
+	 * Returns a view of the bytes written since the last reset. The view is
+	 * only valid until the stream is written to or reset.
+	 *
+	 * @return the byte buffer wrapping the written bytes
+	 */
+	public ByteBuffer toByteBuffer() {
+		return ByteBuffer.wrap(buf, 0, count);
+	}
+
+	/**
+	 * Returns a view of a part of the written bytes. The view is only valid
+	 * until the stream is written to or reset.
+	 *
+	 * @param offset
+	 *            The offset of the part
+	 * @param length
+	 *            The length of the part
+	 * @return the byte buffer wrapping the part
+	 */
+	public ByteBuffer toByteBuffer(int offset, int length) {
+		return ByteBuffer.wrap(buf, offset, length);
+	}
+
+	/**
+	 * Creates a blob from a part of the written bytes. The stream continues
+	 * with a new buffer when it is reset.
+	 *
+	 * @param offset
+	 *            The offset of the part
+	 * @param length
+	 *            The length of the part
+	 * @return the blob referencing the part
+	 */
+	public Blob toBlob(int offset, int length) {
+		shared = true;
+		return ValueFactory.newBlob(buf, offset, length);
+	}
+
+	/**
+	 * Discards the bytes written after a size
+	 *
+	 * @param size
+	 *            The number of written bytes which are kept
+	 */
+	public void truncate(int size) {
+		if (size < count)
+			count = size;
+	}
+
+	@Override
+	public synchronized void reset() {
+		if (shared) {
+			buf = new byte[Math.max(count, MIN_BUFFER_SIZE)];
+			shared = false;
+		}
+		count = 0;
+	}
+
+	/**
+	 * Creates a blob from the bytes written since the last reset and resets
+	 * the stream.
+	 *
+	 * @return the blob referencing the written bytes
+	 */
+	public Blob toBlob() {
+		Blob blob = ValueFactory.newBlob(buf, 0, count);
+		buf = new byte[Math.max(count, MIN_BUFFER_SIZE)];
+		count = 0;
+		shared = false;
+		return blob;
+	}
+
+}
@@ -0,0 +1,262 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.file.BZip2Codec;
+import org.apache.avro.file.Codec;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.file.DeflateCodec;
+import org.apache.avro.file.XZCodec;
+import org.apache.avro.file.ZstandardCodec;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+import org.xerial.snappy.Snappy;
+
+import com.ibm.streamsx.avro.io.AvroBlockReader.DataBlock;
+import com.ibm.streamsx.avro.schema.EmbeddedSchemaCache;
+
+/**
+ * Decompresses and decodes the records of a data block of an Avro message
+ * block. The decoder and the codecs are reused for all data blocks. A data
+ * block of a buffer without accessible array, like the read-only view of a
+ * blob, is copied into a reused array. A decoder is not thread safe, but the
+ * data blocks of a message block can be decoded by several decoders on
+ * different threads. Every decoder has its own datum reader per writer
+ * schema, because a datum reader caches state while it reads.
+ */
+public class DataBlockDecoder {
+
+	private final HashMap<String, Codec> codecs = new HashMap<String, Codec>();
+	private final IdentityHashMap<Schema, GenericDatumReader<GenericRecord>> readers = new IdentityHashMap<Schema, GenericDatumReader<GenericRecord>>();
+	private BinaryDecoder decoder;
+	private BinaryDecoder recordDecoder;
+	private RecordFilter filter;
+	private final RecordFilter.Input filterInput = new RecordFilter.Input();
+	private byte[] filterData;
+	private byte[] blockBytes = new byte[0];
+	private GenericDatumReader<GenericRecord> reader;
+	private long blockRemaining;
+
+	/**
+	 * Start decoding a data block
+	 *
+	 * @param block
+	 *            The data block
+	 * @throws IOException
+	 *             if the data block cannot be decompressed
+	 */
+	public void open(DataBlock block) throws IOException {
+		Codec codec = getCodec(block.codecName);
+		byte[] data;
+		int offset;
+		int length = block.data.remaining();
+		if (block.data.hasArray()) {
+			data = block.data.array();
+			offset = block.data.arrayOffset() + block.data.position();
+		} else {
+			if (blockBytes.length < length)
+				blockBytes = new byte[length];
+			block.data.duplicate().get(blockBytes, 0, length);
+			data = blockBytes;
+			offset = 0;
+		}
+		if (codec != null) {
+			// The codecs expect the data at position 0, the bzip2 codec fails
+			// otherwise
+			ByteBuffer uncompressed = codec.decompress(ByteBuffer.wrap(data, offset, length).slice());
+			data = uncompressed.array();
+			offset = uncompressed.arrayOffset() + uncompressed.position();
+			length = uncompressed.remaining();
+		}
+		decoder = DecoderFactory.get().binaryDecoder(data, offset, length, decoder);
+		// A filtered data block is scanned by the filter, and only the
+		// matching records are decoded
+		filter = block.filter;
+		if (filter != null) {
+			filterInput.reset(data, offset, length);
+			filterData = data;
+		}
+		reader = getReader(block.writerSchema, block.readerSchema);
+		blockRemaining = block.recordCount;
+	}
+
+	/**
+	 * Stop decoding the current data block
+	 */
+	public void close() {
+		blockRemaining = 0;
+	}
+
+	/**
+	 * @return true if the data block has more records
+	 */
+	public boolean hasNext() {
+		return blockRemaining > 0;
+	}
+
+	/**
+	 * Read the next record of the data block
+	 *
+	 * @param reuse
+	 *            The record to reuse, or null
+	 * @return the record, or null if the record does not match the filter of
+	 *         the data block
+	 * @throws IOException
+	 * @throws NoSuchElementException
+	 *             if the data block has no more records
+	 */
+	public GenericRecord next(GenericRecord reuse) throws IOException {
+		if (blockRemaining == 0)
+			throw new NoSuchElementException();
+		blockRemaining--;
+		if (filter == null)
+			return reader.read(reuse, decoder);
+		int start = filterInput.getPosition();
+		if (!filter.matches(filterInput))
+			return null;
+		recordDecoder = DecoderFactory.get().binaryDecoder(filterData, start, filterInput.getPosition() - start,
+				recordDecoder);
+		return reader.read(reuse, recordDecoder);
+	}
+
+	/**
+	 * Get the decoder of the next record of the data block without decoding
+	 * the record. The caller must read exactly one record with the writer
+	 * schema of the data block from the decoder. The records are not
+	 * filtered.
+	 *
+	 * @return the decoder positioned at the next record
+	 * @throws NoSuchElementException
+	 *             if the data block has no more records
+	 */
+	public BinaryDecoder nextDecoder() {
+		if (blockRemaining == 0)
+			throw new NoSuchElementException();
+		blockRemaining--;
+		return decoder;
+	}
+
+	// Get the datum reader of a writer schema. The schema cache returns the
+	// same schema instance for the same schema, a new instance after the
+	// cache was cleared, so the readers are limited like the schemas.
+	private GenericDatumReader<GenericRecord> getReader(Schema writerSchema, Schema readerSchema) {
+		Schema expected = (readerSchema != null) ? readerSchema : writerSchema;
+		GenericDatumReader<GenericRecord> datumReader = readers.get(writerSchema);
+		if (datumReader == null || datumReader.getExpected() != expected) {
+			datumReader = new GenericDatumReader<GenericRecord>(writerSchema, expected);
+			if (readers.size() >= EmbeddedSchemaCache.MAX_SCHEMAS)
+				readers.clear();
+			readers.put(writerSchema, datumReader);
+		}
+		return datumReader;
+	}
+
+	// Get the codec for the decompression of the data blocks, or null if they
+	// are not compressed
+	private Codec getCodec(String codecName) {
+		if (DataFileConstants.NULL_CODEC.equals(codecName))
+			return null;
+		Codec codec = codecs.get(codecName);
+		if (codec == null) {
+			codec = createCodec(codecName);
+			codecs.put(codecName, codec);
+		}
+		return codec;
+	}
+
+	/**
+	 * Create a codec which decompresses data blocks. The compression level does
+	 * not matter for the decompression.
+	 *
+	 * @param codecName
+	 *            The name of the codec in the header
+	 * @return the codec
+	 * @throws AvroRuntimeException
+	 *             if the codec is not supported
+	 */
+	private static Codec createCodec(String codecName) {
+		switch (codecName) {
+		case DataFileConstants.DEFLATE_CODEC:
+			return new DeflateCodec(CodecFactory.DEFAULT_DEFLATE_LEVEL);
+		case DataFileConstants.SNAPPY_CODEC:
+			return new SnappyBlockCodec();
+		case DataFileConstants.BZIP2_CODEC:
+			return new BZip2Codec();
+		case DataFileConstants.XZ_CODEC:
+			return new XZCodec(CodecFactory.DEFAULT_XZ_LEVEL);
+		case DataFileConstants.ZSTANDARD_CODEC:
+			return new ZstandardCodec(CodecFactory.DEFAULT_ZSTANDARD_LEVEL, false);
+		default:
+			throw new AvroRuntimeException("Unrecognized codec: " + codecName);
+		}
+	}
+
+	/*
+	 * The Avro snappy codec, whose constructor is not public: the snappy
+	 * compressed data followed by the CRC32 of the uncompressed data.
+	 */
+	private static class SnappyBlockCodec extends Codec {
+
+		private final CRC32 crc32 = new CRC32();
+
+		@Override
+		public String getName() {
+			return DataFileConstants.SNAPPY_CODEC;
+		}
+
+		@Override
+		public ByteBuffer compress(ByteBuffer uncompressedData) throws IOException {
+			int offset = uncompressedData.arrayOffset() + uncompressedData.position();
+			int length = uncompressedData.remaining();
+			byte[] compressed = new byte[Snappy.maxCompressedLength(length) + 4];
+			int size = Snappy.compress(uncompressedData.array(), offset, length, compressed, 0);
+			crc32.reset();
+			crc32.update(uncompressedData.array(), offset, length);
+			ByteBuffer out = ByteBuffer.wrap(compressed, 0, size + 4);
+			out.putInt(size, (int) crc32.getValue());
+			return out;
+		}
+
+		@Override
+		public ByteBuffer decompress(ByteBuffer compressedData) throws IOException {
+			int offset = compressedData.arrayOffset() + compressedData.position();
+			int length = compressedData.remaining() - 4;
+			byte[] uncompressed = new byte[Snappy.uncompressedLength(compressedData.array(), offset, length)];
+			int size = Snappy.uncompress(compressedData.array(), offset, length, uncompressed, 0);
+			crc32.reset();
+			crc32.update(uncompressed, 0, size);
+			if (compressedData.getInt(compressedData.limit() - 4) != (int) crc32.getValue())
+				throw new IOException("Checksum failure");
+			return ByteBuffer.wrap(uncompressed, 0, size);
+		}
+
+		@Override
+		public int hashCode() {
+			return getName().hashCode();
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other != null && other.getClass() == getClass();
+		}
+
+	}
+
+}
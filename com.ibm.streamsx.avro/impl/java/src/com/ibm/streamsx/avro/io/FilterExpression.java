@@ -0,0 +1,279 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.apache.avro.Schema;
+
+import com.ibm.streamsx.avro.Messages;
+
+/**
+ * A filter of Avro records: one or more comparisons of a field with a
+ * literal, which are combined with {@code &&}. A field is given by its path of
+ * field names separated by dots, for example
+ * {@code location.country == "DK" && retweets > 10}.
+ *
+ * The comparison operators are {@code ==}, {@code !=}, {@code <}, {@code <=},
+ * {@code >} and {@code >=}. A literal is a number, a string in single or
+ * double quotes, {@code true}, {@code false} or {@code null}. A null value is
+ * only equal to the literal {@code null}, and is neither less nor greater than
+ * any literal.
+ *
+ * The expression is parsed once. It is compiled to a {@link RecordFilter}
+ * for every writer schema, which is cached. The cache is not thread safe, but
+ * the record filters are.
+ */
+public class FilterExpression {
+
+	/** The number of writer schemas whose record filters are kept */
+	public static final int MAX_SCHEMAS = 64;
+
+	/*
+	 * The comparison operators
+	 */
+	enum Operator {
+		EQ("=="), NE("!="), LT("<"), LE("<="), GT(">"), GE(">=");
+
+		final String symbol;
+
+		private Operator(String symbol) {
+			this.symbol = symbol;
+		}
+
+		/*
+		 * Check the result of comparing the value with the literal
+		 */
+		boolean test(int comparison) {
+			switch (this) {
+			case EQ:
+				return comparison == 0;
+			case NE:
+				return comparison != 0;
+			case LT:
+				return comparison < 0;
+			case LE:
+				return comparison <= 0;
+			case GT:
+				return comparison > 0;
+			default:
+				return comparison >= 0;
+			}
+		}
+	}
+
+	/*
+	 * A comparison of the field at a path with a literal. The literal is a
+	 * Double, Long, String, Boolean or null.
+	 */
+	static class Comparison {
+		final String[] path;
+		final Operator operator;
+		final Object literal;
+
+		Comparison(String[] path, Operator operator, Object literal) {
+			this.path = path;
+			this.operator = operator;
+			this.literal = literal;
+		}
+
+		String getPath() {
+			StringBuilder text = new StringBuilder();
+			for (String name : path) {
+				if (text.length() > 0)
+					text.append('.');
+				text.append(name);
+			}
+			return text.toString();
+		}
+	}
+
+	private final String expression;
+	private final List<Comparison> comparisons;
+	private final IdentityHashMap<Schema, RecordFilter> filters = new IdentityHashMap<Schema, RecordFilter>();
+
+	private FilterExpression(String expression, List<Comparison> comparisons) {
+		this.expression = expression;
+		this.comparisons = comparisons;
+	}
+
+	/**
+	 * Parse a filter expression
+	 *
+	 * @param expression
+	 *            The text of the expression
+	 * @return the filter expression
+	 * @throws IllegalArgumentException
+	 *             if the expression is not valid
+	 */
+	public static FilterExpression parse(String expression) {
+		return new FilterExpression(expression, new Parser(expression).parse());
+	}
+
+	/**
+	 * Get the filter of the records of a writer schema. The filter is compiled
+	 * once per writer schema.
+	 *
+	 * @param writerSchema
+	 *            The schema the records are written with
+	 * @return the record filter
+	 * @throws IllegalArgumentException
+	 *             if a field of the expression is not in the schema or cannot
+	 *             be compared with its literal
+	 */
+	public RecordFilter getFilter(Schema writerSchema) {
+		RecordFilter filter = filters.get(writerSchema);
+		if (filter == null) {
+			filter = new RecordFilter(this, writerSchema);
+			if (filters.size() >= MAX_SCHEMAS)
+				filters.clear();
+			filters.put(writerSchema, filter);
+		}
+		return filter;
+	}
+
+	List<Comparison> getComparisons() {
+		return comparisons;
+	}
+
+	@Override
+	public String toString() {
+		return expression;
+	}
+
+	/*
+	 * Recursive descent parser of the expression
+	 */
+	private static class Parser {
+
+		private final String text;
+		private int position;
+
+		Parser(String text) {
+			this.text = text;
+		}
+
+		List<Comparison> parse() {
+			List<Comparison> comparisons = new ArrayList<Comparison>();
+			comparisons.add(parseComparison());
+			skipWhitespace();
+			while (position < text.length()) {
+				if (!text.startsWith("&&", position))
+					throw error("'&&' expected at position " + position);
+				position += 2;
+				comparisons.add(parseComparison());
+				skipWhitespace();
+			}
+			return Collections.unmodifiableList(comparisons);
+		}
+
+		private Comparison parseComparison() {
+			List<String> path = new ArrayList<String>();
+			path.add(parseName());
+			skipWhitespace();
+			while (position < text.length() && text.charAt(position) == '.') {
+				position++;
+				path.add(parseName());
+				skipWhitespace();
+			}
+			Operator operator = parseOperator();
+			Object literal = parseLiteral();
+			return new Comparison(path.toArray(new String[path.size()]), operator, literal);
+		}
+
+		// Avro names start with a letter or underscore followed by letters,
+		// digits or underscores
+		private String parseName() {
+			skipWhitespace();
+			int start = position;
+			while (position < text.length() && (Character.isLetterOrDigit(text.charAt(position))
+					|| text.charAt(position) == '_') && (position > start || !Character.isDigit(text.charAt(position))))
+				position++;
+			if (position == start)
+				throw error("Field name expected at position " + position);
+			return text.substring(start, position);
+		}
+
+		private Operator parseOperator() {
+			skipWhitespace();
+			// The two character operators first, so that <= is not read as <
+			Operator match = null;
+			for (Operator operator : Operator.values()) {
+				if (text.startsWith(operator.symbol, position)
+						&& (match == null || operator.symbol.length() > match.symbol.length()))
+					match = operator;
+			}
+			if (match == null)
+				throw error("Comparison operator expected at position " + position);
+			position += match.symbol.length();
+			return match;
+		}
+
+		private Object parseLiteral() {
+			skipWhitespace();
+			if (position == text.length())
+				throw error("Literal expected at position " + position);
+			char c = text.charAt(position);
+			if (c == '"' || c == '\'')
+				return parseString(c);
+			int start = position;
+			while (position < text.length() && (Character.isLetterOrDigit(text.charAt(position))
+					|| "+-._".indexOf(text.charAt(position)) >= 0))
+				position++;
+			String token = text.substring(start, position);
+			switch (token) {
+			case "true":
+				return Boolean.TRUE;
+			case "false":
+				return Boolean.FALSE;
+			case "null":
+				return null;
+			default:
+				try {
+					return Long.valueOf(token);
+				} catch (NumberFormatException e) {
+					try {
+						return Double.valueOf(token);
+					} catch (NumberFormatException e2) {
+						throw error("Literal expected at position " + start);
+					}
+				}
+			}
+		}
+
+		private String parseString(char quote) {
+			int start = position++;
+			StringBuilder string = new StringBuilder();
+			while (position < text.length()) {
+				char c = text.charAt(position++);
+				if (c == quote)
+					return string.toString();
+				if (c == '\\') {
+					if (position == text.length())
+						break;
+					c = text.charAt(position++);
+				}
+				string.append(c);
+			}
+			throw error("Unterminated string at position " + start);
+		}
+
+		private void skipWhitespace() {
+			while (position < text.length() && Character.isWhitespace(text.charAt(position)))
+				position++;
+		}
+
+		private IllegalArgumentException error(String reason) {
+			return new IllegalArgumentException(Messages.getString("AVRO_INVALID_FILTER", text, reason));
+		}
+	}
+
+}
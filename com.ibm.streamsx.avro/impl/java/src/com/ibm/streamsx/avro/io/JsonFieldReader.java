@@ -0,0 +1,107 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Reads the value of a top-level field of a JSON object, for example the
+ * discriminator which selects the Avro schema of the JSON text. The JSON text
+ * is only parsed up to the field, nested values before the field are skipped
+ * and nothing is decoded or built.
+ *
+ * Like the {@link JsonTranscoder}, the reader parses a String or UTF-8 bytes,
+ * and copies a buffer without accessible array into a reused array. The reader
+ * is not thread safe.
+ */
+public class JsonFieldReader {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private final String fieldName;
+	private byte[] jsonBytes = new byte[0];
+
+	/**
+	 * @param fieldName
+	 *            The name of the top-level field
+	 */
+	public JsonFieldReader(String fieldName) {
+		this.fieldName = fieldName;
+	}
+
+	/**
+	 * Read the field of JSON text
+	 *
+	 * @param json
+	 *            The JSON text
+	 * @return the text of the field value, or null if the JSON text is not an
+	 *         object, the field is not found or its value is null, an object or
+	 *         an array
+	 * @throws IOException
+	 *             if the JSON text before the field is invalid
+	 */
+	public String read(String json) throws IOException {
+		try (JsonParser in = JSON_FACTORY.createParser(json)) {
+			return read(in);
+		}
+	}
+
+	/**
+	 * Read the field of UTF-8 encoded JSON text
+	 *
+	 * @param json
+	 *            The UTF-8 bytes of the JSON text between the position and the
+	 *            limit of the buffer. The position is not changed.
+	 * @return the text of the field value, or null if the JSON text is not an
+	 *         object, the field is not found or its value is null, an object or
+	 *         an array
+	 * @throws IOException
+	 *             if the JSON text before the field is invalid
+	 */
+	public String read(ByteBuffer json) throws IOException {
+		int length = json.remaining();
+		JsonParser in;
+		if (json.hasArray()) {
+			in = JSON_FACTORY.createParser(json.array(), json.arrayOffset() + json.position(), length);
+		} else {
+			if (jsonBytes.length < length)
+				jsonBytes = new byte[length];
+			json.duplicate().get(jsonBytes, 0, length);
+			in = JSON_FACTORY.createParser(jsonBytes, 0, length);
+		}
+		try {
+			return read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	private String read(JsonParser in) throws IOException {
+		if (in.nextToken() != JsonToken.START_OBJECT)
+			return null;
+		while (in.nextToken() == JsonToken.FIELD_NAME) {
+			boolean found = fieldName.equals(in.getCurrentName());
+			JsonToken value = in.nextToken();
+			if (found)
+				return (value != null && value.isScalarValue() && value != JsonToken.VALUE_NULL) ? in.getText() : null;
+			in.skipChildren();
+		}
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return fieldName;
+	}
+
+}
@@ -0,0 +1,68 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.io;
+
+import com.ibm.streamsx.avro.Messages;
+
+/**
+ * The formats of the JSON text of an Avro record
+ */
+public enum JsonFormat {
+
+	/**
+	 * The format of {@link org.apache.avro.generic.GenericData#toString(Object)}:
+	 * a space after every separator, union values without their branch, bytes
+	 * and strings escaped like {@code GenericData} does and fixed values as
+	 * list of signed bytes
+	 */
+	TO_STRING("toString"),
+	/**
+	 * The Avro JSON encoding of {@link org.apache.avro.io.JsonEncoder}: no
+	 * spaces, non-null union values wrapped in an object with the name of the
+	 * branch and bytes and fixed values as strings of ISO-8859-1 characters
+	 */
+	AVRO_JSON("avroJson");
+
+	private final String parameterValue;
+
+	private JsonFormat(String parameterValue) {
+		this.parameterValue = parameterValue;
+	}
+
+	/**
+	 * @return the name of the format in operator parameters
+	 */
+	public String getParameterValue() {
+		return parameterValue;
+	}
+
+	/**
+	 * Get the format for the value of an operator parameter
+	 *
+	 * @param parameterName
+	 *            The name of the parameter
+	 * @param parameterValue
+	 *            The name of the format
+	 * @return the JSON format
+	 * @throws IllegalArgumentException
+	 *             if the format is not supported
+	 */
+	public static JsonFormat fromParameter(String parameterName, String parameterValue) {
+		StringBuilder validValues = new StringBuilder();
+		for (JsonFormat format : values()) {
+			if (format.parameterValue.equals(parameterValue))
+				return format;
+			if (validValues.length() > 0)
+				validValues.append(", ");
+			validValues.append(format.parameterValue);
+		}
+		throw new IllegalArgumentException(Messages.getString("AVRO_INVALID_PARAMETER_VALUE", parameterName,
+				parameterValue, validValues));
+	}
+
+}
@@ -0,0 +1,568 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.exc.InputCoercionException;
+import com.ibm.streamsx.avro.io.TranscodeException.Reason;
+
+/**
+ * Transcodes JSON text in the Avro JSON encoding directly into the binary Avro
+ * encoding. This is the counterpart of {@link JsonWriter} with format
+ * {@link JsonFormat#AVRO_JSON}, and it accepts the same JSON text as
+ * {@link org.apache.avro.io.JsonDecoder}.
+ *
+ * The transcoder is compiled once from the schema: every node of the schema
+ * becomes a node which reads the JSON tokens of a value and writes its binary
+ * encoding. No record is built and no JSON grammar is generated per message.
+ * The fields of a record can be in any order. A field that comes before a
+ * preceding field of the schema is transcoded into a scratch buffer and copied
+ * to the output when the preceding fields are written. Like the JSON decoder,
+ * the transcoder skips fields that are not in the schema and repeated fields.
+ * The items of arrays and maps are transcoded into a scratch buffer too,
+ * because the binary encoding starts with the number of items. The scratch
+ * buffers are reused.
+ *
+ * The JSON text is read from a String or from its UTF-8 bytes. The bytes are
+ * parsed directly, so they are not decoded into a String first. A buffer
+ * without accessible array, like the read-only view of a blob, is copied into
+ * a reused array. The transcoder is not thread safe.
+ *
+ * JSON text which does not match the schema is rejected with a
+ * {@link TranscodeException}, which tells the reason without filling in a
+ * stack trace. Invalid JSON is rejected by the JSON parser.
+ */
+public class JsonTranscoder {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	/*
+	 * Transcodes a value. The parser is positioned at the first token of the
+	 * value and is left at its last token.
+	 */
+	private static abstract class Node {
+		abstract void transcode(JsonParser in, Encoder out, JsonTranscoder t) throws IOException;
+	}
+
+	/*
+	 * A scratch buffer for the items of an array or map, or for the fields of
+	 * a record which are out of order
+	 */
+	private static class Scratch extends ByteArrayOutputStream {
+		final BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(this, null);
+		int[] offsets = new int[0];
+		int[] lengths = new int[0];
+
+		byte[] buffer() {
+			return buf;
+		}
+	}
+
+	private final Node root;
+	private final List<Scratch> scratches = new ArrayList<Scratch>();
+	private int depth;
+	private byte[] utf8 = new byte[256];
+	private byte[] jsonBytes = new byte[0];
+
+	/**
+	 * @param schema
+	 *            The schema of the JSON text and of the binary encoding
+	 */
+	public JsonTranscoder(Schema schema) {
+		root = compile(schema, new IdentityHashMap<Schema, RecordNode>());
+	}
+
+	/**
+	 * Transcode JSON text into its binary Avro encoding. If the JSON text is
+	 * invalid, a part of the binary encoding can have been written.
+	 *
+	 * @param json
+	 *            The JSON text
+	 * @param out
+	 *            The encoder of the binary encoding
+	 * @throws IOException
+	 *             if the JSON text is invalid
+	 * @throws TranscodeException
+	 *             if the JSON text does not match the schema
+	 */
+	public void transcode(String json, Encoder out) throws IOException {
+		try (JsonParser in = JSON_FACTORY.createParser(json)) {
+			transcode(in, out);
+		}
+	}
+
+	/**
+	 * Transcode UTF-8 encoded JSON text into its binary Avro encoding. If the
+	 * JSON text is invalid, a part of the binary encoding can have been
+	 * written.
+	 *
+	 * @param json
+	 *            The UTF-8 bytes of the JSON text between the position and the
+	 *            limit of the buffer. The position is not changed.
+	 * @param out
+	 *            The encoder of the binary encoding
+	 * @throws IOException
+	 *             if the JSON text is invalid
+	 * @throws TranscodeException
+	 *             if the JSON text does not match the schema
+	 */
+	public void transcode(ByteBuffer json, Encoder out) throws IOException {
+		int length = json.remaining();
+		JsonParser in;
+		if (json.hasArray()) {
+			in = JSON_FACTORY.createParser(json.array(), json.arrayOffset() + json.position(), length);
+		} else {
+			if (jsonBytes.length < length)
+				jsonBytes = new byte[length];
+			json.duplicate().get(jsonBytes, 0, length);
+			in = JSON_FACTORY.createParser(jsonBytes, 0, length);
+		}
+		try {
+			transcode(in, out);
+		} finally {
+			in.close();
+		}
+	}
+
+	private void transcode(JsonParser in, Encoder out) throws IOException {
+		depth = 0;
+		if (in.nextToken() == null)
+			throw new TranscodeException(Reason.INVALID_JSON, "JSON value", "end of input");
+		root.transcode(in, out, this);
+		// Like the JSON decoder, read the token after the value, which fails
+		// on invalid JSON text
+		in.nextToken();
+	}
+
+	// Get a reset scratch buffer for the next nesting level
+	private Scratch push() {
+		if (depth == scratches.size())
+			scratches.add(new Scratch());
+		Scratch scratch = scratches.get(depth++);
+		scratch.reset();
+		return scratch;
+	}
+
+	private void pop() {
+		depth--;
+	}
+
+	private static TranscodeException error(String type, JsonParser in) {
+		return new TranscodeException(Reason.TYPE_MISMATCH, type, in.currentToken());
+	}
+
+	// The parser fails if an integer does not fit into the type of the schema
+	private static TranscodeException outOfRange(String type, JsonParser in) throws IOException {
+		return new TranscodeException(Reason.OUT_OF_RANGE, type, in.getText());
+	}
+
+	/*
+	 * Build the nodes of a schema (recursively). A recursive record refers to
+	 * the node of the enclosing record.
+	 */
+	private static Node compile(Schema schema, IdentityHashMap<Schema, RecordNode> records) {
+		switch (schema.getType()) {
+		case NULL:
+			return new NullNode();
+		case BOOLEAN:
+			return new BooleanNode();
+		case INT:
+			return new IntNode();
+		case LONG:
+			return new LongNode();
+		case FLOAT:
+			return new FloatNode();
+		case DOUBLE:
+			return new DoubleNode();
+		case STRING:
+			return new StringNode();
+		case BYTES:
+			return new BytesNode(-1);
+		case FIXED:
+			return new BytesNode(schema.getFixedSize());
+		case ENUM:
+			return new EnumNode(schema);
+		case ARRAY:
+			return new ArrayNode(compile(schema.getElementType(), records));
+		case MAP:
+			return new MapNode(compile(schema.getValueType(), records));
+		case UNION:
+			List<Schema> types = schema.getTypes();
+			Node[] branches = new Node[types.size()];
+			HashMap<String, Integer> indexes = new HashMap<String, Integer>();
+			for (int i = 0; i < branches.length; i++) {
+				branches[i] = compile(types.get(i), records);
+				indexes.put(types.get(i).getFullName(), i);
+			}
+			Integer nullIndex = schema.getIndexNamed(Schema.Type.NULL.getName());
+			return new UnionNode(branches, indexes, (nullIndex != null) ? nullIndex : -1);
+		default:
+			RecordNode record = records.get(schema);
+			if (record == null) {
+				record = new RecordNode(schema);
+				records.put(schema, record);
+				for (Field field : schema.getFields())
+					record.fields[field.pos()] = compile(field.schema(), records);
+			}
+			return record;
+		}
+	}
+
+	private static class NullNode extends Node {
+		@Override
+		void transcode(JsonParser in, Encoder out, JsonTranscoder t) throws IOException {
+			if (in.currentToken() != JsonToken.VALUE_NULL)
+				throw error("null", in);
+			out.writeNull();
+		}
+	}
+
+	private static class BooleanNode extends Node {
+		@Override
+		void transcode(JsonParser in, Encoder out, JsonTranscoder t) throws IOException {
+			JsonToken token = in.currentToken();
+			if (token != JsonToken.VALUE_TRUE && token != JsonToken.VALUE_FALSE)
+				throw error("boolean", in);
+			out.writeBoolean(token == JsonToken.VALUE_TRUE);
+		}
+	}
+
+	private static class IntNode extends Node {
+		@Override
+		void transcode(JsonParser in, Encoder out, JsonTranscoder t) throws IOException {
+			if (!in.currentToken().isNumeric())
+				throw error("int", in);
+			int value;
+			try {
+				value = in.getIntValue();
+			} catch (InputCoercionException e) {
+				throw outOfRange("int", in);
+			}
+			out.writeInt(value);
+		}
+	}
+
+	private static class LongNode extends Node {
+		@Override
+		void transcode(JsonParser in, Encoder out, JsonTranscoder t) throws IOException {
+			if (!in.currentToken().isNumeric())
+				throw error("long", in);
+			long value;
+			try {
+				value = in.getLongValue();
+			} catch (InputCoercionException e) {
+				throw outOfRange("long", in);
+			}
+			out.writeLong(value);
+		}
+	}
+
+	private static class FloatNode extends Node {
+		@Override
+		void transcode(JsonParser in, Encoder out, JsonTranscoder t) throws IOException {
+			if (!in.currentToken().isNumeric())
+				throw error("float", in);
+			out.writeFloat(in.getFloatValue());
+		}
+	}
+
+	private static class DoubleNode extends Node {
+		@Override
+		void transcode(JsonParser in, Encoder out, JsonTranscoder t) throws IOException {
+			if (!in.currentToken().isNumeric())
+				throw error("double", in);
+			out.writeDouble(in.getDoubleValue());
+		}
+	}
+
+	/*
+	 * A string is encoded from the characters of the parser into a reused
+	 * UTF-8 buffer, an unpaired surrogate is encoded as '?' like
+	 * String.getBytes does
+	 */
+	private static class StringNode extends Node {
+		@Override
+		void transcode(JsonParser in, Encoder out, JsonTranscoder t) throws IOException {
+			if (in.currentToken() != JsonToken.VALUE_STRING)
+				throw error("string", in);
+			char[] chars = in.getTextCharacters();
+			int offset = in.getTextOffset();
+			int end = offset + in.getTextLength();
+			if (t.utf8.length < 3 * (end - offset))
+				t.utf8 = new byte[3 * (end - offset)];
+			byte[] utf8 = t.utf8;
+			int length = 0;
+			for (int i = offset; i < end; i++) {
+				char c = chars[i];
+				if (c < 0x80) {
+					utf8[length++] = (byte) c;
+				} else if (c < 0x800) {
+					utf8[length++] = (byte) (0xC0 | (c >> 6));
+					utf8[length++] = (byte) (0x80 | (c & 0x3F));
+				} else if (Character.isSurrogate(c)) {
+					if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(chars[i + 1])) {
+						int codePoint = Character.toCodePoint(c, chars[++i]);
+						utf8[length++] = (byte) (0xF0 | (codePoint >> 18));
+						utf8[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+						utf8[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+						utf8[length++] = (byte) (0x80 | (codePoint & 0x3F));
+					} else {
+						utf8[length++] = '?';
+					}
+				} else {
+					utf8[length++] = (byte) (0xE0 | (c >> 12));
+					utf8[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+					utf8[length++] = (byte) (0x80 | (c & 0x3F));
+				}
+			}
+			out.writeBytes(utf8, 0, length);
+		}
+	}
+
+	/*
+	 * Bytes and fixed values are strings of ISO-8859-1 characters, a fixed
+	 * value has a size
+	 */
+	private static class BytesNode extends Node {
+		private final int fixedSize;
+
+		BytesNode(int fixedSize) {
+			this.fixedSize = fixedSize;
+		}
+
+		@Override
+		void transcode(JsonParser in, Encoder out, JsonTranscoder t) throws IOException {
+			if (in.currentToken() != JsonToken.VALUE_STRING)
+				throw error(fixedSize < 0 ? "bytes" : "fixed", in);
+			char[] chars = in.getTextCharacters();
+			int offset = in.getTextOffset();
+			int length = in.getTextLength();
+			if (fixedSize >= 0 && length != fixedSize)
+				throw new TranscodeException(Reason.WRONG_SIZE, Integer.toString(fixedSize), length);
+			if (t.utf8.length < length)
+				t.utf8 = new byte[length];
+			byte[] bytes = t.utf8;
+			for (int i = 0; i < length; i++) {
+				char c = chars[offset + i];
+				bytes[i] = (c <= 0xFF) ? (byte) c : (byte) '?';
+			}
+			if (fixedSize < 0)
+				out.writeBytes(bytes, 0, length);
+			else
+				out.writeFixed(bytes, 0, length);
+		}
+	}
+
+	private static class EnumNode extends Node {
+		private final HashMap<String, Integer> ordinals = new HashMap<String, Integer>();
+
+		EnumNode(Schema schema) {
+			for (String symbol : schema.getEnumSymbols())
+				ordinals.put(symbol, schema.getEnumOrdinal(symbol));
+		}
+
+		@Override
+		void transcode(JsonParser in, Encoder out, JsonTranscoder t) throws IOException {
+			if (in.currentToken() != JsonToken.VALUE_STRING)
+				throw error("enum", in);
+			Integer ordinal = ordinals.get(in.getText());
+			if (ordinal == null)
+				throw new TranscodeException(Reason.UNKNOWN_SYMBOL, null, in.getText());
+			out.writeEnum(ordinal);
+		}
+	}
+
+	/*
+	 * The items are written in one block after their count
+	 */
+	private static class ArrayNode extends Node {
+		private final Node item;
+
+		ArrayNode(Node item) {
+			this.item = item;
+		}
+
+		@Override
+		void transcode(JsonParser in, Encoder out, JsonTranscoder t) throws IOException {
+			if (in.currentToken() != JsonToken.START_ARRAY)
+				throw error("array-start", in);
+			Scratch items = t.push();
+			long count = 0;
+			while (in.nextToken() != JsonToken.END_ARRAY) {
+				item.transcode(in, items.encoder, t);
+				count++;
+			}
+			out.writeArrayStart();
+			if (count > 0) {
+				out.setItemCount(count);
+				out.writeFixed(items.buffer(), 0, items.size());
+			}
+			out.writeArrayEnd();
+			t.pop();
+		}
+	}
+
+	/*
+	 * The entries are written in one block after their count
+	 */
+	private static class MapNode extends Node {
+		private final Node value;
+
+		MapNode(Node value) {
+			this.value = value;
+		}
+
+		@Override
+		void transcode(JsonParser in, Encoder out, JsonTranscoder t) throws IOException {
+			if (in.currentToken() != JsonToken.START_OBJECT)
+				throw error("map-start", in);
+			Scratch entries = t.push();
+			long count = 0;
+			while (in.nextToken() == JsonToken.FIELD_NAME) {
+				entries.encoder.writeString(in.getCurrentName());
+				in.nextToken();
+				value.transcode(in, entries.encoder, t);
+				count++;
+			}
+			out.writeMapStart();
+			if (count > 0) {
+				out.setItemCount(count);
+				out.writeFixed(entries.buffer(), 0, entries.size());
+			}
+			out.writeMapEnd();
+			t.pop();
+		}
+	}
+
+	/*
+	 * A union value is null or an object with the name of the branch and the
+	 * value
+	 */
+	private static class UnionNode extends Node {
+		private final Node[] branches;
+		private final HashMap<String, Integer> indexes;
+		private final int nullIndex;
+
+		UnionNode(Node[] branches, HashMap<String, Integer> indexes, int nullIndex) {
+			this.branches = branches;
+			this.indexes = indexes;
+			this.nullIndex = nullIndex;
+		}
+
+		@Override
+		void transcode(JsonParser in, Encoder out, JsonTranscoder t) throws IOException {
+			JsonToken token = in.currentToken();
+			if (token == JsonToken.VALUE_NULL && nullIndex >= 0) {
+				out.writeIndex(nullIndex);
+				return;
+			}
+			if (token != JsonToken.START_OBJECT || in.nextToken() != JsonToken.FIELD_NAME)
+				throw error("start-union", in);
+			Integer index = indexes.get(in.getCurrentName());
+			if (index == null)
+				throw new TranscodeException(Reason.UNKNOWN_BRANCH, null, in.getCurrentName());
+			out.writeIndex(index);
+			in.nextToken();
+			branches[index].transcode(in, out, t);
+			if (in.nextToken() != JsonToken.END_OBJECT)
+				throw error("end-union", in);
+		}
+	}
+
+	private static class RecordNode extends Node {
+		private final String[] names;
+		private final HashMap<String, Integer> positions = new HashMap<String, Integer>();
+		final Node[] fields;
+
+		RecordNode(Schema schema) {
+			List<Field> schemaFields = schema.getFields();
+			names = new String[schemaFields.size()];
+			fields = new Node[schemaFields.size()];
+			for (Field field : schemaFields) {
+				// The parser interns the field names, so they are mostly
+				// matched by identity
+				names[field.pos()] = field.name().intern();
+				positions.put(field.name(), field.pos());
+			}
+		}
+
+		@Override
+		void transcode(JsonParser in, Encoder out, JsonTranscoder t) throws IOException {
+			if (in.currentToken() != JsonToken.START_OBJECT)
+				throw error("record-start", in);
+			// The fields before next are written, the fields after next are
+			// written or in the scratch buffer once the fields before are
+			// written
+			int next = 0;
+			Scratch pending = null;
+			while (in.nextToken() == JsonToken.FIELD_NAME) {
+				String name = in.getCurrentName();
+				int pos;
+				if (next < names.length && name == names[next]) {
+					pos = next;
+				} else {
+					Integer position = positions.get(name);
+					pos = (position != null) ? position : -1;
+				}
+				in.nextToken();
+				if (pos == next) {
+					fields[pos].transcode(in, out, t);
+					next++;
+					// Copy the following fields which came out of order
+					while (pending != null && next < names.length && pending.lengths[next] >= 0) {
+						out.writeFixed(pending.buffer(), pending.offsets[next], pending.lengths[next]);
+						next++;
+					}
+				} else if (pos > next && (pending == null || pending.lengths[pos] < 0)) {
+					if (pending == null)
+						pending = pushFields(t);
+					int offset = pending.size();
+					fields[pos].transcode(in, pending.encoder, t);
+					pending.offsets[pos] = offset;
+					pending.lengths[pos] = pending.size() - offset;
+				} else {
+					// A field that is not in the schema or that is repeated
+					in.skipChildren();
+				}
+			}
+			if (next < names.length)
+				throw new TranscodeException(Reason.MISSING_FIELD, names[next], null);
+			if (pending != null)
+				t.pop();
+		}
+
+		// Get a scratch buffer for the fields which are out of order
+		private Scratch pushFields(JsonTranscoder t) {
+			Scratch pending = t.push();
+			if (pending.lengths.length < names.length) {
+				pending.offsets = new int[names.length];
+				pending.lengths = new int[names.length];
+			}
+			for (int i = 0; i < names.length; i++)
+				pending.lengths[i] = -1;
+			return pending;
+		}
+	}
+
+}
@@ -0,0 +1,547 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.generic.GenericContainer;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericEnumSymbol;
+import org.apache.avro.generic.GenericFixed;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.util.Utf8;
+
+import com.ibm.streams.operator.types.RString;
+
+/**
+ * Writes Avro records as UTF-8 encoded JSON text into a reusable buffer.
+ *
+ * The strings of a decoded record are copied from their UTF-8 bytes into the
+ * buffer, so no intermediate String or StringBuilder is created per record.
+ * With format {@link JsonFormat#TO_STRING} the text is the same as the one of
+ * {@link GenericData#toString(Object)}, with format
+ * {@link JsonFormat#AVRO_JSON} it is the same as the Avro JSON encoding of
+ * {@link org.apache.avro.io.JsonEncoder}.
+ *
+ * The buffer grows to the size of the largest JSON text and is reused. The
+ * writer is not thread safe.
+ */
+public class JsonWriter {
+
+	private static final int INITIAL_BUFFER_SIZE = 256;
+	private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+	private final JsonFormat format;
+	private final byte[] nameSeparator;
+	private final byte[] valueSeparator;
+	private byte[] buf = new byte[INITIAL_BUFFER_SIZE];
+	private int count;
+
+	/**
+	 * @param format
+	 *            The format of the JSON text
+	 */
+	public JsonWriter(JsonFormat format) {
+		this.format = format;
+		if (format == JsonFormat.TO_STRING) {
+			nameSeparator = ": ".getBytes(StandardCharsets.US_ASCII);
+			valueSeparator = ", ".getBytes(StandardCharsets.US_ASCII);
+		} else {
+			nameSeparator = ":".getBytes(StandardCharsets.US_ASCII);
+			valueSeparator = ",".getBytes(StandardCharsets.US_ASCII);
+		}
+	}
+
+	/**
+	 * Discard the written JSON text
+	 */
+	public void reset() {
+		count = 0;
+	}
+
+	/**
+	 * Append the JSON text of a record
+	 *
+	 * @param datum
+	 *            The record
+	 */
+	public void write(GenericContainer datum) {
+		if (format == JsonFormat.TO_STRING)
+			writeValue(datum);
+		else
+			writeDatum(datum.getSchema(), datum);
+	}
+
+	/**
+	 * Append a line feed, which separates the JSON texts of newline-delimited
+	 * JSON. A JSON text never contains an unescaped line feed.
+	 */
+	public void writeNewLine() {
+		write('\n');
+	}
+
+	/**
+	 * Append JSON text which is already encoded, for example the text of
+	 * another writer
+	 *
+	 * @param utf8
+	 *            The UTF-8 bytes of the JSON text
+	 */
+	public void writeEncoded(byte[] utf8) {
+		write(utf8);
+	}
+
+	/**
+	 * @return the length of the written JSON text in bytes
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @return the written JSON text as rstring, which holds a copy of the UTF-8
+	 *         bytes
+	 */
+	public RString toRString() {
+		return new RString(Arrays.copyOf(buf, count));
+	}
+
+	/**
+	 * @return a copy of the UTF-8 bytes of the written JSON text
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(buf, count);
+	}
+
+	/**
+	 * @return the written JSON text
+	 */
+	@Override
+	public String toString() {
+		return new String(buf, 0, count, StandardCharsets.UTF_8);
+	}
+
+	// Write any value in the format of GenericData.toString(), which only
+	// looks at the Java type of the value
+	private void writeValue(Object datum) {
+		if (datum instanceof IndexedRecord) {
+			IndexedRecord record = (IndexedRecord) datum;
+			List<Field> fields = record.getSchema().getFields();
+			write('{');
+			for (int i = 0; i < fields.size(); i++) {
+				if (i > 0)
+					write(valueSeparator);
+				Field field = fields.get(i);
+				writeString(field.name());
+				write(nameSeparator);
+				writeValue(record.get(field.pos()));
+			}
+			write('}');
+		} else if (datum instanceof Collection) {
+			write('[');
+			boolean first = true;
+			for (Object element : (Collection<?>) datum) {
+				if (!first)
+					write(valueSeparator);
+				first = false;
+				writeValue(element);
+			}
+			write(']');
+		} else if (datum instanceof Map) {
+			write('{');
+			boolean first = true;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) datum).entrySet()) {
+				if (!first)
+					write(valueSeparator);
+				first = false;
+				Object key = entry.getKey();
+				writeString(key instanceof CharSequence ? (CharSequence) key : String.valueOf(key));
+				write(nameSeparator);
+				writeValue(entry.getValue());
+			}
+			write('}');
+		} else if (datum instanceof CharSequence) {
+			writeString((CharSequence) datum);
+		} else if (datum instanceof GenericEnumSymbol) {
+			writeString(datum.toString());
+		} else if (datum instanceof ByteBuffer) {
+			writeBytes((ByteBuffer) datum);
+		} else if (datum == null) {
+			write(NULL);
+		} else if (datum instanceof Boolean) {
+			write(((Boolean) datum).booleanValue() ? TRUE : FALSE);
+		} else if (datum instanceof Integer || datum instanceof Long) {
+			writeLong(((Number) datum).longValue());
+		} else if (datum instanceof Float || datum instanceof Double) {
+			writeFloatingPoint((Number) datum);
+		} else {
+			// Fixed values are written as list of signed bytes
+			writeUnescaped(datum.toString());
+		}
+	}
+
+	// Write a value in the Avro JSON encoding, which depends on its schema
+	private void writeDatum(Schema schema, Object datum) {
+		switch (schema.getType()) {
+		case RECORD:
+			IndexedRecord record = (IndexedRecord) datum;
+			List<Field> fields = schema.getFields();
+			write('{');
+			for (int i = 0; i < fields.size(); i++) {
+				if (i > 0)
+					write(valueSeparator);
+				Field field = fields.get(i);
+				writeString(field.name());
+				write(nameSeparator);
+				writeDatum(field.schema(), record.get(field.pos()));
+			}
+			write('}');
+			break;
+		case ARRAY:
+			write('[');
+			boolean firstElement = true;
+			for (Object element : (Collection<?>) datum) {
+				if (!firstElement)
+					write(valueSeparator);
+				firstElement = false;
+				writeDatum(schema.getElementType(), element);
+			}
+			write(']');
+			break;
+		case MAP:
+			write('{');
+			boolean firstEntry = true;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) datum).entrySet()) {
+				if (!firstEntry)
+					write(valueSeparator);
+				firstEntry = false;
+				writeString((CharSequence) entry.getKey());
+				write(nameSeparator);
+				writeDatum(schema.getValueType(), entry.getValue());
+			}
+			write('}');
+			break;
+		case UNION:
+			Schema branch = schema.getTypes().get(GenericData.get().resolveUnion(schema, datum));
+			if (branch.getType() == Schema.Type.NULL) {
+				write(NULL);
+			} else {
+				write('{');
+				writeString(branch.getFullName());
+				write(nameSeparator);
+				writeDatum(branch, datum);
+				write('}');
+			}
+			break;
+		case ENUM:
+			writeString(datum.toString());
+			break;
+		case FIXED:
+			byte[] fixed = ((GenericFixed) datum).bytes();
+			writeLatin1String(fixed, 0, fixed.length);
+			break;
+		case STRING:
+			writeString((CharSequence) datum);
+			break;
+		case BYTES:
+			writeBytes((ByteBuffer) datum);
+			break;
+		case INT:
+		case LONG:
+			writeLong(((Number) datum).longValue());
+			break;
+		case FLOAT:
+		case DOUBLE:
+			writeFloatingPoint((Number) datum);
+			break;
+		case BOOLEAN:
+			write(((Boolean) datum).booleanValue() ? TRUE : FALSE);
+			break;
+		default:
+			write(NULL);
+		}
+	}
+
+	// NaN and infinity are no JSON numbers and are quoted
+	private void writeFloatingPoint(Number value) {
+		double d = value.doubleValue();
+		if (Double.isNaN(d) || Double.isInfinite(d)) {
+			write('"');
+			writeUnescaped(value.toString());
+			write('"');
+		} else {
+			writeUnescaped(value.toString());
+		}
+	}
+
+	private void writeLong(long value) {
+		if (value == Long.MIN_VALUE) {
+			writeUnescaped(Long.toString(value));
+			return;
+		}
+		ensureCapacity(20);
+		if (value < 0) {
+			buf[count++] = '-';
+			value = -value;
+		}
+		int end = count + digits(value);
+		for (int i = end - 1; i >= count; i--) {
+			buf[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		count = end;
+	}
+
+	private static int digits(long value) {
+		int digits = 1;
+		while (value >= 10) {
+			value /= 10;
+			digits++;
+		}
+		return digits;
+	}
+
+	// Bytes are a string of ISO-8859-1 characters in both formats
+	private void writeBytes(ByteBuffer bytes) {
+		if (bytes.hasArray()) {
+			writeLatin1String(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+		} else {
+			byte[] copy = new byte[bytes.remaining()];
+			bytes.duplicate().get(copy);
+			writeLatin1String(copy, 0, copy.length);
+		}
+	}
+
+	private void writeLatin1String(byte[] bytes, int offset, int length) {
+		write('"');
+		for (int i = offset; i < offset + length; i++)
+			writeChar(bytes[i] & 0xFF);
+		write('"');
+	}
+
+	private void writeString(CharSequence string) {
+		if (string instanceof Utf8) {
+			Utf8 utf8 = (Utf8) string;
+			writeUtf8String(utf8.getBytes(), utf8.getByteLength());
+			return;
+		}
+		write('"');
+		writeChars(string);
+		write('"');
+	}
+
+	// Copy the UTF-8 bytes of a decoded string and escape them like the
+	// characters of the string. Malformed bytes are decoded to a String, which
+	// replaces them like Utf8.toString() does.
+	private void writeUtf8String(byte[] bytes, int length) {
+		int start = count;
+		write('"');
+		int i = 0;
+		while (i < length) {
+			int b = bytes[i] & 0xFF;
+			if (b < 0x80) {
+				writeChar(b);
+				i++;
+				continue;
+			}
+			int sequenceLength = utf8SequenceLength(bytes, i, length);
+			if (sequenceLength == 0) {
+				count = start;
+				write('"');
+				writeChars(new String(bytes, 0, length, StandardCharsets.UTF_8));
+				break;
+			}
+			int codePoint = decodeUtf8(bytes, i, sequenceLength);
+			if (codePoint >= 0x10000 && format == JsonFormat.AVRO_JSON) {
+				writeUnicodeEscape(Character.highSurrogate(codePoint));
+				writeUnicodeEscape(Character.lowSurrogate(codePoint));
+			} else if (needsUnicodeEscape(codePoint)) {
+				writeUnicodeEscape(codePoint);
+			} else {
+				ensureCapacity(sequenceLength);
+				System.arraycopy(bytes, i, buf, count, sequenceLength);
+				count += sequenceLength;
+			}
+			i += sequenceLength;
+		}
+		write('"');
+	}
+
+	// Returns the length of the well-formed UTF-8 sequence at the offset, or 0
+	// if it is malformed
+	private static int utf8SequenceLength(byte[] bytes, int offset, int length) {
+		int b = bytes[offset] & 0xFF;
+		int sequenceLength;
+		int min = 0x80;
+		int max = 0xBF;
+		if (b >= 0xC2 && b <= 0xDF) {
+			sequenceLength = 2;
+		} else if (b >= 0xE0 && b <= 0xEF) {
+			sequenceLength = 3;
+			if (b == 0xE0)
+				min = 0xA0;
+			else if (b == 0xED)
+				max = 0x9F;
+		} else if (b >= 0xF0 && b <= 0xF4) {
+			sequenceLength = 4;
+			if (b == 0xF0)
+				min = 0x90;
+			else if (b == 0xF4)
+				max = 0x8F;
+		} else {
+			return 0;
+		}
+		if (offset + sequenceLength > length)
+			return 0;
+		for (int i = 1; i < sequenceLength; i++) {
+			int c = bytes[offset + i] & 0xFF;
+			if (c < min || c > max)
+				return 0;
+			min = 0x80;
+			max = 0xBF;
+		}
+		return sequenceLength;
+	}
+
+	private static int decodeUtf8(byte[] bytes, int offset, int sequenceLength) {
+		if (sequenceLength == 2)
+			return ((bytes[offset] & 0x1F) << 6) | (bytes[offset + 1] & 0x3F);
+		if (sequenceLength == 3)
+			return ((bytes[offset] & 0x0F) << 12) | ((bytes[offset + 1] & 0x3F) << 6) | (bytes[offset + 2] & 0x3F);
+		return ((bytes[offset] & 0x07) << 18) | ((bytes[offset + 1] & 0x3F) << 12) | ((bytes[offset + 2] & 0x3F) << 6)
+				| (bytes[offset + 3] & 0x3F);
+	}
+
+	private void writeChars(CharSequence string) {
+		int length = string.length();
+		for (int i = 0; i < length; i++) {
+			char ch = string.charAt(i);
+			if (format == JsonFormat.AVRO_JSON && Character.isSurrogate(ch)) {
+				// Like Jackson, every surrogate is escaped
+				writeUnicodeEscape(ch);
+			} else if (Character.isHighSurrogate(ch) && i + 1 < length && Character.isLowSurrogate(string.charAt(i + 1))) {
+				writeCodePoint(Character.toCodePoint(ch, string.charAt(++i)));
+			} else if (Character.isSurrogate(ch)) {
+				// Like String.getBytes(), a lone surrogate becomes a question mark
+				write('?');
+			} else {
+				writeChar(ch);
+			}
+		}
+	}
+
+	// Write a character of the BMP, escaped if required by the format
+	private void writeChar(int ch) {
+		switch (ch) {
+		case '"':
+			write('\\');
+			write('"');
+			return;
+		case '\\':
+			write('\\');
+			write('\\');
+			return;
+		case '\b':
+			write('\\');
+			write('b');
+			return;
+		case '\f':
+			write('\\');
+			write('f');
+			return;
+		case '\n':
+			write('\\');
+			write('n');
+			return;
+		case '\r':
+			write('\\');
+			write('r');
+			return;
+		case '\t':
+			write('\\');
+			write('t');
+			return;
+		default:
+			if (needsUnicodeEscape(ch))
+				writeUnicodeEscape(ch);
+			else
+				writeCodePoint(ch);
+		}
+	}
+
+	// Control characters are escaped in both formats, GenericData.toString()
+	// escapes some more ranges. Jackson escapes the surrogates of the Avro JSON
+	// encoding instead.
+	private boolean needsUnicodeEscape(int ch) {
+		if (ch < 0x20)
+			return true;
+		return format == JsonFormat.TO_STRING && ((ch >= 0x7F && ch <= 0x9F) || (ch >= 0x2000 && ch <= 0x20FF));
+	}
+
+	private void writeUnicodeEscape(int ch) {
+		ensureCapacity(6);
+		buf[count++] = '\\';
+		buf[count++] = 'u';
+		buf[count++] = HEX_DIGITS[(ch >> 12) & 0xF];
+		buf[count++] = HEX_DIGITS[(ch >> 8) & 0xF];
+		buf[count++] = HEX_DIGITS[(ch >> 4) & 0xF];
+		buf[count++] = HEX_DIGITS[ch & 0xF];
+	}
+
+	private void writeCodePoint(int codePoint) {
+		ensureCapacity(4);
+		if (codePoint < 0x80) {
+			buf[count++] = (byte) codePoint;
+		} else if (codePoint < 0x800) {
+			buf[count++] = (byte) (0xC0 | (codePoint >> 6));
+			buf[count++] = (byte) (0x80 | (codePoint & 0x3F));
+		} else if (codePoint < 0x10000) {
+			buf[count++] = (byte) (0xE0 | (codePoint >> 12));
+			buf[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+			buf[count++] = (byte) (0x80 | (codePoint & 0x3F));
+		} else {
+			buf[count++] = (byte) (0xF0 | (codePoint >> 18));
+			buf[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+			buf[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+			buf[count++] = (byte) (0x80 | (codePoint & 0x3F));
+		}
+	}
+
+	private void writeUnescaped(String text) {
+		int length = text.length();
+		for (int i = 0; i < length; i++)
+			writeCodePoint(text.charAt(i));
+	}
+
+	private void write(int b) {
+		ensureCapacity(1);
+		buf[count++] = (byte) b;
+	}
+
+	private void write(byte[] bytes) {
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, buf, count, bytes.length);
+		count += bytes.length;
+	}
+
+	private void ensureCapacity(int length) {
+		if (count + length > buf.length)
+			buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + length));
+	}
+
+}
@@ -0,0 +1,97 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.io;
+
+import org.apache.avro.Schema;
+
+import com.ibm.streamsx.avro.Messages;
+import com.ibm.streamsx.avro.schema.SchemaRegistry;
+
+/**
+ * The formats of an Avro message without embedded schema
+ */
+public enum MessageFormat {
+
+	/** The binary Avro encoding of the record without any header */
+	BINARY("binary"),
+	/**
+	 * The Avro single-object encoding: a header with the fingerprint of the
+	 * writer schema followed by the binary Avro encoding of the record
+	 */
+	SINGLE_OBJECT("singleObject"),
+	/**
+	 * The schema registry wire format: a header with the schema id of the
+	 * writer schema followed by the binary Avro encoding of the record
+	 */
+	SCHEMA_REGISTRY("schemaRegistry");
+
+	private final String parameterValue;
+
+	private MessageFormat(String parameterValue) {
+		this.parameterValue = parameterValue;
+	}
+
+	/**
+	 * @return the name of the format in operator parameters
+	 */
+	public String getParameterValue() {
+		return parameterValue;
+	}
+
+	/**
+	 * Create the header that precedes every record in this format
+	 *
+	 * @param schema
+	 *            The writer schema
+	 * @param registry
+	 *            The schema registry with the id of the writer schema, only
+	 *            used by format {@link #SCHEMA_REGISTRY}
+	 * @return the header bytes, or null if the format has no header
+	 * @throws IllegalArgumentException
+	 *             if the schema is not registered
+	 */
+	public byte[] createHeader(Schema schema, SchemaRegistry registry) {
+		switch (this) {
+		case SINGLE_OBJECT:
+			return SingleObjectEncoding.createHeader(schema);
+		case SCHEMA_REGISTRY:
+			int schemaId = registry.getSchemaId(schema);
+			if (schemaId < 0)
+				throw new IllegalArgumentException(
+						Messages.getString("AVRO_SCHEMA_NOT_REGISTERED", schema.getFullName(), registry));
+			return SchemaRegistryEncoding.createHeader(schemaId);
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Get the format for the value of an operator parameter
+	 *
+	 * @param parameterName
+	 *            The name of the parameter
+	 * @param parameterValue
+	 *            The name of the format
+	 * @return the message format
+	 * @throws IllegalArgumentException
+	 *             if the format is not supported
+	 */
+	public static MessageFormat fromParameter(String parameterName, String parameterValue) {
+		StringBuilder validValues = new StringBuilder();
+		for (MessageFormat format : values()) {
+			if (format.parameterValue.equals(parameterValue))
+				return format;
+			if (validValues.length() > 0)
+				validValues.append(", ");
+			validValues.append(format.parameterValue);
+		}
+		throw new IllegalArgumentException(Messages.getString("AVRO_INVALID_PARAMETER_VALUE", parameterName,
+				parameterValue, validValues));
+	}
+
+}
@@ -0,0 +1,145 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+
+import com.ibm.streamsx.avro.schema.DatumReaderCache;
+
+/**
+ * Reads Avro messages without embedded schema, which hold a single record. A
+ * binary message is read with a fixed schema. A single-object encoded or
+ * schema registry message is read with the datum reader of its writer schema.
+ *
+ * The datum readers are created once. The decoder and the record are reused
+ * for every message, so a record returned by {@link #read(ByteBuffer)} is only
+ * valid until the next message is read. A message in a buffer without
+ * accessible array, like the read-only view of a blob, is copied into a reused
+ * array. The reader is not thread safe.
+ */
+public class MessageReader {
+
+	private final MessageFormat format;
+	private final GenericDatumReader<GenericRecord> binaryReader;
+	private final DatumReaderCache readers;
+	private BinaryDecoder decoder;
+	private GenericRecord record;
+	private byte[] messageBytes = new byte[0];
+	private FilterExpression filterExpression;
+	private final RecordFilter.Input filterInput = new RecordFilter.Input();
+
+	/**
+	 * Create a reader for binary messages
+	 *
+	 * @param schema
+	 *            The schema of the records
+	 */
+	public MessageReader(Schema schema) {
+		this.format = MessageFormat.BINARY;
+		this.binaryReader = new GenericDatumReader<GenericRecord>(schema);
+		this.readers = null;
+	}
+
+	/**
+	 * Create a reader for binary messages, which resolves the records to a
+	 * reader schema. Fields that are not in the reader schema are skipped.
+	 *
+	 * @param writerSchema
+	 *            The schema the records are written with
+	 * @param readerSchema
+	 *            The schema of the returned records, or null to read the
+	 *            records with the writer schema
+	 */
+	public MessageReader(Schema writerSchema, Schema readerSchema) {
+		this.format = MessageFormat.BINARY;
+		this.binaryReader = new GenericDatumReader<GenericRecord>(writerSchema,
+				(readerSchema != null) ? readerSchema : writerSchema);
+		this.readers = null;
+	}
+
+	/**
+	 * Create a reader for messages with a header that identifies the writer
+	 * schema
+	 *
+	 * @param format
+	 *            The format of the messages, {@link MessageFormat#SINGLE_OBJECT}
+	 *            or {@link MessageFormat#SCHEMA_REGISTRY}
+	 * @param readers
+	 *            The datum readers by fingerprint or schema id of the writer
+	 *            schema
+	 */
+	public MessageReader(MessageFormat format, DatumReaderCache readers) {
+		this.format = format;
+		this.binaryReader = null;
+		this.readers = readers;
+	}
+
+	/**
+	 * Set the filter of the records. A message whose record does not match the
+	 * filter is not decoded. The filter is compiled for every writer schema.
+	 *
+	 * @param filterExpression
+	 *            The filter, or null to read all records
+	 */
+	public void setFilter(FilterExpression filterExpression) {
+		this.filterExpression = filterExpression;
+	}
+
+	/**
+	 * Read the record of a message
+	 *
+	 * @param message
+	 *            The message between the position and the limit of the
+	 *            buffer
+	 * @return the record, which is reused by the next call, or null if the
+	 *         record does not match the filter
+	 * @throws IOException
+	 */
+	public GenericRecord read(ByteBuffer message) throws IOException {
+		GenericDatumReader<GenericRecord> reader;
+		switch (format) {
+		case SINGLE_OBJECT:
+			reader = readers.getReader(SingleObjectEncoding.readFingerprint(message));
+			break;
+		case SCHEMA_REGISTRY:
+			reader = readers.getReader(SchemaRegistryEncoding.readSchemaId(message));
+			break;
+		default:
+			reader = binaryReader;
+		}
+		byte[] data;
+		int offset;
+		int length = message.remaining();
+		if (message.hasArray()) {
+			data = message.array();
+			offset = message.arrayOffset() + message.position();
+		} else {
+			if (messageBytes.length < length)
+				messageBytes = new byte[length];
+			message.duplicate().get(messageBytes, 0, length);
+			data = messageBytes;
+			offset = 0;
+		}
+		if (filterExpression != null) {
+			filterInput.reset(data, offset, length);
+			if (!filterExpression.getFilter(reader.getSchema()).matches(filterInput))
+				return null;
+		}
+		decoder = DecoderFactory.get().binaryDecoder(data, offset, length, decoder);
+		record = reader.read(record, decoder);
+		return record;
+	}
+
+}
@@ -0,0 +1,571 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+
+import com.ibm.streamsx.avro.Messages;
+import com.ibm.streamsx.avro.io.FilterExpression.Comparison;
+
+/**
+ * A {@link FilterExpression} compiled for a writer schema. The filter scans a
+ * binary Avro record without decoding it: only the fields of the comparisons
+ * are read, all other values are skipped by their length. A record is decoded
+ * only if it matches the filter.
+ *
+ * The filter is immutable and can be shared by several threads, each of them
+ * scanning with its own {@link Input}.
+ */
+public class RecordFilter {
+
+	/**
+	 * The binary records scanned by a filter. The input is not thread safe.
+	 */
+	public static class Input {
+		private byte[] data;
+		private int position;
+		private int limit;
+		private boolean matches;
+
+		/**
+		 * Start scanning records
+		 *
+		 * @param data
+		 *            The array holding the records
+		 * @param offset
+		 *            The offset of the first record
+		 * @param length
+		 *            The length of the records
+		 */
+		public void reset(byte[] data, int offset, int length) {
+			this.data = data;
+			position = offset;
+			limit = offset + length;
+		}
+
+		/**
+		 * @return the offset of the next record
+		 */
+		public int getPosition() {
+			return position;
+		}
+
+		// Read a zig-zag encoded variable length long
+		long readLong() throws IOException {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				if (position >= limit)
+					throw new EOFException();
+				int b = data[position++] & 0xFF;
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return (value >>> 1) ^ -(value & 1);
+			}
+			throw new IOException("Invalid long encoding");
+		}
+
+		// Skip bytes and return their offset
+		int skip(long length) throws IOException {
+			if (length < 0 || length > limit - position)
+				throw new EOFException();
+			int offset = position;
+			position += (int) length;
+			return offset;
+		}
+	}
+
+	/*
+	 * The scan of a value of a schema
+	 */
+	private static abstract class Node {
+		abstract void scan(Input in) throws IOException;
+	}
+
+	private final Node root;
+
+	RecordFilter(FilterExpression expression, Schema writerSchema) {
+		root = compile(expression, writerSchema, expression.getComparisons(), 0);
+	}
+
+	/**
+	 * Scan the next record of the input
+	 *
+	 * @param in
+	 *            The input, which is positioned after the record on return
+	 * @return true if the record matches the filter
+	 * @throws IOException
+	 *             if the record is truncated
+	 */
+	public boolean matches(Input in) throws IOException {
+		in.matches = true;
+		root.scan(in);
+		return in.matches;
+	}
+
+	/*
+	 * Build the scan of a value with the comparisons of the fields in the
+	 * value. The comparisons are at the given depth of their path.
+	 */
+	private static Node compile(FilterExpression expression, Schema schema, List<Comparison> comparisons, int depth) {
+		if (comparisons.isEmpty())
+			return skipNode(schema);
+		switch (schema.getType()) {
+		case UNION:
+			Integer nullIndex = schema.getIndexNamed(Schema.Type.NULL.getName());
+			if (nullIndex == null || schema.getTypes().size() != 2)
+				throw error(expression, schema, comparisons.get(0), "only unions of null and one type are supported");
+			Node[] branches = new Node[2];
+			branches[nullIndex] = new NullNode(comparisons);
+			branches[1 - nullIndex] = compile(expression, schema.getTypes().get(1 - nullIndex), comparisons, depth);
+			return new UnionNode(branches);
+		case RECORD:
+			// A record can only be compared with null
+			List<Comparison> recordComparisons = new ArrayList<Comparison>();
+			Map<String, List<Comparison>> fieldComparisons = new LinkedHashMap<String, List<Comparison>>();
+			for (Comparison comparison : comparisons) {
+				if (comparison.path.length == depth) {
+					if (comparison.literal != null)
+						throw error(expression, schema, comparison, "a record can only be compared with null");
+					recordComparisons.add(comparison);
+					continue;
+				}
+				if (schema.getField(comparison.path[depth]) == null)
+					throw error(expression, schema, comparison, "field " + comparison.path[depth] + " not found");
+				List<Comparison> list = fieldComparisons.get(comparison.path[depth]);
+				if (list == null) {
+					list = new ArrayList<Comparison>();
+					fieldComparisons.put(comparison.path[depth], list);
+				}
+				list.add(comparison);
+			}
+			Node[] fields = new Node[schema.getFields().size()];
+			for (Field field : schema.getFields()) {
+				List<Comparison> list = fieldComparisons.get(field.name());
+				fields[field.pos()] = compile(expression, field.schema(),
+						(list != null) ? list : new ArrayList<Comparison>(), depth + 1);
+			}
+			if (recordComparisons.isEmpty())
+				return new RecordNode(fields);
+			return new ConstantNode(recordComparisons, new RecordNode(fields));
+		default:
+			for (Comparison comparison : comparisons) {
+				if (comparison.path.length != depth)
+					throw error(expression, schema, comparison,
+							"a value of type " + schema.getType().getName() + " has no fields");
+			}
+			return leafNode(expression, schema, comparisons);
+		}
+	}
+
+	/*
+	 * Build the comparisons of a value which is not a record or union
+	 */
+	private static Node leafNode(FilterExpression expression, Schema schema, List<Comparison> comparisons) {
+		Object[] literals = new Object[comparisons.size()];
+		for (int i = 0; i < literals.length; i++) {
+			Comparison comparison = comparisons.get(i);
+			Object literal = comparison.literal;
+			if (literal == null)
+				continue;
+			boolean valid;
+			switch (schema.getType()) {
+			case INT:
+			case LONG:
+			case FLOAT:
+			case DOUBLE:
+				valid = literal instanceof Number;
+				break;
+			case STRING:
+				valid = literal instanceof String;
+				if (valid)
+					literals[i] = ((String) literal).getBytes(StandardCharsets.UTF_8);
+				break;
+			case ENUM:
+				valid = literal instanceof String && schema.hasEnumSymbol((String) literal);
+				if (valid)
+					literals[i] = schema.getEnumOrdinal((String) literal);
+				break;
+			case BOOLEAN:
+				valid = literal instanceof Boolean
+						&& (comparison.operator == FilterExpression.Operator.EQ
+								|| comparison.operator == FilterExpression.Operator.NE);
+				break;
+			default:
+				valid = false;
+			}
+			if (!valid)
+				throw error(expression, schema, comparison, "a value of type " + schema.getType().getName()
+						+ " cannot be compared with " + comparison.operator.symbol + " " + literal);
+			if (literals[i] == null)
+				literals[i] = literal;
+		}
+		switch (schema.getType()) {
+		case INT:
+		case LONG:
+			return new LongNode(comparisons, literals);
+		case FLOAT:
+			return new FloatNode(comparisons, literals);
+		case DOUBLE:
+			return new DoubleNode(comparisons, literals);
+		case STRING:
+			return new StringNode(comparisons, literals);
+		case ENUM:
+			return new EnumNode(comparisons, literals);
+		case BOOLEAN:
+			return new BooleanNode(comparisons, literals);
+		default:
+			// Only comparisons with null are left
+			return new ConstantNode(comparisons, skipNode(schema));
+		}
+	}
+
+	/*
+	 * Build the scan of a value without comparisons
+	 */
+	private static Node skipNode(Schema schema) {
+		switch (schema.getType()) {
+		case NULL:
+			return new FixedNode(0);
+		case BOOLEAN:
+			return new FixedNode(1);
+		case INT:
+		case LONG:
+		case ENUM:
+			return new VarLongNode();
+		case FLOAT:
+			return new FixedNode(4);
+		case DOUBLE:
+			return new FixedNode(8);
+		case FIXED:
+			return new FixedNode(schema.getFixedSize());
+		case STRING:
+		case BYTES:
+			return new BytesNode();
+		case ARRAY:
+			return new ArrayNode(skipNode(schema.getElementType()));
+		case MAP:
+			return new MapNode(skipNode(schema.getValueType()));
+		case UNION:
+			Node[] branches = new Node[schema.getTypes().size()];
+			for (int i = 0; i < branches.length; i++)
+				branches[i] = skipNode(schema.getTypes().get(i));
+			return new UnionNode(branches);
+		default:
+			Node[] fields = new Node[schema.getFields().size()];
+			for (Field field : schema.getFields())
+				fields[field.pos()] = skipNode(field.schema());
+			return new RecordNode(fields);
+		}
+	}
+
+	private static IllegalArgumentException error(FilterExpression expression, Schema schema, Comparison comparison,
+			String reason) {
+		return new IllegalArgumentException(Messages.getString("AVRO_INVALID_FILTER", expression,
+				comparison.getPath() + " in schema " + schema.getFullName() + ": " + reason));
+	}
+
+	// Compare two strings by their UTF-8 bytes, which is the order of their
+	// code points
+	private static int compareUtf8(byte[] data, int offset, int length, byte[] literal) {
+		int common = Math.min(length, literal.length);
+		for (int i = 0; i < common; i++) {
+			int difference = (data[offset + i] & 0xFF) - (literal[i] & 0xFF);
+			if (difference != 0)
+				return difference;
+		}
+		return length - literal.length;
+	}
+
+	private static class FixedNode extends Node {
+		private final int size;
+
+		FixedNode(int size) {
+			this.size = size;
+		}
+
+		@Override
+		void scan(Input in) throws IOException {
+			in.skip(size);
+		}
+	}
+
+	private static class VarLongNode extends Node {
+		@Override
+		void scan(Input in) throws IOException {
+			in.readLong();
+		}
+	}
+
+	private static class BytesNode extends Node {
+		@Override
+		void scan(Input in) throws IOException {
+			in.skip(in.readLong());
+		}
+	}
+
+	private static class ArrayNode extends Node {
+		private final Node element;
+
+		ArrayNode(Node element) {
+			this.element = element;
+		}
+
+		@Override
+		void scan(Input in) throws IOException {
+			for (long count = in.readLong(); count != 0; count = in.readLong()) {
+				// A negative count is followed by the size of the block
+				if (count < 0) {
+					in.skip(in.readLong());
+				} else {
+					for (long i = 0; i < count; i++)
+						element.scan(in);
+				}
+			}
+		}
+	}
+
+	private static class MapNode extends Node {
+		private final Node value;
+
+		MapNode(Node value) {
+			this.value = value;
+		}
+
+		@Override
+		void scan(Input in) throws IOException {
+			for (long count = in.readLong(); count != 0; count = in.readLong()) {
+				// A negative count is followed by the size of the block
+				if (count < 0) {
+					in.skip(in.readLong());
+				} else {
+					for (long i = 0; i < count; i++) {
+						in.skip(in.readLong());
+						value.scan(in);
+					}
+				}
+			}
+		}
+	}
+
+	private static class UnionNode extends Node {
+		private final Node[] branches;
+
+		UnionNode(Node[] branches) {
+			this.branches = branches;
+		}
+
+		@Override
+		void scan(Input in) throws IOException {
+			long index = in.readLong();
+			if (index < 0 || index >= branches.length)
+				throw new IOException("Invalid union index " + index);
+			branches[(int) index].scan(in);
+		}
+	}
+
+	private static class RecordNode extends Node {
+		private final Node[] fields;
+
+		RecordNode(Node[] fields) {
+			this.fields = fields;
+		}
+
+		@Override
+		void scan(Input in) throws IOException {
+			for (Node field : fields)
+				field.scan(in);
+		}
+	}
+
+	/*
+	 * The base of the nodes that compare a value with the literals of their
+	 * comparisons
+	 */
+	private static abstract class CompareNode extends Node {
+		final FilterExpression.Operator[] operators;
+		final Object[] literals;
+
+		CompareNode(List<Comparison> comparisons, Object[] literals) {
+			operators = new FilterExpression.Operator[comparisons.size()];
+			for (int i = 0; i < operators.length; i++)
+				operators[i] = comparisons.get(i).operator;
+			this.literals = literals;
+		}
+
+		// A value which is not null compared with null
+		void compareWithNull(Input in, int i) {
+			if (operators[i] != FilterExpression.Operator.NE)
+				in.matches = false;
+		}
+	}
+
+	/*
+	 * The null branch of a union: null is only equal to null
+	 */
+	private static class NullNode extends CompareNode {
+		NullNode(List<Comparison> comparisons) {
+			super(comparisons, new Object[comparisons.size()]);
+			for (int i = 0; i < literals.length; i++)
+				literals[i] = comparisons.get(i).literal;
+		}
+
+		@Override
+		void scan(Input in) throws IOException {
+			for (int i = 0; i < operators.length; i++) {
+				boolean equal = literals[i] == null;
+				if (operators[i] == FilterExpression.Operator.EQ ? !equal
+						: operators[i] != FilterExpression.Operator.NE || equal)
+					in.matches = false;
+			}
+		}
+	}
+
+	/*
+	 * A value that is only compared with null, it is never null
+	 */
+	private static class ConstantNode extends CompareNode {
+		private final Node skip;
+
+		ConstantNode(List<Comparison> comparisons, Node skip) {
+			super(comparisons, new Object[comparisons.size()]);
+			this.skip = skip;
+		}
+
+		@Override
+		void scan(Input in) throws IOException {
+			skip.scan(in);
+			for (int i = 0; i < operators.length; i++)
+				compareWithNull(in, i);
+		}
+	}
+
+	private static class LongNode extends CompareNode {
+		LongNode(List<Comparison> comparisons, Object[] literals) {
+			super(comparisons, literals);
+		}
+
+		@Override
+		void scan(Input in) throws IOException {
+			long value = in.readLong();
+			for (int i = 0; i < operators.length; i++) {
+				Object literal = literals[i];
+				if (literal == null)
+					compareWithNull(in, i);
+				else if (!operators[i].test((literal instanceof Long) ? Long.compare(value, (Long) literal)
+						: Double.compare(value, ((Number) literal).doubleValue())))
+					in.matches = false;
+			}
+		}
+	}
+
+	private static class FloatNode extends CompareNode {
+		FloatNode(List<Comparison> comparisons, Object[] literals) {
+			super(comparisons, literals);
+		}
+
+		@Override
+		void scan(Input in) throws IOException {
+			int offset = in.skip(4);
+			float value = Float.intBitsToFloat((in.data[offset] & 0xFF) | ((in.data[offset + 1] & 0xFF) << 8)
+					| ((in.data[offset + 2] & 0xFF) << 16) | ((in.data[offset + 3] & 0xFF) << 24));
+			for (int i = 0; i < operators.length; i++) {
+				if (literals[i] == null)
+					compareWithNull(in, i);
+				else if (!operators[i].test(Double.compare(value, ((Number) literals[i]).doubleValue())))
+					in.matches = false;
+			}
+		}
+	}
+
+	private static class DoubleNode extends CompareNode {
+		DoubleNode(List<Comparison> comparisons, Object[] literals) {
+			super(comparisons, literals);
+		}
+
+		@Override
+		void scan(Input in) throws IOException {
+			int offset = in.skip(8);
+			long bits = 0;
+			for (int b = 7; b >= 0; b--)
+				bits = (bits << 8) | (in.data[offset + b] & 0xFF);
+			double value = Double.longBitsToDouble(bits);
+			for (int i = 0; i < operators.length; i++) {
+				if (literals[i] == null)
+					compareWithNull(in, i);
+				else if (!operators[i].test(Double.compare(value, ((Number) literals[i]).doubleValue())))
+					in.matches = false;
+			}
+		}
+	}
+
+	private static class StringNode extends CompareNode {
+		StringNode(List<Comparison> comparisons, Object[] literals) {
+			super(comparisons, literals);
+		}
+
+		@Override
+		void scan(Input in) throws IOException {
+			long length = in.readLong();
+			int offset = in.skip(length);
+			for (int i = 0; i < operators.length; i++) {
+				if (literals[i] == null)
+					compareWithNull(in, i);
+				else if (!operators[i].test(compareUtf8(in.data, offset, (int) length, (byte[]) literals[i])))
+					in.matches = false;
+			}
+		}
+	}
+
+	/*
+	 * Enum symbols are compared by their position in the enum, which is the
+	 * sort order of Avro
+	 */
+	private static class EnumNode extends CompareNode {
+		EnumNode(List<Comparison> comparisons, Object[] literals) {
+			super(comparisons, literals);
+		}
+
+		@Override
+		void scan(Input in) throws IOException {
+			long value = in.readLong();
+			for (int i = 0; i < operators.length; i++) {
+				if (literals[i] == null)
+					compareWithNull(in, i);
+				else if (!operators[i].test(Long.compare(value, (Integer) literals[i])))
+					in.matches = false;
+			}
+		}
+	}
+
+	private static class BooleanNode extends CompareNode {
+		BooleanNode(List<Comparison> comparisons, Object[] literals) {
+			super(comparisons, literals);
+		}
+
+		@Override
+		void scan(Input in) throws IOException {
+			boolean value = in.data[in.skip(1)] != 0;
+			for (int i = 0; i < operators.length; i++) {
+				if (literals[i] == null)
+					compareWithNull(in, i);
+				else if (!operators[i].test(Boolean.compare(value, (Boolean) literals[i])))
+					in.matches = false;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,59 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.apache.avro.message.BadHeaderException;
+
+/**
+ * Header of the schema registry wire format. The header consists of the magic
+ * byte 0 and the 4 byte big-endian schema id of the writer schema, followed by
+ * the binary Avro encoding of the record.
+ */
+public final class SchemaRegistryEncoding {
+
+	/** The magic byte at the start of a message */
+	public static final byte MAGIC_BYTE = 0;
+	/** The length of the header in bytes */
+	public static final int HEADER_LENGTH = 5;
+
+	private SchemaRegistryEncoding() {
+	}
+
+	/**
+	 * Create the header for the records of a schema
+	 *
+	 * @param schemaId
+	 *            The id of the writer schema
+	 * @return the header bytes
+	 */
+	public static byte[] createHeader(int schemaId) {
+		return ByteBuffer.allocate(HEADER_LENGTH).put(MAGIC_BYTE).putInt(schemaId).array();
+	}
+
+	/**
+	 * Read the header of a message. On return the position of the buffer is at
+	 * the start of the binary Avro record.
+	 *
+	 * @param message
+	 *            The message
+	 * @return the id of the writer schema
+	 * @throws BadHeaderException
+	 *             if the message does not start with a schema registry header
+	 */
+	public static int readSchemaId(ByteBuffer message) {
+		if (message.remaining() < HEADER_LENGTH)
+			throw new BadHeaderException("Message is shorter than the schema registry header: " + message.remaining());
+		if (message.get() != MAGIC_BYTE)
+			throw new BadHeaderException("Message does not start with the schema registry magic byte");
+		return message.order(ByteOrder.BIG_ENDIAN).getInt();
+	}
+
+}
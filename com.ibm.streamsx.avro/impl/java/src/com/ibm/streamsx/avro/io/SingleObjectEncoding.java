@@ -0,0 +1,65 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.message.BadHeaderException;
+
+/**
+ * Header of the Avro single-object encoding. The header consists of the two
+ * marker bytes {@code C3 01} and the 8 byte little-endian CRC-64-AVRO
+ * fingerprint of the writer schema, followed by the binary Avro encoding of
+ * the record.
+ */
+public final class SingleObjectEncoding {
+
+	/** The marker bytes at the start of a single-object encoded message */
+	public static final byte[] MARKER = { (byte) 0xC3, (byte) 0x01 };
+	/** The length of the header in bytes */
+	public static final int HEADER_LENGTH = MARKER.length + 8;
+
+	private SingleObjectEncoding() {
+	}
+
+	/**
+	 * Create the header for the records of a schema
+	 *
+	 * @param schema
+	 *            The writer schema
+	 * @return the header bytes
+	 */
+	public static byte[] createHeader(Schema schema) {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+		header.put(MARKER);
+		header.putLong(SchemaNormalization.parsingFingerprint64(schema));
+		return header.array();
+	}
+
+	/**
+	 * Read the header of a single-object encoded message. On return the
+	 * position of the buffer is at the start of the binary Avro record.
+	 *
+	 * @param message
+	 *            The message
+	 * @return the fingerprint of the writer schema
+	 * @throws BadHeaderException
+	 *             if the message does not start with a single-object header
+	 */
+	public static long readFingerprint(ByteBuffer message) {
+		if (message.remaining() < HEADER_LENGTH)
+			throw new BadHeaderException("Message is shorter than the single-object header: " + message.remaining());
+		if (message.get() != MARKER[0] || message.get() != MARKER[1])
+			throw new BadHeaderException("Message does not start with the single-object marker");
+		return message.order(ByteOrder.LITTLE_ENDIAN).getLong();
+	}
+
+}
@@ -0,0 +1,100 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.io;
+
+import org.apache.avro.AvroTypeException;
+
+/**
+ * Thrown by the {@link JsonTranscoder} when the JSON text does not match the
+ * schema. The exception carries a short reason code. It has no stack trace and
+ * its message is only built when it is requested, so rejecting a message is
+ * cheap.
+ */
+public class TranscodeException extends AvroTypeException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The reason codes of rejected JSON text
+	 */
+	public enum Reason {
+		/** The JSON text is not valid JSON */
+		INVALID_JSON,
+		/** A JSON value does not have the type of the schema */
+		TYPE_MISMATCH,
+		/** A JSON number does not fit into the int or long type of the schema */
+		OUT_OF_RANGE,
+		/** A field of a record is missing */
+		MISSING_FIELD,
+		/** A string is not a symbol of an enum */
+		UNKNOWN_SYMBOL,
+		/** A union branch is not a type of the union */
+		UNKNOWN_BRANCH,
+		/** A fixed value does not have the size of the schema */
+		WRONG_SIZE,
+		/** No schema is found for the discriminator of a record */
+		UNKNOWN_SCHEMA,
+		/** The schema of the discriminator cannot be used to write the record */
+		INVALID_SCHEMA
+	}
+
+	private final Reason reason;
+	private final String expected;
+	private final Object actual;
+
+	/**
+	 * @param reason
+	 *            The reason code
+	 * @param expected
+	 *            What was expected, for example a type or a field name
+	 * @param actual
+	 *            What was found instead, or null
+	 */
+	public TranscodeException(Reason reason, String expected, Object actual) {
+		super((String) null);
+		this.reason = reason;
+		this.expected = expected;
+		this.actual = actual;
+	}
+
+	/**
+	 * @return the reason code
+	 */
+	public Reason getReason() {
+		return reason;
+	}
+
+	@Override
+	public String getMessage() {
+		switch (reason) {
+		case MISSING_FIELD:
+			return "Expected field name not found: " + expected;
+		case UNKNOWN_SYMBOL:
+			return "Unknown symbol in enum " + actual;
+		case UNKNOWN_BRANCH:
+			return "Unknown union branch " + actual;
+		case OUT_OF_RANGE:
+			return "Number out of range of " + expected + ": " + actual;
+		case WRONG_SIZE:
+			return "Expected fixed length " + expected + ", but got " + actual;
+		case UNKNOWN_SCHEMA:
+			return "No Avro schema found for " + actual;
+		case INVALID_SCHEMA:
+			return "Avro schema " + expected + " cannot be used: " + actual;
+		default:
+			return "Expected " + expected + ". Got " + actual;
+		}
+	}
+
+	// The failures are expected data errors, so no stack trace is filled in
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+
+}
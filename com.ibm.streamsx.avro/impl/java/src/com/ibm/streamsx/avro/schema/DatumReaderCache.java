@@ -0,0 +1,93 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.schema;
+
+import java.util.HashMap;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.message.MissingSchemaException;
+import org.apache.avro.message.SchemaStore;
+
+/**
+ * Datum readers for the writer schemas of a schema store or a schema
+ * registry, which are created once per writer schema. The writer schema is
+ * identified by its fingerprint in a schema store and by its schema id in a
+ * schema registry. All readers resolve the records to the same reader
+ * schema, or read them with the writer schema if there is no reader schema.
+ *
+ * A datum reader keeps the resolver of its writer and reader schema, so the
+ * schema resolution is planned once per writer schema and not per record. A
+ * datum reader caches the classes of the strings it reads without locking, so
+ * the cache and its readers are not thread safe. A thread that reads records
+ * needs its own cache.
+ */
+public class DatumReaderCache {
+
+	private final SchemaStore writerSchemaStore;
+	private final SchemaRegistry writerSchemaRegistry;
+	private final Schema readerSchema;
+	private final HashMap<Long, GenericDatumReader<GenericRecord>> readers = new HashMap<Long, GenericDatumReader<GenericRecord>>();
+
+	/**
+	 * @param writerSchemas
+	 *            The writer schemas by fingerprint
+	 * @param readerSchema
+	 *            The reader schema, or null to read the records with the
+	 *            writer schema
+	 */
+	public DatumReaderCache(SchemaStore writerSchemas, Schema readerSchema) {
+		this.writerSchemaStore = writerSchemas;
+		this.writerSchemaRegistry = null;
+		this.readerSchema = readerSchema;
+	}
+
+	/**
+	 * @param writerSchemas
+	 *            The writer schemas by schema id
+	 * @param readerSchema
+	 *            The reader schema, or null to read the records with the
+	 *            writer schema
+	 */
+	public DatumReaderCache(SchemaRegistry writerSchemas, Schema readerSchema) {
+		this.writerSchemaStore = null;
+		this.writerSchemaRegistry = writerSchemas;
+		this.readerSchema = readerSchema;
+	}
+
+	/**
+	 * Get the datum reader for a writer schema
+	 *
+	 * @param writerSchemaKey
+	 *            The fingerprint or schema id of the writer schema
+	 * @return the datum reader
+	 * @throws MissingSchemaException
+	 *             if there is no schema with this fingerprint or schema id
+	 */
+	public GenericDatumReader<GenericRecord> getReader(long writerSchemaKey) {
+		GenericDatumReader<GenericRecord> reader = readers.get(writerSchemaKey);
+		if (reader == null) {
+			Schema writerSchema;
+			if (writerSchemaStore != null) {
+				writerSchema = writerSchemaStore.findByFingerprint(writerSchemaKey);
+				if (writerSchema == null)
+					throw new MissingSchemaException("No Avro schema found for fingerprint " + writerSchemaKey);
+			} else {
+				writerSchema = writerSchemaRegistry.getSchema((int) writerSchemaKey);
+				if (writerSchema == null)
+					throw new MissingSchemaException("No Avro schema found for schema id " + writerSchemaKey);
+			}
+			reader = new GenericDatumReader<GenericRecord>(writerSchema,
+					(readerSchema != null) ? readerSchema : writerSchema);
+			readers.put(writerSchemaKey, reader);
+		}
+		return reader;
+	}
+
+}
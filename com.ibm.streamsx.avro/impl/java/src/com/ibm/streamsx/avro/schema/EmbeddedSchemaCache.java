@@ -0,0 +1,135 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.schema;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.apache.avro.Schema;
+
+/**
+ * The schemas embedded in the header of Avro message blocks. The schema is
+ * identified by a hash of its JSON bytes in the header, so it is parsed only
+ * once and not for every message block. On a hash match the bytes are
+ * compared, so a hash collision never returns the wrong schema. A repeated
+ * schema is returned as the same instance, so the datum readers of a schema
+ * can be cached by schema identity. If there is a reader schema, the records
+ * are resolved to the reader schema and the fields which are not in the
+ * reader schema are skipped.
+ *
+ * A stream normally repeats the same schema, which is checked first. The cache
+ * holds at most {@link #MAX_SCHEMAS} schemas and is cleared when it is full.
+ * The cache is not thread safe.
+ */
+public class EmbeddedSchemaCache {
+
+	/** The maximum number of cached schemas */
+	public static final int MAX_SCHEMAS = 64;
+
+	/*
+	 * The schema bytes of the header together with the parsed schema
+	 */
+	private static class Entry {
+		final byte[] schemaBytes;
+		final Schema schema;
+
+		Entry(byte[] schemaBytes, Schema schema) {
+			this.schemaBytes = schemaBytes;
+			this.schema = schema;
+		}
+	}
+
+	private final Schema readerSchema;
+	private final HashMap<Long, Entry> entries = new HashMap<Long, Entry>();
+	private Entry last;
+
+	/**
+	 * Create a cache of schemas whose records are read with the embedded
+	 * schema
+	 */
+	public EmbeddedSchemaCache() {
+		this(null);
+	}
+
+	/**
+	 * @param readerSchema
+	 *            The reader schema, or null to read the records with the
+	 *            embedded schema
+	 */
+	public EmbeddedSchemaCache(Schema readerSchema) {
+		this.readerSchema = readerSchema;
+	}
+
+	/**
+	 * @return the reader schema, or null if the records are read with the
+	 *         embedded schema
+	 */
+	public Schema getReaderSchema() {
+		return readerSchema;
+	}
+
+	/**
+	 * Get an embedded schema
+	 *
+	 * @param schemaBytes
+	 *            The array holding the JSON bytes of the schema
+	 * @param offset
+	 *            The offset of the schema in the array
+	 * @param length
+	 *            The length of the schema in bytes
+	 * @return the schema, which is the writer schema of the records
+	 * @throws org.apache.avro.SchemaParseException
+	 *             if the schema cannot be parsed
+	 */
+	public Schema getSchema(byte[] schemaBytes, int offset, int length) {
+		if (last != null && equals(last.schemaBytes, schemaBytes, offset, length))
+			return last.schema;
+		Long hash = Long.valueOf(hash(schemaBytes, offset, length));
+		Entry entry = entries.get(hash);
+		if (entry == null || !equals(entry.schemaBytes, schemaBytes, offset, length)) {
+			// Parse like DataFileStream does
+			Schema schema = new Schema.Parser().setValidate(false)
+					.parse(new String(schemaBytes, offset, length, StandardCharsets.UTF_8));
+			entry = new Entry(Arrays.copyOfRange(schemaBytes, offset, offset + length), schema);
+			if (entries.size() >= MAX_SCHEMAS)
+				entries.clear();
+			entries.put(hash, entry);
+		}
+		last = entry;
+		return entry.schema;
+	}
+
+	/**
+	 * @return the number of cached schemas
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	// 64 bit FNV-1a hash
+	private static long hash(byte[] bytes, int offset, int length) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = offset; i < offset + length; i++) {
+			hash ^= bytes[i] & 0xFF;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	private static boolean equals(byte[] cached, byte[] bytes, int offset, int length) {
+		if (cached.length != length)
+			return false;
+		for (int i = 0; i < length; i++) {
+			if (cached[i] != bytes[offset + i])
+				return false;
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,80 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.schema;
+
+import java.io.File;
+import java.util.HashMap;
+
+import org.apache.log4j.Logger;
+
+import com.ibm.streams.operator.log4j.TraceLevel;
+
+/**
+ * The schema files of a directory which could not be loaded in a scan. A file
+ * is reported once and skipped by the following scans until its modification
+ * time or its length changes, for example when a file which was still being
+ * written is complete. Not thread safe, the scans are synchronized.
+ */
+class InvalidSchemaFiles {
+
+	private static Logger tracer = Logger.getLogger(InvalidSchemaFiles.class.getName());
+
+	/*
+	 * The modification time and the length of a file when it failed
+	 */
+	private static class Version {
+		final long lastModified;
+		final long length;
+
+		Version(File file) {
+			lastModified = file.lastModified();
+			length = file.length();
+		}
+
+		boolean isUnchanged(File file) {
+			return lastModified == file.lastModified() && length == file.length();
+		}
+	}
+
+	private final HashMap<String, Version> files = new HashMap<String, Version>();
+
+	/**
+	 * @param schemaFile
+	 *            A schema file
+	 * @return true if the file failed and did not change since
+	 */
+	boolean isUnchanged(File schemaFile) {
+		Version version = files.get(schemaFile.getName());
+		return version != null && version.isUnchanged(schemaFile);
+	}
+
+	/**
+	 * Report a file which could not be loaded, and skip it until it changes
+	 *
+	 * @param schemaFile
+	 *            The schema file
+	 * @param e
+	 *            The failure
+	 */
+	void add(File schemaFile, Exception e) {
+		files.put(schemaFile.getName(), new Version(schemaFile));
+		tracer.log(TraceLevel.WARN, "Skipping Avro schema file " + schemaFile.getPath()
+				+ " until it changes, it cannot be loaded: " + e.getMessage());
+	}
+
+	/**
+	 * Forget a file which was loaded
+	 *
+	 * @param schemaFile
+	 *            The schema file
+	 */
+	void remove(File schemaFile) {
+		files.remove(schemaFile.getName());
+	}
+
+}
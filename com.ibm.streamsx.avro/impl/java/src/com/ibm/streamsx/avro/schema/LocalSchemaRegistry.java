@@ -0,0 +1,119 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.schema;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+
+/**
+ * Schema registry backed by a directory. Every schema is stored in a file
+ * {@code <id>.avsc}, where the file name is the schema id. A loaded schema is
+ * not changed afterwards, but new schemas can be registered while the registry
+ * is in use: if a schema id is not found, the directory is scanned again for
+ * new schema files, at most once per
+ * {@link SchemaDirectoryStore#RESCAN_INTERVAL_MILLIS}. A schema file that
+ * cannot be read in a rescan is reported once and tried again when it changes.
+ */
+public class LocalSchemaRegistry implements SchemaRegistry {
+
+	private final File directory;
+	private final ConcurrentHashMap<Integer, Schema> schemas = new ConcurrentHashMap<Integer, Schema>();
+	private final ConcurrentHashMap<Long, Integer> schemaIds = new ConcurrentHashMap<Long, Integer>();
+	private final InvalidSchemaFiles invalidFiles = new InvalidSchemaFiles();
+	private long lastScan;
+
+	/**
+	 * Load all schema files of a directory
+	 *
+	 * @param directory
+	 *            The directory with the {@code <id>.avsc} files
+	 * @throws IOException
+	 *             if the directory or a schema file cannot be read, or if the
+	 *             name of a schema file is not a schema id
+	 */
+	public LocalSchemaRegistry(File directory) throws IOException {
+		this.directory = directory;
+		for (File schemaFile : SchemaDirectoryStore.listSchemaFiles(directory)) {
+			loadSchema(schemaFile, getSchemaId(schemaFile));
+		}
+		lastScan = System.currentTimeMillis();
+	}
+
+	@Override
+	public Schema getSchema(int schemaId) {
+		Schema schema = schemas.get(schemaId);
+		if (schema == null && rescan())
+			schema = schemas.get(schemaId);
+		return schema;
+	}
+
+	@Override
+	public int getSchemaId(Schema schema) {
+		Integer schemaId = schemaIds.get(SchemaNormalization.parsingFingerprint64(schema));
+		return (schemaId != null) ? schemaId : -1;
+	}
+
+	/*
+	 * Load the schema files registered since the last scan, returns true if
+	 * the directory was scanned
+	 */
+	private synchronized boolean rescan() {
+		long now = System.currentTimeMillis();
+		if (now - lastScan < SchemaDirectoryStore.RESCAN_INTERVAL_MILLIS)
+			return false;
+		lastScan = now;
+		File[] schemaFiles;
+		try {
+			schemaFiles = SchemaDirectoryStore.listSchemaFiles(directory);
+		} catch (FileNotFoundException e) {
+			return false;
+		}
+		for (File schemaFile : schemaFiles) {
+			if (invalidFiles.isUnchanged(schemaFile))
+				continue;
+			try {
+				int schemaId = getSchemaId(schemaFile);
+				if (!schemas.containsKey(schemaId)) {
+					loadSchema(schemaFile, schemaId);
+					invalidFiles.remove(schemaFile);
+				}
+			} catch (IOException | RuntimeException e) {
+				invalidFiles.add(schemaFile, e);
+			}
+		}
+		return true;
+	}
+
+	private void loadSchema(File schemaFile, int schemaId) throws IOException {
+		Schema schema = new Schema.Parser().parse(schemaFile);
+		// The first id wins if a schema is registered under several ids
+		schemaIds.putIfAbsent(SchemaNormalization.parsingFingerprint64(schema), schemaId);
+		schemas.put(schemaId, schema);
+	}
+
+	private static int getSchemaId(File schemaFile) throws IOException {
+		String name = schemaFile.getName();
+		try {
+			return Integer.parseInt(
+					name.substring(0, name.length() - SchemaDirectoryStore.SCHEMA_FILE_EXTENSION.length()));
+		} catch (NumberFormatException e) {
+			throw new IOException("Schema file name is not a schema id: " + schemaFile.getPath());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return directory.getPath();
+	}
+
+}
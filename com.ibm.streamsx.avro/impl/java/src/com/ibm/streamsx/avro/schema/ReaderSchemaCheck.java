@@ -0,0 +1,60 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.schema;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaCompatibility;
+import org.apache.avro.SchemaCompatibility.Incompatibility;
+import org.apache.avro.SchemaCompatibility.SchemaCompatibilityType;
+import org.apache.avro.SchemaCompatibility.SchemaPairCompatibility;
+import org.apache.log4j.Logger;
+
+import com.ibm.streams.operator.log4j.TraceLevel;
+import com.ibm.streamsx.avro.Messages;
+
+/**
+ * Checks that the messages of a writer schema can be resolved to a reader
+ * schema, before a resolving reader or decoder is created for the schemas.
+ */
+public final class ReaderSchemaCheck {
+
+	private static Logger tracer = Logger.getLogger(ReaderSchemaCheck.class.getName());
+
+	private ReaderSchemaCheck() {
+	}
+
+	/**
+	 * Checks that the messages of the writer schema can be resolved to the
+	 * reader schema
+	 * 
+	 * @param writerSchema
+	 *            The writer schema
+	 * @param readerSchema
+	 *            The reader schema
+	 * @throws IllegalArgumentException
+	 *             if the schemas are not compatible
+	 */
+	public static void checkReaderSchema(Schema writerSchema, Schema readerSchema) {
+		SchemaPairCompatibility compatibility = SchemaCompatibility.checkReaderWriterCompatibility(readerSchema,
+				writerSchema);
+		if (compatibility.getType() != SchemaCompatibilityType.COMPATIBLE) {
+			StringBuilder incompatibilities = new StringBuilder();
+			for (Incompatibility incompatibility : compatibility.getResult().getIncompatibilities()) {
+				if (incompatibilities.length() > 0)
+					incompatibilities.append("; ");
+				incompatibilities.append(incompatibility.getType()).append(" at ").append(incompatibility.getLocation())
+						.append(": ").append(incompatibility.getMessage());
+			}
+			tracer.log(TraceLevel.ERROR, Messages.getString("AVRO_READER_SCHEMA_INCOMPATIBLE", readerSchema.getFullName(),
+					writerSchema.getFullName(), incompatibilities));
+			throw new IllegalArgumentException(Messages.getString("AVRO_READER_SCHEMA_INCOMPATIBLE",
+					readerSchema.getFullName(), writerSchema.getFullName(), incompatibilities));
+		}
+	}
+
+}
@@ -0,0 +1,158 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.schema;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.avro.Schema;
+import org.apache.avro.message.SchemaStore;
+
+/**
+ * Avro schemas loaded from the {@code .avsc} files of a directory, which are
+ * looked up by the CRC-64-AVRO fingerprint of their parsing canonical form,
+ * or by name: the full name of the schema or the name of its schema file
+ * without extension.
+ *
+ * A new writer schema can be added while the schemas are in use: if a
+ * fingerprint or name is not found, the directory is scanned again for new schema
+ * files, at most once per {@link #RESCAN_INTERVAL_MILLIS}. A schema file that
+ * cannot be read in a rescan, for example because it is invalid or still being
+ * written, is reported once and tried again when it changes.
+ */
+public class SchemaDirectoryStore extends SchemaStore.Cache {
+
+	/** The file name extension of Avro schema files */
+	public static final String SCHEMA_FILE_EXTENSION = ".avsc";
+
+	/** The minimum time between two scans of the directory */
+	public static final long RESCAN_INTERVAL_MILLIS = 1000;
+
+	private final File directory;
+	private final Set<String> loadedFiles = new HashSet<String>();
+	private final InvalidSchemaFiles invalidFiles = new InvalidSchemaFiles();
+	private final ConcurrentHashMap<String, Schema> names = new ConcurrentHashMap<String, Schema>();
+	private long lastScan;
+
+	/**
+	 * Load all schema files of a directory
+	 *
+	 * @param directory
+	 *            The directory with the {@code .avsc} files
+	 * @throws IOException
+	 *             if the directory or a schema file cannot be read
+	 */
+	public SchemaDirectoryStore(File directory) throws IOException {
+		this.directory = directory;
+		for (File schemaFile : listSchemaFiles(directory)) {
+			loadSchema(schemaFile);
+			loadedFiles.add(schemaFile.getName());
+		}
+		lastScan = System.currentTimeMillis();
+	}
+
+	/**
+	 * Find a schema by its fingerprint. The directory is scanned for new
+	 * schema files if the schema is not loaded.
+	 */
+	@Override
+	public Schema findByFingerprint(long fingerprint) {
+		Schema schema = super.findByFingerprint(fingerprint);
+		if (schema == null && rescan())
+			schema = super.findByFingerprint(fingerprint);
+		return schema;
+	}
+
+	/**
+	 * Find a schema by its full name or by the name of its schema file without
+	 * extension. The directory is scanned for new schema files if the schema
+	 * is not loaded.
+	 *
+	 * @param name
+	 *            The name of the schema
+	 * @return the schema, or null if no schema has this name
+	 */
+	public Schema findByName(String name) {
+		Schema schema = names.get(name);
+		if (schema == null && rescan())
+			schema = names.get(name);
+		return schema;
+	}
+
+	/*
+	 * Load the schema files added since the last scan, returns true if the
+	 * directory was scanned
+	 */
+	private synchronized boolean rescan() {
+		long now = System.currentTimeMillis();
+		if (now - lastScan < RESCAN_INTERVAL_MILLIS)
+			return false;
+		lastScan = now;
+		File[] schemaFiles;
+		try {
+			schemaFiles = listSchemaFiles(directory);
+		} catch (FileNotFoundException e) {
+			return false;
+		}
+		for (File schemaFile : schemaFiles) {
+			if (loadedFiles.contains(schemaFile.getName()) || invalidFiles.isUnchanged(schemaFile))
+				continue;
+			try {
+				loadSchema(schemaFile);
+				loadedFiles.add(schemaFile.getName());
+				invalidFiles.remove(schemaFile);
+			} catch (IOException | RuntimeException e) {
+				invalidFiles.add(schemaFile, e);
+			}
+		}
+		return true;
+	}
+
+	// The first schema wins if several schemas have the same name
+	private void loadSchema(File schemaFile) throws IOException {
+		Schema schema = new Schema.Parser().parse(schemaFile);
+		addSchema(schema);
+		String fileName = schemaFile.getName();
+		names.putIfAbsent(schema.getFullName(), schema);
+		names.putIfAbsent(fileName.substring(0, fileName.length() - SCHEMA_FILE_EXTENSION.length()), schema);
+	}
+
+	/**
+	 * List the schema files of a directory in name order
+	 *
+	 * @param directory
+	 *            The directory with the {@code .avsc} files
+	 * @return the schema files
+	 * @throws FileNotFoundException
+	 *             if the directory cannot be listed
+	 */
+	static File[] listSchemaFiles(File directory) throws FileNotFoundException {
+		File[] schemaFiles = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().endsWith(SCHEMA_FILE_EXTENSION);
+			}
+		});
+		if (schemaFiles == null)
+			throw new FileNotFoundException(directory.getPath());
+		Arrays.sort(schemaFiles);
+		return schemaFiles;
+	}
+
+	@Override
+	public String toString() {
+		return directory.getPath();
+	}
+
+}
@@ -0,0 +1,40 @@
+//
+// *******************************************************************************
+// * Copyright (C)2020, International Business Machines Corporation and *
+// * others. All Rights Reserved. *
+// *******************************************************************************
+//
+
+package com.ibm.streamsx.avro.schema;
+
+import org.apache.avro.Schema;
+
+/**
+ * Registry of Avro schemas identified by a numeric schema id, as used by the
+ * schema registry wire format: the magic byte 0 and the 4 byte big-endian
+ * schema id of the writer schema precede the binary Avro record.
+ *
+ * Implementations must be safe to use from several threads.
+ */
+public interface SchemaRegistry {
+
+	/**
+	 * Get the schema with an id
+	 *
+	 * @param schemaId
+	 *            The schema id
+	 * @return the schema, or null if no schema has this id
+	 */
+	Schema getSchema(int schemaId);
+
+	/**
+	 * Get the id of a schema. Schemas with the same parsing canonical form
+	 * have the same id.
+	 *
+	 * @param schema
+	 *            The schema
+	 * @return the schema id, or -1 if the schema is not registered
+	 */
+	int getSchemaId(Schema schema);
+
+}
@@ -1,6 +1,8 @@
+#--variantList='toString avroJson decodingThreads readerSchema batchOutput filter'
+
 setCategory 'quick'
 
-PREPS='copyOnly'
+PREPS='copyAndMorphSpl'
 
 STEPS=(
 	"splCompile"
@@ -8,9 +10,36 @@ STEPS=(
 	'checkJobNo'
 	'waitForFinAndHealth'
 	'cancelJobAndLog'
-	'echoExecuteInterceptAndSuccess diff data/Tuples data/TuplesExpected'
-	'linewisePatternMatchInterceptAndSuccess data/WindowMarker "" "{seq_=2,typ_=\"w\",jsonMessage=\"\"}"'
-	'linewisePatternMatchInterceptAndSuccess data/FinalMarker ""  "{seq_=3,typ_=\"f\",jsonMessage=\"\"}"'
+	'checkOutput'
+	'checkMarkers'
 )
 
 FINS='cancelJobAndLog'
+
+checkOutput() {
+	case "$TTRO_variantCase" in
+	toString|decodingThreads)
+		echoExecuteInterceptAndSuccess diff data/Tuples data/TuplesExpected;;
+	avroJson)
+		echoExecuteInterceptAndSuccess diff data/Tuples data/TuplesExpectedAvroJson;;
+	readerSchema)
+		echoExecuteInterceptAndSuccess diff data/Tuples data/TuplesExpectedReaderSchema;;
+	batchOutput)
+		echoExecuteInterceptAndSuccess diff data/Tuples data/TuplesExpectedBatch;;
+	filter)
+		echoExecuteInterceptAndSuccess diff data/Tuples data/TuplesExpectedFilter;;
+	*)
+		printErrorAndExit "Wrong variant $TTRO_variantCase" $errRt;;
+	esac
+}
+
+checkMarkers() {
+	# The markers follow the tuples, with batch output the blob is a single tuple
+	# and the filter drops one tuple
+	local windowseq=2
+	if [[ $TTRO_variantCase == batchOutput || $TTRO_variantCase == filter ]]; then
+		windowseq=1
+	fi
+	linewisePatternMatchInterceptAndSuccess data/WindowMarker "" "{seq_=$windowseq,typ_=\"w\",jsonMessage=\"\"}"
+	linewisePatternMatchInterceptAndSuccess data/FinalMarker "" "{seq_=$((windowseq+1)),typ_=\"f\",jsonMessage=\"\"}"
+}
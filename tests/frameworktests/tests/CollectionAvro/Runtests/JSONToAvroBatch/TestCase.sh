@@ -0,0 +1,25 @@
+#--variantList='ndjson parsingThreads list listBlobOutput'
+
+PREPS='copyAndMorphSpl'
+
+STEPS=(
+	'splCompile'
+	'submitJob'
+	'checkJobNo'
+	'waitForFinAndHealth'
+	'cancelJobAndLog'
+	'checkTuples'
+	'checkErrors'
+)
+
+FINS='cancelJobAndLog'
+
+# The valid JSON strings of all batches are transcoded in input order
+checkTuples() {
+	echoExecuteInterceptAndSuccess diff data/Tuples data/TuplesExpected
+}
+
+# Every invalid JSON string of a batch is rejected on its own
+checkErrors() {
+	echoExecuteInterceptAndSuccess diff data/Errors data/ErrorsExpected
+}
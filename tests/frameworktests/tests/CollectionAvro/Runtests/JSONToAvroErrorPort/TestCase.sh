@@ -0,0 +1,32 @@
+#--variantList='errorReason outputErrorReason'
+
+PREPS='copyAndMorphSpl'
+
+STEPS=(
+	'splCompile'
+	'submitJob'
+	'checkJobNo'
+	'waitForFinAndHealth'
+	'cancelJobAndLog'
+	'checkTuples'
+	'checkErrors'
+)
+
+FINS='cancelJobAndLog'
+
+# The valid JSON strings are transcoded
+checkTuples() {
+	echoExecuteInterceptAndSuccess diff data/Tuples data/TuplesExpected
+}
+
+# The invalid JSON strings are submitted to the error port with their reason code
+checkErrors() {
+	case "$TTRO_variantCase" in
+	errorReason)
+		echoExecuteInterceptAndSuccess diff data/Errors data/ErrorsExpected;;
+	outputErrorReason)
+		echoExecuteInterceptAndSuccess diff data/Errors data/ErrorsExpected_outputErrorReason;;
+	*)
+		printErrorAndExit "Wrong variant $TTRO_variantCase" $errRt;;
+	esac
+}
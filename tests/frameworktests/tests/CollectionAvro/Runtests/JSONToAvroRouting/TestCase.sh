@@ -0,0 +1,28 @@
+#--variantList='schemaAttribute schemaField'
+
+PREPS='copyAndMorphSpl'
+
+STEPS=(
+	'splCompile'
+	'submitJob'
+	'checkJobNo'
+	'waitForFinAndHealth'
+	'cancelJobAndLog'
+	'checkTuples'
+	'checkErrors'
+)
+
+FINS='cancelJobAndLog'
+
+# The click and view events are transcoded with their own schema
+checkTuples() {
+	local tuplecount=$(grep 'typ_="t",' data/Tuples | wc -l | cut -f1 -d' ')
+	printInfo "Result contains $tuplecount tuples"
+	echoExecuteInterceptAndSuccess diff data/Tuples data/TuplesReference
+}
+
+# The purchase events are submitted to the error port with reason code
+# UNKNOWN_SCHEMA
+checkErrors() {
+	echoExecuteInterceptAndSuccess diff data/Errors data/ErrorsExpected
+}
@@ -1,4 +1,4 @@
-#--variantList='embedAvroSchema_false submitOnPunct tuplesPerMessage timePerMessage bytesPerMessage'
+#--variantList='embedAvroSchema_false submitOnPunct tuplesPerMessage timePerMessage bytesPerMessage timePerMessagePause codecDeflate codecSnappy codecBzip2 codecXz codecZstandard'
 
 if [[ $TTRO_variantCase == embedAvroSchema_false ]]; then
 	setCategory 'quick'
@@ -21,14 +21,14 @@ FINS='cancelJobAndLog'
 
 checkTuples() {
 	case "$TTRO_variantCase" in
-	timePerMessage|bytesPerMessage)
+	timePerMessage|bytesPerMessage|timePerMessagePause)
 		local count=$(wc -l data/Tuples | cut -f1 -d' ')
 		if [[ $count -ne 100 ]]; then
 			setFailure "Number of received tuples in ne 100. Count is: $count"
 		else
 			printInfo "Received tuple count: $count"
 		fi;;
-	tuplesPerMessage)
+	tuplesPerMessage|codec*)
 		echoExecuteInterceptAndSuccess diff data/Tuples data/TuplesExpected_tuplesPerMessage;;
 	*)
 		echoExecuteInterceptAndSuccess diff data/Tuples data/TuplesExpected;;
@@ -51,7 +51,10 @@ checkWindowMarker() {
 		else
 			printInfo "Received window marker count: $count"
 		fi;;
-	tuplesPerMessage)
+	timePerMessagePause)
+		# The last message block was submitted by the timer during the pause
+		echoExecuteInterceptAndSuccess grep 'timing="submitted on time"' data/Timing;;
+	tuplesPerMessage|codec*)
 		echoExecuteInterceptAndSuccess diff data/WindowMarker data/WindowMarkerExpected_tuplesPerMessage;;
 	*)
 		linewisePatternMatchInterceptAndSuccess data/WindowMarker '' '{seq_=100,typ_="w",jsonMessage=""}';;
@@ -60,9 +63,9 @@ checkWindowMarker() {
 
 checkFinalMarker() {
 	case "$TTRO_variantCase" in
-	timePerMessage|bytesPerMessage)
+	timePerMessage|bytesPerMessage|timePerMessagePause)
 		;;
-	tuplesPerMessage)
+	tuplesPerMessage|codec*)
 		linewisePatternMatchInterceptAndSuccess data/FinalMarker ''  '{seq_=110,typ_="f",jsonMessage=""}';;
 	*)
 		linewisePatternMatchInterceptAndSuccess data/FinalMarker ''  '{seq_=101,typ_="f",jsonMessage=""}';;
@@ -0,0 +1,22 @@
+#--variantList='reorderedKeys multibyte blobInput'
+
+PREPS='copyAndMorphSpl'
+
+STEPS=(
+	'splCompile'
+	'submitJob'
+	'checkJobNo'
+	'waitForFinAndHealth'
+	'cancelJobAndLog'
+	'checkTuples'
+)
+
+FINS='cancelJobAndLog'
+
+# The JSON lines in etc/<variant>.json are transcoded into Avro and back, the
+# result must be the same as the lines in etc/<variant>Expected.json
+checkTuples() {
+	local tuplecount=$(grep 'typ_="t",' data/Tuples | wc -l | cut -f1 -d' ')
+	printInfo "Result contains $tuplecount tuples"
+	echoExecuteInterceptAndSuccess diff data/Tuples data/TuplesReference
+}
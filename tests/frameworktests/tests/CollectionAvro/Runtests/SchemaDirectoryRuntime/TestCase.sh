@@ -0,0 +1,49 @@
+#--variantList='singleObject schemaRegistry'
+
+PREPS='copyAndMorphSpl'
+
+STEPS=(
+	"splCompile"
+	'createSchemaDirectory'
+	'submitJob'
+	'checkJobNo'
+	'waitForJobHealth'
+	'dropSchemaFiles'
+	'waitForFinAndHealth'
+	'cancelJobAndLog'
+	'checkOutput'
+)
+
+FINS='cancelJobAndLog'
+
+# The schema directory of AvroToJSON is empty when the job starts
+createSchemaDirectory() {
+	echoExecuteInterceptAndSuccess mkdir -p data/schemas
+}
+
+# Drop an invalid schema file and the writer schema into the schema directory
+# of the running job, the tuples are generated when the writer schema appears
+dropSchemaFiles() {
+	echo '{"type": "record", "name": "Broken", "fields": [' > data/schemas/2.tmp
+	echoExecuteInterceptAndSuccess mv data/schemas/2.tmp data/schemas/2.avsc
+	local schemaFile
+	case "$TTRO_variantCase" in
+	singleObject)
+		schemaFile='twitter_complex.avsc';;
+	schemaRegistry)
+		schemaFile='1.avsc';;
+	*)
+		printErrorAndExit "Wrong variant $TTRO_variantCase" $errRt;;
+	esac
+	cp etc/registry/1.avsc data/schemas/schema.tmp
+	echoExecuteInterceptAndSuccess mv data/schemas/schema.tmp "data/schemas/$schemaFile"
+}
+
+checkOutput() {
+	local tuplecount=$(grep 'typ_="t",' data/Tuples | wc -l | cut -f1 -d' ')
+	printInfo "Result contains $tuplecount tuples"
+	if [[ $tuplecount -ne 100 ]]; then
+		setFailure "Wrong tuple count $tuplecount"
+	fi
+	echoExecuteInterceptAndSuccess diff data/Tuples data/TuplesReference
+}
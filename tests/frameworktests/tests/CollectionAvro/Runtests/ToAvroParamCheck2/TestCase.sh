@@ -1,7 +1,8 @@
 #--variantList='JsonEmbedAvroSchema_true \
 #--       JsonEmbedAvroSchema_false0 JsonEmbedAvroSchema_false1 JsonEmbedAvroSchema_false2 JsonEmbedAvroSchema_false3 \
 #--       TupleEmbedAvroSchema_true \
-#--       TupleEmbedAvroSchema_false0 TupleEmbedAvroSchema_false1 TupleEmbedAvroSchema_false2 TupleEmbedAvroSchema_false3'
+#--       TupleEmbedAvroSchema_false0 TupleEmbedAvroSchema_false1 TupleEmbedAvroSchema_false2 TupleEmbedAvroSchema_false3 \
+#--       TupleMessageFormat_embedded'
 
 PREPS='copyAndMorphSpl'
 
@@ -17,6 +18,8 @@ checkOutput() {
 		linewisePatternMatchInterceptAndSuccess "$TT_evaluationFile" "true" "*CDIST3457E*";;
 	*EmbedAvroSchema_false*)
 		linewisePatternMatchInterceptAndSuccess "$TT_evaluationFile" "true" "*CDIST3456E*";;
+	TupleMessageFormat_embedded)
+		linewisePatternMatchInterceptAndSuccess "$TT_evaluationFile" "true" "*CDIST3465E*";;
 	*)
 		printErrorAndExit "Wrong variant $TTRO_variantCase" $errRt;;
 	esac
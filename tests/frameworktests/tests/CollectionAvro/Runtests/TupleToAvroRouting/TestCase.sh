@@ -0,0 +1,26 @@
+#--variantList='singleObject embedAvroSchema'
+
+PREPS='copyAndMorphSpl'
+
+STEPS=(
+	'splCompile'
+	'submitJob'
+	'checkJobNo'
+	'waitForFinAndHealth'
+	'cancelJobAndLog'
+	'checkTuples'
+)
+
+FINS='cancelJobAndLog'
+
+# The click and view events are converted with their own schema, the scroll
+# and purchase events are skipped. With embedded schema every event is
+# submitted in its own message block, so the order is kept.
+checkTuples() {
+	local tuplecount=$(grep 'typ_="t",' data/Tuples | wc -l | cut -f1 -d' ')
+	printInfo "Result contains $tuplecount tuples"
+	if [[ $tuplecount -ne 6 ]]; then
+		setFailure "Wrong tuple count $tuplecount"
+	fi
+	echoExecuteInterceptAndSuccess diff data/Tuples data/TuplesReference
+}
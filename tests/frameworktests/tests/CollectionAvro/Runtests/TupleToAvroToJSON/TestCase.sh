@@ -1,4 +1,4 @@
-#--variantList='embedAvroSchema_false submitOnPunct tuplesPerMessage timePerMessage bytesPerMessage'
+#--variantList='embedAvroSchema_false directEncoding singleObject schemaRegistry submitOnPunct tuplesPerMessage asyncSubmit encodingThreads timePerMessage bytesPerMessage convertFailure bytesPerBlock timePerMessagePause'
 
 PREPS='copyAndMorphSpl'
 
@@ -18,18 +18,29 @@ checkOutput() {
 	local windowcount=$(grep 'typ_="w",' data/Tuples | wc -l | cut -f1 -d' ')
 	printInfo "Result contains $tuplecount tuples and $windowcount windowMarker"
 	case "$TTRO_variantCase" in
-	embedAvroSchema_false|submitOnPunct)
+	embedAvroSchema_false|directEncoding|singleObject|schemaRegistry|submitOnPunct)
 		if [[ ( $tuplecount -ne 100 ) || ( $windowcount -ne 1 ) ]]; then
 			setFailure "Wrong counts not 100 and 1"
 		fi
 		echoExecuteInterceptAndSuccess diff data/Tuples data/TuplesReference;;
-	tuplesPerMessage)
+	tuplesPerMessage|asyncSubmit|encodingThreads)
 		if [[ ( $tuplecount -ne 100 ) || ( $windowcount -ne 10 ) ]]; then
 			setFailure "Wrong counts not 100 and 10"
 		fi
 		echoExecuteInterceptAndSuccess diff data/Tuples data/TuplesReference;;
+	bytesPerBlock)
+		if [[ ( $tuplecount -ne 100 ) || ( $windowcount -ne 2 ) ]]; then
+			setFailure "Wrong counts not 100 and 2"
+		fi
+		echoExecuteInterceptAndSuccess diff data/Tuples data/TuplesReference;;
 	*)
-		if [[ $tuplecount -ne 100 ]]; then
+		# The 34 suspicious tweets cannot be converted, all other tweets of
+		# their message blocks must be decoded
+		local expectedcount=100
+		if [[ $TTRO_variantCase == convertFailure ]]; then
+			expectedcount=66
+		fi
+		if [[ $tuplecount -ne $expectedcount ]]; then
 			setFailure "Wrong tuple counts $tuplecount"
 		fi
 		#remove seq number and window marker entries
@@ -51,4 +62,8 @@ checkOutput() {
 		} < data/TuplesReference
 		echoExecuteInterceptAndSuccess diff data/TuplesOnly data/TuplesOnlyReference;;
 	esac
+	# The last message block was submitted by the timer during the pause
+	if [[ $TTRO_variantCase == timePerMessagePause ]]; then
+		echoExecuteInterceptAndSuccess grep 'timing="submitted on time"' data/Timing
+	fi
 }
@@ -0,0 +1,33 @@
+#--variantList='embedAvroSchema_false directEncoding tuplesPerMessage'
+
+PREPS='copyAndMorphSpl'
+
+STEPS=(
+	"splCompile"
+	'submitJob'
+	'checkJobNo'
+	'waitForFinAndHealth'
+	'cancelJobAndLog'
+	'checkOutput'
+)
+
+FINS='cancelJobAndLog'
+
+checkOutput() {
+	local tuplecount=$(grep 'typ_="t",' data/Tuples | wc -l | cut -f1 -d' ')
+	local windowcount=$(grep 'typ_="w",' data/Tuples | wc -l | cut -f1 -d' ')
+	printInfo "Result contains $tuplecount tuples and $windowcount windowMarker"
+	case "$TTRO_variantCase" in
+	embedAvroSchema_false|directEncoding)
+		if [[ ( $tuplecount -ne 100 ) || ( $windowcount -ne 1 ) ]]; then
+			setFailure "Wrong counts not 100 and 1"
+		fi;;
+	tuplesPerMessage)
+		if [[ ( $tuplecount -ne 100 ) || ( $windowcount -ne 10 ) ]]; then
+			setFailure "Wrong counts not 100 and 10"
+		fi;;
+	*)
+		printErrorAndExit "Wrong variant $TTRO_variantCase" $errRt;;
+	esac
+	echoExecuteInterceptAndSuccess diff data/Tuples data/TuplesReference
+}